@@ -1,8 +1,8 @@
 package com.damn.anotherglass.glass.ee.host.core
 
 import android.content.Context
-import android.net.wifi.WifiManager
-import android.text.format.Formatter
+import android.net.ConnectivityManager
+import java.net.Inet4Address
 
 object ConnectionUtils {
     fun isPossiblyTethering(ip: String): Boolean {
@@ -19,12 +19,17 @@ object ConnectionUtils {
         return ip.startsWith("192.168.")
     }
 
-    // todo: replace deprecated API, move isPossiblyTethering up
-    fun getHostIPAddress(context: Context): String? {
-        val wf = context.getSystemService(Context.WIFI_SERVICE) as WifiManager
-        val dhcpInfo = wf.dhcpInfo ?: return null
-        val tmp = dhcpInfo.gateway
-        val ip = Formatter.formatIpAddress(tmp)
-        return if(isPossiblyTethering(ip)) ip else null
+    // Default IPv4 gateway of the active network, whatever range it is in
+    fun getGatewayIPAddress(context: Context): String? {
+        val cm = context.getSystemService(ConnectivityManager::class.java) ?: return null
+        val properties = cm.getLinkProperties(cm.activeNetwork) ?: return null
+        return properties.routes
+            .firstOrNull { it.isDefaultRoute && it.gateway is Inet4Address }
+            ?.gateway
+            ?.hostAddress
     }
-}
\ No newline at end of file
+
+    // Gateway address, if it looks like phone tethering
+    fun getHostIPAddress(context: Context): String? =
+        getGatewayIPAddress(context)?.takeIf { isPossiblyTethering(it) }
+}
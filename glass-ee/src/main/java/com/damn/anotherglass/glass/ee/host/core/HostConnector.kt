@@ -0,0 +1,97 @@
+package com.damn.anotherglass.glass.ee.host.core
+
+import android.util.Log
+import com.damn.anotherglass.shared.utility.Closeables
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Connects to all candidate endpoints at once and keeps the first socket that succeeds,
+ * so one unreachable stale address does not cost us a full connect timeout.
+ */
+class HostConnector(private val timeout: Int) {
+
+    private val mPending: MutableSet<Socket> = Collections.synchronizedSet(HashSet())
+
+    @Volatile
+    private var mCancelled = false
+
+    // written by connecting threads, read from UI
+    @Volatile
+    private var mLastError: String? = null
+
+    val lastError: String?
+        get() = mLastError
+
+    /**
+     * @return connected socket, or null if no candidate was reachable (see [lastError])
+     */
+    fun connect(candidates: List<InetSocketAddress>): Socket? {
+        mLastError = null
+        if (candidates.isEmpty()) {
+            mLastError = "No host candidates"
+            return null
+        }
+        val winner = AtomicReference<Socket?>()
+        val done = CountDownLatch(1)
+        val left = CountDownLatch(candidates.size)
+        val threads = candidates.map { endpoint ->
+            Thread({
+                val socket = Socket()
+                mPending.add(socket)
+                try {
+                    if (mCancelled) return@Thread
+                    socket.connect(endpoint, timeout)
+                    mPending.remove(socket) // must not be closed by cancelPending() once we win
+                    if (winner.compareAndSet(null, socket)) {
+                        done.countDown()
+                    } else {
+                        Closeables.close(socket) // someone was faster
+                    }
+                } catch (e: Exception) {
+                    Closeables.close(socket)
+                    Log.w(TAG, "Failed to connect to $endpoint: ${e.message}")
+                    mLastError = e.message
+                } finally {
+                    mPending.remove(socket)
+                    left.countDown()
+                    if (0L == left.count) done.countDown()
+                }
+            }, "$TAG-$endpoint").apply { start() }
+        }
+        try {
+            done.await(timeout.toLong() + JOIN_MARGIN, TimeUnit.MILLISECONDS)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+        // losers are either still connecting (will close themselves) or already failed
+        cancelPending()
+        threads.forEach { it.join(JOIN_MARGIN) }
+        val socket = winner.get()
+        if (mCancelled) {
+            Closeables.close(socket)
+            return null
+        }
+        return socket
+    }
+
+    fun cancel() {
+        mCancelled = true
+        cancelPending()
+    }
+
+    private fun cancelPending() {
+        synchronized(mPending) {
+            mPending.forEach { Closeables.close(it) }
+        }
+    }
+
+    companion object {
+        private const val TAG = "HostConnector"
+        private const val JOIN_MARGIN = 500L
+    }
+}
@@ -0,0 +1,97 @@
+package com.damn.anotherglass.glass.ee.host.core
+
+import android.content.Context
+import android.net.wifi.WifiManager
+import android.util.Log
+import com.damn.anotherglass.shared.Constants
+import com.damn.anotherglass.shared.discovery.DiscoveryBeacon
+import java.io.Closeable
+import java.io.IOException
+import java.net.DatagramPacket
+import java.net.DatagramSocket
+import java.net.InetSocketAddress
+import java.net.SocketTimeoutException
+
+/**
+ * Listens for [DiscoveryBeacon] broadcasts from the phone, only while we are looking for it:
+ * multicast lock keeps WiFi awake for broadcasts and costs battery, so it is held between [start] and [stop].
+ * [listener] is called on the discovery thread with the address host can be reached at.
+ */
+class HostDiscovery(
+    context: Context,
+    private val listener: (address: String, port: Int) -> Unit
+) : Closeable {
+
+    // WiFi driver filters out broadcast packets when screen is off without it
+    private val mMulticastLock = context.applicationContext
+        .getSystemService(WifiManager::class.java)
+        ?.createMulticastLock(TAG)
+        ?.apply { setReferenceCounted(false) }
+
+    private var mSocket: DatagramSocket? = null
+    private var mThread: Thread? = null
+
+    // socket is bound here rather than on the thread, so stop() always has something to close
+    @Synchronized
+    fun start() {
+        if (null != mThread) return
+        val socket = DatagramSocket(null)
+        try {
+            socket.reuseAddress = true
+            socket.broadcast = true
+            socket.soTimeout = RECEIVE_TIMEOUT
+            socket.bind(InetSocketAddress(Constants.discoveryPort))
+        } catch (e: IOException) {
+            socket.close()
+            Log.e(TAG, "Discovery failed: ${e.message}")
+            return
+        }
+        mSocket = socket
+        mMulticastLock?.acquire()
+        mThread = Thread({ run(socket) }, TAG).apply { start() }
+    }
+
+    @Synchronized
+    fun stop() {
+        val thread = mThread ?: return
+        mThread = null
+        mSocket?.close()
+        mSocket = null
+        thread.join()
+        mMulticastLock?.release()
+    }
+
+    override fun close() = stop()
+
+    private fun run(socket: DatagramSocket) {
+        try {
+            val buffer = ByteArray(BUFFER_SIZE)
+            while (!socket.isClosed) {
+                val packet = DatagramPacket(buffer, buffer.size)
+                try {
+                    socket.receive(packet)
+                } catch (e: SocketTimeoutException) {
+                    continue // just to have a look at isClosed
+                }
+                val beacon = DiscoveryBeacon.fromBytes(packet.data, packet.offset, packet.length)
+                    ?: continue
+                // packet source is what actually routes back to the phone,
+                // advertised address is a fallback for odd NAT/tethering setups
+                val address = packet.address?.hostAddress ?: beacon.address ?: continue
+                Log.d(TAG, "Found $beacon at $address")
+                listener(address, beacon.port)
+            }
+        } catch (e: IOException) {
+            if (!socket.isClosed)
+                Log.e(TAG, "Discovery failed: ${e.message}")
+        } finally {
+            socket.close()
+        }
+    }
+
+    companion object {
+        private const val TAG = "HostDiscovery"
+        private const val BUFFER_SIZE = 1024
+        private const val RECEIVE_TIMEOUT = 1000
+    }
+}
@@ -11,11 +11,18 @@ import androidx.lifecycle.LifecycleService
 import com.damn.anotherglass.shared.device.DeviceAPI
 import com.damn.anotherglass.shared.gps.GPSServiceAPI
 import com.damn.anotherglass.shared.gps.Location
+import com.damn.anotherglass.shared.map.MapAPI
+import com.damn.anotherglass.shared.map.MapTile
 import com.damn.anotherglass.shared.notifications.NotificationData
 import com.damn.anotherglass.shared.notifications.NotificationsAPI
 import com.damn.anotherglass.shared.rpc.RPCMessage
 import com.damn.anotherglass.shared.rpc.RPCMessageListener
+import com.damn.glass.shared.blob.BlobCache
+import com.damn.glass.shared.blob.BlobResolver
+import com.damn.glass.shared.device.DisplayStateReporter
 import com.damn.glass.shared.gps.MockGPS
+import com.damn.glass.shared.map.MapTiles
+import com.damn.glass.shared.map.PhoneTileSource
 import com.damn.glass.shared.notifications.NotificationController
 import org.greenrobot.eventbus.EventBus
 
@@ -26,10 +33,14 @@ interface IService {
         INITIALIZING,
         WAITING,
         CONNECTED,
+        RECONNECTING,
         DISCONNECTED
     }
 
     val state: ServiceState // todo: global LiveData?
+
+    // lets the phone know what user is looking at, null if our UI is not visible
+    fun setVisibleCard(card: String?)
 }
 
 class HostService : LifecycleService(), IService {
@@ -41,8 +52,20 @@ class HostService : LifecycleService(), IService {
 
     private val batteryStatus: BatteryStatus by lazy { BatteryStatus(this) }
 
+    private val displayState = DisplayStateReporter(this) {
+        client?.send(RPCMessage(DeviceAPI.SERVICE_NAME, it))
+    }
+
     private var client: WiFiClient? = null
 
+    // icons come as content hash references, bytes are fetched only if not cached
+    private val blobs: BlobResolver by lazy {
+        BlobResolver(BlobCache(this), { client?.send(it) }, { route(it) })
+    }
+
+    // Glass has no internet of its own when connected over Bluetooth only, so map tiles come through the phone
+    private val tiles = PhoneTileSource { client?.send(it) }
+
     inner class LocalBinder : Binder() {
         fun getService(): IService = this@HostService
     }
@@ -69,19 +92,24 @@ class HostService : LifecycleService(), IService {
     override fun onCreate() {
         super.onCreate()
         gps = MockGPS(this)
+        MapTiles.setSource(tiles)
         sounds = SoundController(this)
         notificationNotifier = NotificationNotifier(sounds)
         batteryStatus.observe(this) {
             client?.send(RPCMessage(DeviceAPI.SERVICE_NAME, it))
         }
+        displayState.start()
     }
 
     @Override
     override fun onDestroy() {
         super.onDestroy()
         Log.i(TAG, "HostService stopped")
+        displayState.stop()
         gps.remove()
+        tiles.setConnected(false)
         client?.stop()
+        blobs.close()
         sounds.release()
     }
 
@@ -98,37 +126,30 @@ class HostService : LifecycleService(), IService {
                 Log.d(TAG, "Connected to $device")
                 state = IService.ServiceState.CONNECTED
                 NotificationController.instance.onServiceConnected()
+                tiles.setConnected(true)
 
                 batteryStatus.value?.let {
                     client?.send(RPCMessage(DeviceAPI.SERVICE_NAME, it))
                 }
+                client?.send(RPCMessage(DeviceAPI.SERVICE_NAME, displayState.state))
             }
 
-            override fun onDataReceived(data: RPCMessage) {
-                when (data.service) {
-                    GPSServiceAPI.ID -> {
-                        Log.d(TAG, "GPS data received")
-                        if (data.type.equals(Location::class.java.name))
-                            gps.publish(data.payload as Location)
-                    }
-
-                    NotificationsAPI.ID -> {
-                        Log.d(TAG, "Notification data received")
-                        val notificationData = data.payload as NotificationData
-                        NotificationController.instance.onNotificationUpdate(notificationData)
-                        notificationNotifier.notify(notificationData)
-                    }
-
-                    else -> Log.e(TAG, "Unknown service: ${data.service}")
-                }
-            }
+            override fun onDataReceived(data: RPCMessage) = blobs.onMessage(data)
 
             override fun onConnectionLost(error: String?) {
                 Log.e(TAG, "onConnectionLost: $error")
+                blobs.flush()
+                tiles.setConnected(false)
                 state = IService.ServiceState.DISCONNECTED
                 sounds.playSound(SoundController.SoundEffect.ConnectionLost)
             }
 
+            override fun onReconnecting(delay: Long) {
+                Log.d(TAG, "Reconnecting in ${delay}ms")
+                // keep the service running, client will reconnect on its own
+                state = IService.ServiceState.RECONNECTING
+            }
+
             override fun onShutdown() {
                 Log.d(TAG, "onShutdown")
                 stopSelf()
@@ -147,6 +168,32 @@ class HostService : LifecycleService(), IService {
         client?.start(this, listener)
     }
 
+    private fun route(data: RPCMessage) {
+        when (data.service) {
+            GPSServiceAPI.ID -> {
+                Log.d(TAG, "GPS data received")
+                if (data.type.equals(Location::class.java.name))
+                    gps.publish(data.payload as Location)
+            }
+
+            NotificationsAPI.ID -> {
+                Log.d(TAG, "Notification data received")
+                val notificationData = data.payload as NotificationData
+                NotificationController.instance.onNotificationUpdate(notificationData)
+                notificationNotifier.notify(notificationData)
+            }
+
+            MapAPI.ID -> {
+                if (data.payload is MapTile)
+                    tiles.onTile(data.payload as MapTile)
+            }
+
+            else -> Log.e(TAG, "Unknown service: ${data.service}")
+        }
+    }
+
+    override fun setVisibleCard(card: String?) = displayState.setVisibleCard(card)
+
     override fun onBind(intent: Intent): IBinder? {
         super.onBind(intent)
         return _binder
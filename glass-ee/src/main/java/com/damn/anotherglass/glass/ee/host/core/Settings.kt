@@ -10,8 +10,22 @@ class Settings(context: Context) {
         get() = sharedPreferences.getBoolean(KEY_TILT_TO_WAKE, false)
         set(value) = sharedPreferences.edit() { putBoolean(KEY_TILT_TO_WAKE, value) }
 
+    // most recent first
+    var recentHosts: List<String>
+        get() = sharedPreferences.getString(KEY_RECENT_HOSTS, null)
+            ?.split(',')
+            ?.filter { it.isNotBlank() }
+            ?: emptyList()
+        private set(value) = sharedPreferences.edit() { putString(KEY_RECENT_HOSTS, value.joinToString(",")) }
+
+    fun addRecentHost(ip: String) {
+        recentHosts = (listOf(ip) + recentHosts.filter { it != ip }).take(MAX_RECENT_HOSTS)
+    }
+
     companion object {
         private const val KEY_TILT_TO_WAKE = "tilt_to_wake"
+        private const val KEY_RECENT_HOSTS = "recent_hosts"
+        private const val MAX_RECENT_HOSTS = 5
         private const val PREFS_NAME = "settings"
     }
 }
\ No newline at end of file
@@ -1,20 +1,27 @@
 package com.damn.anotherglass.glass.ee.host.core
 
 import android.content.Context
+import android.net.ConnectivityManager
 import android.util.Log
 import android.widget.Toast
 import com.damn.anotherglass.glass.ee.host.R
-import com.damn.anotherglass.glass.ee.host.core.ConnectionUtils.getHostIPAddress
+import com.damn.anotherglass.glass.ee.host.core.ConnectionUtils.getGatewayIPAddress
 import com.damn.anotherglass.shared.Constants
+import com.damn.anotherglass.shared.device.DeviceAPI
 import com.damn.anotherglass.shared.rpc.IRPCClient
 import com.damn.anotherglass.shared.rpc.RPCHandler
 import com.damn.anotherglass.shared.rpc.RPCMessage
 import com.damn.anotherglass.shared.rpc.RPCMessageListener
+import com.damn.anotherglass.shared.rpc.ReconnectSupervisor
 import com.damn.anotherglass.shared.rpc.SerializerProvider
+import com.damn.anotherglass.shared.session.ClientSession
+import com.damn.anotherglass.shared.utility.Closeables
+import com.damn.anotherglass.shared.utility.ReconnectTriggerReceiver
 import java.net.InetSocketAddress
 import java.net.Socket
 import java.net.SocketException
 import java.util.concurrent.BlockingQueue
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.LinkedBlockingDeque
 
 class WiFiClient(private val hostIP: String? = null) : IRPCClient {
@@ -22,21 +29,20 @@ class WiFiClient(private val hostIP: String? = null) : IRPCClient {
     @Volatile
     private var mWorkerThread: WorkerThread? = null
 
+    val supervisor = ReconnectSupervisor()
+
     override fun start(context: Context, listener: RPCMessageListener) {
         // todo: pass startup errors up
         if (mWorkerThread != null) {
             Log.e(TAG, "Already started")
             return
         }
-        val ip = hostIP ?: getHostIPAddress(context)
-        if (null == ip) {
-            Log.e(TAG, "No host IP address")
-            Toast.makeText(context, R.string.msg_no_server_ip, Toast.LENGTH_SHORT).show()
-            listener.onShutdown()
-            return
-        }
-        Toast.makeText(context, context.getString(R.string.msg_connecting_to_ip_s, ip), Toast.LENGTH_SHORT).show()
-        mWorkerThread = WorkerThread(listener, ip)
+        // without explicit IP we still have gateway, recent hosts and discovery beacons to try
+        val message = hostIP?.let { context.getString(R.string.msg_connecting_to_ip_s, it) }
+            ?: context.getString(R.string.msg_searching_for_host)
+        Toast.makeText(context, message, Toast.LENGTH_SHORT).show()
+        supervisor.reset()
+        mWorkerThread = WorkerThread(context.applicationContext, listener, hostIP)
         mWorkerThread!!.start()
     }
 
@@ -52,75 +58,151 @@ class WiFiClient(private val hostIP: String? = null) : IRPCClient {
     }
 
     inner class WorkerThread(
+        private val context: Context,
         listener: RPCMessageListener,
-        private val ip: String
+        private val ip: String?
     ) : Thread() {
 
         private val mHandler: RPCHandler = RPCHandler(listener)
 
+        private val mSettings = Settings(context)
+
+        private val mConnector = HostConnector(CONNECT_TIMEOUT)
+
+        // address -> port, as announced by discovery beacons
+        private val mDiscovered: MutableMap<String, Int> = ConcurrentHashMap()
+
+        // runs only while we are not connected
+        private val mDiscovery = HostDiscovery(context) { address, port ->
+            // retry right away if this is a host we have not tried yet
+            if (null == mDiscovered.put(address, port)) supervisor.wake()
+        }
+
         private val mQueue: BlockingQueue<RPCMessage> = LinkedBlockingDeque()
 
+        // outlives the socket, so nothing is lost while we reconnect
+        private val mSession = ClientSession(mQueue)
+
+        @Volatile
+        private var mActive = true
+
         override fun run() {
             mHandler.onWaiting()
+            // network change is a good hint that host may be reachable again
+            @Suppress("DEPRECATION")
+            val trigger = ReconnectTriggerReceiver(
+                context,
+                { supervisor.wake() },
+                ConnectivityManager.CONNECTIVITY_ACTION
+            )
             try {
-                Socket().use { socket ->
-                    socket.connect(InetSocketAddress(ip, Constants.defaultPort), 5000)
+                while (mActive) {
+                    mDiscovery.start()
+                    val error = connectAndRun()
+                    if (!mActive) break
+                    if (supervisor.onDisconnected())
+                        mHandler.onConnectionLost(error)
+                    else
+                        Log.w(TAG, "Connection attempt failed: $error")
+                    val delay = supervisor.nextDelay()
+                    mHandler.onReconnecting(delay)
+                    if (!supervisor.awaitRetry(delay)) break
+                }
+            } finally {
+                Closeables.close(trigger)
+                Closeables.close(mDiscovery)
+                mWorkerThread = null
+                mHandler.onShutdown()
+            }
+        }
+
+        // returns error message, or null if connection was closed normally
+        private fun connectAndRun(): String? {
+            // explicit IP first, then whatever discovery has found, then recent hosts and gateway,
+            // but prefer the one we were connected to last time
+            val candidates = supervisor.orderEndpoints(
+                listOfNotNull(ip) + mDiscovered.keys + mSettings.recentHosts + listOfNotNull(getGatewayIPAddress(context))
+            ).map { InetSocketAddress(it, mDiscovered[it] ?: Constants.defaultPort) }
+            if (!mActive) return null
+            val socket = mConnector.connect(candidates) ?: return mConnector.lastError
+            mDiscovery.stop() // found it, no need to keep multicast lock while connected
+            return try {
+                socket.use {
+                    val endpoint = socket.inetAddress.hostAddress!!
+                    supervisor.onConnected(endpoint)
+                    mSettings.addRecentHost(endpoint)
+                    reportReconnectTime()
                     mHandler.onConnectionStarted(socket.inetAddress.toString())
                     runLoop(socket)
                 }
+                null
             } catch (e: SocketException) {
-                // since we do not close the socket on client, its actually some error
-                mHandler.onConnectionLost(e.message)
+                // since we do not close the socket on client (apart from shutdown), its actually some error
+                if (mActive) e.message else null
             } catch (e: InterruptedException) {
-                mHandler.onConnectionLost(null) // not an error, just a shutdown
+                null // not an error, just a shutdown
             } catch (e: Exception) {
-                mHandler.onConnectionLost(e.message)
                 Log.e(TAG, "WorkerThread error", e)
-            } finally {
-                // note: there will be no onConnectionLost if we are shutting down
-                mWorkerThread = null
-                mHandler.onShutdown()
+                e.message
             }
         }
 
+        // goes through the session, so it is written right after the hello exchange
+        private fun reportReconnectTime() {
+            val stats = supervisor.stats ?: return
+            Log.i(TAG, "Reconnected in ${stats.lastReconnectTime}ms (average ${stats.averageReconnectTime}ms over ${stats.reconnectCount})")
+            send(RPCMessage(DeviceAPI.SERVICE_NAME, stats))
+        }
+
         private fun runLoop(socket: Socket) {
             socket.getInputStream().use { inputStream ->
                 socket.getOutputStream().use { outputStream ->
                     val serializer = SerializerProvider.getSerializer(inputStream, outputStream)
-                    while (true) {
-                        while (null != mQueue.peek()) {
-                            val message = mQueue.take()
-                            serializer.writeMessage(message)
-                            if (message.service == null) {
-                                return // disconnect requested
+                    serializer.writeMessage(mSession.onConnected())
+                    try {
+                        while (true) {
+                            mSession.poll()
+                            while (null != mQueue.peek()) {
+                                val message = mQueue.take()
+                                serializer.writeMessage(message)
+                                if (message.service == null) {
+                                    return // disconnect requested
+                                }
                             }
-                        }
-                        while (inputStream.available() > 0) {
-                            val message = serializer.readMessage()
-                            if (null == message.service) {
-                                return
+                            while (inputStream.available() > 0) {
+                                val message = serializer.readMessage()
+                                if (null == message.service) {
+                                    throw SocketException("Host has closed the connection")
+                                }
+                                if (!mSession.onReceived(message))
+                                    mHandler.onDataReceived(message)
                             }
-                            mHandler.onDataReceived(message)
+                            sleep(100)
                         }
-                        sleep(100)
+                    } finally {
+                        mSession.onDisconnected()
                     }
                 }
             }
         }
 
         fun send(message: RPCMessage) {
-            mQueue.add(message)
+            mSession.send(message)
         }
 
         fun shutdown() {
+            mActive = false
+            supervisor.cancel()
             // send empty message to notify host we are shutting down (we do not guarantee it will be sent though)
-            // we do not keep the socket reference, so just wait till next iteration
             mQueue.add(RPCMessage(null, null))
+            // if we are still connecting, abort it
+            mConnector.cancel()
         }
 
     }
 
     companion object {
         private const val TAG = "WiFiClient"
+        private const val CONNECT_TIMEOUT = 5000
     }
-}
\ No newline at end of file
+}
@@ -1,39 +1,113 @@
 package com.damn.anotherglass.glass.ee.host.core.tiltawake
 
+import android.content.BroadcastReceiver
 import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
 import android.hardware.Sensor
 import android.hardware.SensorEvent
 import android.hardware.SensorEventListener
 import android.hardware.SensorManager
+import android.os.Debug
+import android.os.Handler
+import android.os.HandlerThread
 import android.os.PowerManager
+import android.os.SystemClock
 import android.util.Log
+import java.util.concurrent.atomic.AtomicLong
 import kotlin.math.abs
 import kotlin.math.sin
-import kotlin.math.sqrt
-
-
-class TiltToWake(context: Context): SensorEventListener {
 
+/**
+ * Wakes the screen up when the head is tilted up and held still for [DELAY].
+ * Runs on its own sensor thread and only while the screen is off:
+ *  - Idle: accelerometer at a low rate, batched in hardware FIFO, so CPU wakes up about once per [IDLE_LATENCY];
+ *  - Armed: some batched sample looked like a head tilted up, sampling without batching until the tilt
+ *    is confirmed or nothing like it comes for [ARMED_TIMEOUT].
+ * Math is done on squared magnitudes, times are taken from event timestamps.
+ */
+class TiltToWake(context: Context) : SensorEventListener {
+
+    private val appContext = context.applicationContext
     private val powerManager = context.getSystemService(PowerManager::class.java)
     private val sensorManager = context.getSystemService(SensorManager::class.java)
+    private val accelerometer: Sensor? = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER)
+
+    private var thread: HandlerThread? = null
+    private var handler: Handler? = null
 
-    private var tiltTimer = 0L
-    private var lastUpdate = 0L
+    private enum class Mode { Off, Idle, Armed }
+
+    // all below is touched on the sensor thread only
+    private var mode = Mode.Off
+    private var tiltStart = 0L // event time when current tilt started, 0 if not tilted
+    private var lastCandidate = 0L
+    private var armedAt = 0L // elapsedRealtime of switching to Armed, older samples are still batched ones
     private var lastWakeTime = 0L
+    private var lastDelivery = 0L
+
+    private val screenReceiver = object : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            when (intent.action) {
+                Intent.ACTION_SCREEN_OFF -> setMode(Mode.Idle)
+                Intent.ACTION_SCREEN_ON -> setMode(Mode.Off)
+            }
+        }
+    }
 
     fun start() {
-        sensorManager.registerListener(this, sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER), SensorManager.SENSOR_DELAY_NORMAL)
+        if (null == accelerometer) {
+            Log.e(TAG, "No accelerometer")
+            return
+        }
+        if (null != thread) return
+        val thread = HandlerThread(TAG).also { it.start() }
+        val handler = Handler(thread.looper)
+        this.thread = thread
+        this.handler = handler
+        val filter = IntentFilter().apply {
+            addAction(Intent.ACTION_SCREEN_ON)
+            addAction(Intent.ACTION_SCREEN_OFF)
+        }
+        // screen state comes to the sensor thread as well, no need to ask PowerManager on every event
+        appContext.registerReceiver(screenReceiver, filter, null, handler)
+        handler.post { setMode(if (powerManager.isInteractive) Mode.Off else Mode.Idle) }
     }
 
     fun stop() {
+        val thread = thread ?: return
+        appContext.unregisterReceiver(screenReceiver)
+        handler?.post { setMode(Mode.Off) }
+        thread.quitSafely()
+        this.thread = null
+        this.handler = null
+    }
+
+    private fun setMode(next: Mode) {
+        if (next == mode) return
+        mode = next
+        resetTimer()
         sensorManager.unregisterListener(this)
+        when (next) {
+            Mode.Off -> Unit // screen is on, nothing to do
+            Mode.Idle -> sensorManager.registerListener(
+                this, accelerometer, IDLE_PERIOD_US, IDLE_LATENCY_US, handler
+            )
+            Mode.Armed -> {
+                armedAt = SystemClock.elapsedRealtime()
+                lastCandidate = armedAt
+                stats.arms.incrementAndGet()
+                sensorManager.registerListener(this, accelerometer, ARMED_DELAY, handler)
+            }
+        }
+        Log.d(TAG, "Mode: $next")
     }
 
     @Suppress("DEPRECATION")
     private fun awake() {
         // Wake up, Neo…
         Log.i(TAG, "Awake!")
-        lastWakeTime = System.currentTimeMillis()
+        stats.wakes.incrementAndGet()
         val wakeLock = powerManager.newWakeLock(
             PowerManager.FULL_WAKE_LOCK or
                     PowerManager.ACQUIRE_CAUSES_WAKEUP or
@@ -43,65 +117,101 @@ class TiltToWake(context: Context): SensorEventListener {
         wakeLock.release()
     }
 
-    override fun onSensorChanged(event: SensorEvent?) {
-        @Suppress("DEPRECATION")
-        if(powerManager.isScreenOn) {
+    override fun onSensorChanged(event: SensorEvent) {
+        if (Mode.Off == mode) return // unregistered, but some events may still be queued
+        val cpuStart = Debug.threadCpuTimeNanos()
+        // batched events come in a burst, count the burst as one wakeup
+        val now = SystemClock.uptimeMillis()
+        if (now - lastDelivery > BURST_GAP) stats.deliveries.incrementAndGet()
+        lastDelivery = now
+        stats.events.incrementAndGet()
+
+        process(event)
+
+        stats.cpuNanos.addAndGet(Debug.threadCpuTimeNanos() - cpuStart)
+    }
+
+    private fun process(event: SensorEvent) {
+        val time = event.timestamp / 1_000_000 // elapsedRealtime base
+        if (lastWakeTime + COOLDOWN_TIME > time) return // should be awake already
+        // rest of the batch that armed us, the tilt has to be confirmed by fresh samples only
+        if (Mode.Armed == mode && time < armedAt) return
+
+        if (!isTiltedUp(event.values)) {
             resetTimer()
+            if (Mode.Armed == mode && time - lastCandidate > ARMED_TIMEOUT) setMode(Mode.Idle)
             return
         }
-
-        if(lastWakeTime + COOLDOWN_TIME > System.currentTimeMillis()) {
-            // should be awake already
+        lastCandidate = time
+        if (Mode.Idle == mode) {
+            // batched samples are late and sparse, confirm the tilt with fresh ones
+            setMode(Mode.Armed)
             return
         }
-
-        event?.let {
-            val magnitudeSq = it.values[0] * it.values[0] + it.values[1] * it.values[1] + it.values[2] * it.values[2]
-            // Only works on Earth for now
-            if(abs(SensorManager.GRAVITY_EARTH * SensorManager.GRAVITY_EARTH - magnitudeSq) > MOTION_THRESHOLD) {
-                // some movement is happening
-                resetTimer()
-                return
-            }
-
-            val norm = sqrt(magnitudeSq)
-            val yzNorm = sqrt(it.values[1] * it.values[1] + it.values[2] * it.values[2])
-
-            // if is looking up, but not too tilted sideways
-            if (abs(it.values[0] / norm) > X_THRESHOLD
-                || it.values[1] / yzNorm < Y_POSITIVE_THRESHOLD) {
-                resetTimer()
-                return
-            }
-            if(0L != lastUpdate) {
-                tiltTimer += System.currentTimeMillis() - lastUpdate
-                if(tiltTimer > DELAY) {
-                    resetTimer()
-                    awake()
-                    return
-                }
-            }
-            lastUpdate = System.currentTimeMillis()
+        if (0L == tiltStart) {
+            tiltStart = time
+        } else if (time - tiltStart > DELAY) {
+            resetTimer()
+            lastWakeTime = time
+            awake()
+            // screen on broadcast will turn sensor off
         }
     }
 
+    // still (gravity only) and looking up, but not too tilted sideways
+    private fun isTiltedUp(values: FloatArray): Boolean {
+        val x = values[0]
+        val y = values[1]
+        val z = values[2]
+        val magnitudeSq = x * x + y * y + z * z
+        // Only works on Earth for now
+        if (abs(GRAVITY_SQ - magnitudeSq) > MOTION_THRESHOLD) return false // some movement is happening
+        // |x| / |a| <= X_THRESHOLD
+        if (x * x > X_THRESHOLD_SQ * magnitudeSq) return false
+        // y / |yz| >= Y_POSITIVE_THRESHOLD, with positive threshold y has to be positive as well
+        return y > 0 && y * y >= Y_POSITIVE_THRESHOLD_SQ * (y * y + z * z)
+    }
+
     private fun resetTimer() {
-        tiltTimer = 0L
-        lastUpdate = 0L
+        tiltStart = 0L
     }
 
     override fun onAccuracyChanged(sensor: Sensor?, accuracy: Int) = Unit
 
+    /**
+     * What the detector costs, process wide since the service is started once.
+     */
+    class Stats {
+        val events = AtomicLong() // accelerometer samples processed
+        val deliveries = AtomicLong() // CPU wakeups, batched samples come together
+        val arms = AtomicLong() // switches to unbatched sampling
+        val wakes = AtomicLong() // screen was woken up
+        val cpuNanos = AtomicLong() // sensor thread CPU time spent in processing
+        val since: Long = SystemClock.elapsedRealtime()
+    }
+
     companion object {
         private const val TAG = "TiltToWake"
 
-        private const val MOTION_THRESHOLD = 2.0 // just magic number from real device
+        @JvmStatic
+        val stats = Stats()
+
+        private const val MOTION_THRESHOLD = 2.0f // just magic number from real device
+        private const val GRAVITY_SQ = SensorManager.GRAVITY_EARTH * SensorManager.GRAVITY_EARTH
 
         private const val ANGLE_THRESHOLD = 15.0 / 180.0 * Math.PI
-        private const val X_THRESHOLD = 0.36 // just magic number (~20 degree sideways tilt)
-        private val Y_POSITIVE_THRESHOLD = sin(ANGLE_THRESHOLD)
+        private const val X_THRESHOLD = 0.36f // just magic number (~20 degree sideways tilt)
+        private const val X_THRESHOLD_SQ = X_THRESHOLD * X_THRESHOLD
+        private val Y_POSITIVE_THRESHOLD_SQ = sin(ANGLE_THRESHOLD).let { it * it }.toFloat()
 
         private const val DELAY = 300L
         private const val COOLDOWN_TIME = 2000L
+
+        private const val IDLE_PERIOD_US = 250_000 // 4Hz is enough to notice the head is up
+        private const val IDLE_LATENCY = 600L // adds to reaction time while idle
+        private const val IDLE_LATENCY_US = (IDLE_LATENCY * 1000).toInt()
+        private const val ARMED_DELAY = SensorManager.SENSOR_DELAY_NORMAL
+        private const val ARMED_TIMEOUT = 2000L
+        private const val BURST_GAP = 20L
     }
-}
\ No newline at end of file
+}
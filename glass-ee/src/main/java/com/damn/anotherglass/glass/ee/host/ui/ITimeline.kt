@@ -2,10 +2,18 @@ package com.damn.anotherglass.glass.ee.host.ui
 
 import com.damn.anotherglass.glass.ee.host.ui.cards.BaseFragment
 
+// cards are ordered by priority, highest first, see TimelineAdapter
 interface ITimeline {
-    fun addFragment(fragment: BaseFragment, priority: Int = 0, scrollTo: Boolean = true)
+    fun addFragment(fragment: BaseFragment, priority: Int = PRIORITY_DEFAULT, scrollTo: Boolean = true)
     fun removeFragment(tag: String)
     fun <T: BaseFragment> removeByType(cls: Class<T>)
     fun <T: BaseFragment> indexOfFirst(java: Class<T>): Int
     fun setCurrent(index: Int, smoothScroll: Boolean)
+
+    companion object {
+        const val PRIORITY_HIGH = 100 // something to look at right now, like notifications
+        const val PRIORITY_SETTINGS = 50
+        const val PRIORITY_DEFAULT = 0
+        const val PRIORITY_LOW = -100
+    }
 }
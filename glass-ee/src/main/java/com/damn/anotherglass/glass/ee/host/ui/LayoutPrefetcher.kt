@@ -0,0 +1,62 @@
+package com.damn.anotherglass.glass.ee.host.ui
+
+import android.content.Context
+import android.util.Log
+import android.view.LayoutInflater
+import android.view.View
+import android.view.ViewGroup
+import android.widget.FrameLayout
+import androidx.annotation.LayoutRes
+import java.util.concurrent.Executors
+
+/**
+ * Inflates card layouts ahead of time on a background thread, so a card that shows up
+ * (e.g. on a new notification) does not stall the timeline with inflation.
+ * One view per layout is kept ready, prefetch again after taking it if more cards are expected.
+ */
+class LayoutPrefetcher(context: Context) {
+
+    private val inflater = LayoutInflater.from(context)
+    private val executor = Executors.newSingleThreadExecutor()
+
+    // layout -> view ready to use, null while it is being inflated
+    private val ready = HashMap<Int, View?>()
+
+    fun prefetch(@LayoutRes layout: Int) {
+        synchronized(ready) {
+            if (ready.containsKey(layout)) return
+            ready[layout] = null
+        }
+        executor.execute {
+            val view = try {
+                // parent only provides layout params, card containers of the pager are FrameLayouts too
+                inflater.inflate(layout, FrameLayout(inflater.context), false)
+            } catch (e: Exception) {
+                Log.w(TAG, "Failed to prefetch layout: ${e.message}")
+                null
+            }
+            synchronized(ready) {
+                if (null == view) ready.remove(layout)
+                else ready[layout] = view
+            }
+        }
+    }
+
+    /**
+     * Prefetched view if it is ready, inflated right here otherwise.
+     */
+    fun take(@LayoutRes layout: Int, inflater: LayoutInflater, container: ViewGroup?): View {
+        val view = synchronized(ready) {
+            ready[layout]?.also { ready.remove(layout) }
+        }
+        return view ?: inflater.inflate(layout, container, false)
+    }
+
+    fun release() {
+        executor.shutdownNow()
+    }
+
+    companion object {
+        private const val TAG = "LayoutPrefetcher"
+    }
+}
@@ -6,11 +6,9 @@ import android.content.ServiceConnection
 import android.os.Bundle
 import android.os.IBinder
 import android.view.KeyEvent
-import androidx.fragment.app.Fragment
-import androidx.fragment.app.FragmentStatePagerAdapter
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
-import androidx.viewpager.widget.ViewPager
+import androidx.viewpager2.widget.ViewPager2
 import com.damn.anotherglass.glass.ee.host.BuildConfig
 import com.damn.anotherglass.glass.ee.host.R
 import com.damn.anotherglass.glass.ee.host.core.HostService
@@ -26,6 +24,7 @@ import com.damn.anotherglass.glass.ee.host.ui.cards.TiltToWakeCard
 import com.damn.anotherglass.glass.ee.host.utility.isRunning
 import com.example.glass.ui.GlassGestureDetector
 import com.google.android.material.tabs.TabLayout
+import com.google.android.material.tabs.TabLayoutMediator
 import org.greenrobot.eventbus.EventBus
 import org.greenrobot.eventbus.Subscribe
 import org.greenrobot.eventbus.ThreadMode
@@ -36,40 +35,36 @@ import org.greenrobot.eventbus.ThreadMode
 //  - add Bluetooth connection support (and WiFi for xe)?
 //  - add zoom levels to map card
 //  - add controls cards: slider, Gyro lists
-//  - migrate to ViewPagers2 (with current ViewPagers2 version will need a few hacks
-//      for current fragment gesture routing and some other issues)
 
 class MainActivity : BaseActivity() {
 
     private val connection = GlassServiceConnection()
-    private val fragments: MutableList<BaseFragment> = ArrayList()
-    private lateinit var viewPager: ViewPager
+    private lateinit var cards: TimelineAdapter
+    private lateinit var viewPager: ViewPager2
+
+    // card layouts inflated ahead of time, see BaseFragment.inflateCard
+    lateinit var layouts: LayoutPrefetcher
+        private set
 
     // todo: observe service actual state
     private val serviceState = MutableLiveData<IService.ServiceState?>()
 
     private val timeLine = object : ITimeline {
         override fun addFragment(fragment: BaseFragment, priority: Int, scrollTo: Boolean) {
-            // todo: implement priority
-            fragments.add(0, fragment)
-            viewPager.adapter?.notifyDataSetChanged()
-            if(scrollTo) viewPager.setCurrentItem(0, false)
+            val index = cards.add(fragment, priority)
+            if(scrollTo) viewPager.setCurrentItem(index, false)
         }
 
         override fun removeFragment(tag: String) {
-            if(fragments.removeIf { it.tag == tag }) {
-                viewPager.adapter?.notifyDataSetChanged()
-            }
+            cards.removeIf { it.tag == tag }
         }
 
         override fun <T : BaseFragment> removeByType(cls: Class<T>) {
-            if(fragments.removeIf { it.javaClass == cls }) {
-                viewPager.adapter?.notifyDataSetChanged()
-            }
+            cards.removeIf { it.javaClass == cls }
         }
 
         override fun <T : BaseFragment> indexOfFirst(java: Class<T>): Int =
-            fragments.indexOfFirst { it.javaClass == java }
+            cards.indexOfFirst { it.javaClass == java }
 
         override fun setCurrent(index: Int, smoothScroll: Boolean) =
             viewPager.setCurrentItem(index, smoothScroll)
@@ -79,25 +74,32 @@ class MainActivity : BaseActivity() {
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
-        setContentView(R.layout.view_pager_layout)
-        fragments.add(TiltToWakeCard.newInstance()) // -1 fragment (settings)
-        fragments.add(ServiceStateCard.newInstance()) // default fragment
-        fragments.add(MapCard.newInstance())
+        setContentView(R.layout.view_pager2_layout)
+
+        layouts = LayoutPrefetcher(this)
+        layouts.prefetch(R.layout.layout_card_map)
+        layouts.prefetch(R.layout.layout_notifications_stack)
+
+        cards = TimelineAdapter(this)
+        cards.add(TiltToWakeCard.newInstance(), ITimeline.PRIORITY_SETTINGS) // -1 fragment (settings)
+        cards.add(ServiceStateCard.newInstance(), ITimeline.PRIORITY_DEFAULT) // default fragment
+        cards.add(MapCard.newInstance(), ITimeline.PRIORITY_LOW)
 
         viewPager = findViewById(R.id.viewPager)
-        viewPager.isSaveFromParentEnabled = false
-        viewPager.setAdapter(object : FragmentStatePagerAdapter(supportFragmentManager) {
-            override fun getItem(position: Int): Fragment = fragments[position]
-            override fun getCount(): Int = fragments.size
-            override fun getItemPosition(o: Any): Int = POSITION_NONE // TODO: hack
+        viewPager.isSaveEnabled = false
+        viewPager.offscreenPageLimit = 1 // neighbours keep their views, as with ViewPager
+        viewPager.adapter = cards
+
+        viewPager.registerOnPageChangeCallback(object : ViewPager2.OnPageChangeCallback() {
+            override fun onPageSelected(position: Int) = reportVisibleCard()
         })
 
         val tabLayout = findViewById<TabLayout>(R.id.page_indicator)
-        tabLayout.setupWithViewPager(viewPager, true)
+        TabLayoutMediator(tabLayout, viewPager) { _, _ -> }.attach()
 
         addNotificationsModule(timeLine)
 
-        timeLine.setCurrent(1, false)
+        timeLine.setCurrent(timeLine.indexOfFirst(ServiceStateCard::class.java), false)
 
         if(Settings(this).tiltToWake)
             TiltToWakeService.startService(this)
@@ -105,6 +107,11 @@ class MainActivity : BaseActivity() {
         tryStartService()
     }
 
+    override fun onDestroy() {
+        layouts.release()
+        super.onDestroy()
+    }
+
     override fun onResume() {
         super.onResume()
         // do not bind if service is not running to avoid starting it
@@ -115,6 +122,7 @@ class MainActivity : BaseActivity() {
 
     override fun onPause() {
         super.onPause()
+        connection.service?.setVisibleCard(null)
         connection.unbindGlassService()
         EventBus.getDefault().unregister(this)
     }
@@ -132,11 +140,11 @@ class MainActivity : BaseActivity() {
     override fun onGesture(gesture: GlassGestureDetector.Gesture): Boolean =
         when (gesture) {
             GlassGestureDetector.Gesture.TAP -> {
-                fragments[viewPager.currentItem].onSingleTapUp()
+                cards.getFragment(viewPager.currentItem)?.onSingleTapUp()
                 true
             }
             GlassGestureDetector.Gesture.TAP_AND_HOLD -> {
-                fragments[viewPager.currentItem].onTapAndHold()
+                cards.getFragment(viewPager.currentItem)?.onTapAndHold()
                 true
             }
             else -> super.onGesture(gesture)
@@ -144,6 +152,10 @@ class MainActivity : BaseActivity() {
 
     fun getServiceState(): LiveData<IService.ServiceState?> = serviceState
 
+    private fun reportVisibleCard() {
+        connection.service?.setVisibleCard(cards.getFragment(viewPager.currentItem)?.javaClass?.simpleName)
+    }
+
     override fun onKeyUp(keyCode: Int, event: KeyEvent): Boolean {
         if(BuildConfig.DEBUG) {
             when(keyCode) {
@@ -192,6 +204,7 @@ class MainActivity : BaseActivity() {
             val s = (service as HostService.LocalBinder).getService()
             this.service = s
             serviceState.postValue(s.state)
+            reportVisibleCard()
         }
 
         override fun onServiceDisconnected(name: ComponentName) {
@@ -1,6 +1,8 @@
 package com.damn.anotherglass.glass.ee.host.ui
 
 import androidx.lifecycle.lifecycleScope
+import com.damn.anotherglass.glass.ee.host.R
+import com.damn.glass.shared.notifications.NotificationChange
 import com.damn.glass.shared.notifications.NotificationController
 import com.damn.anotherglass.glass.ee.host.ui.cards.NotificationsCard
 import kotlinx.coroutines.flow.launchIn
@@ -9,18 +11,24 @@ import kotlinx.coroutines.flow.onEach
 object MainActivityEx {
 
     fun MainActivity.addNotificationsModule(timeLine: ITimeline) {
-        val notificationsFlow = NotificationController.instance.getNotifications()
+        val controller = NotificationController.instance
         // Initial check
-        if (notificationsFlow.value.isNotEmpty()) {
-            timeLine.addFragment(NotificationsCard.newInstance(), 0)
+        if (controller.getNotifications().value.isNotEmpty()) {
+            timeLine.addFragment(NotificationsCard.newInstance(), ITimeline.PRIORITY_HIGH)
         }
 
-        notificationsFlow.onEach {
-            if (it.isEmpty())
-                timeLine.removeByType(NotificationsCard::class.java)
-            else when (val index = timeLine.indexOfFirst(NotificationsCard::class.java)) {
-                -1 -> timeLine.addFragment(NotificationsCard.newInstance(), 0, true)
-                else -> timeLine.setCurrent(index, true)
+        controller.getChanges().onEach {
+            when {
+                controller.getNotifications().value.isEmpty() -> {
+                    timeLine.removeByType(NotificationsCard::class.java)
+                    layouts.prefetch(R.layout.layout_notifications_stack) // for the next one
+                }
+                // removal of one of several does not need attention
+                it is NotificationChange.Removed -> Unit
+                else -> when (val index = timeLine.indexOfFirst(NotificationsCard::class.java)) {
+                    -1 -> timeLine.addFragment(NotificationsCard.newInstance(), ITimeline.PRIORITY_HIGH, true)
+                    else -> timeLine.setCurrent(index, true)
+                }
             }
         }.launchIn(this.lifecycleScope) // Assuming MainActivity is a LifecycleOwner
     }
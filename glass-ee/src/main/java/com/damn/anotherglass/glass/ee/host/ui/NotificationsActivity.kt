@@ -12,10 +12,10 @@ import com.damn.anotherglass.glass.ee.host.databinding.LayoutNotificationsStackB
 import com.damn.anotherglass.glass.ee.host.databinding.ViewPager2LayoutBinding
 import com.damn.anotherglass.glass.ee.host.ui.extensions.LayoutNotificationsStackBindingEx.bindData
 import com.damn.anotherglass.shared.notifications.NotificationData
-import com.damn.glass.shared.notifications.NotificationId
+import com.damn.glass.shared.notifications.NotificationChange
 import com.example.glass.ui.GlassGestureDetector
 import com.google.android.material.tabs.TabLayoutMediator
-import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.launchIn
 import kotlinx.coroutines.flow.onEach
 
@@ -36,14 +36,14 @@ class NotificationsActivity : BaseActivity() {
             setContentView(root)
             root.background = ColorDrawable(Color.BLACK)
             val adapter = NotificationsPagerAdapter(
-                NotificationController.instance.getNotifications(),
+                NotificationController.instance.getChanges(),
                 this@NotificationsActivity
             )
             viewPager.adapter = adapter
             TabLayoutMediator(pageIndicator, viewPager) { _, _ ->}.attach()
             onTapListener = {
-                val notification = adapter.getData(viewPager.currentItem)
-                NotificationController.instance.dismissNotification(NotificationId(notification))
+                if (viewPager.currentItem < adapter.itemCount)
+                    NotificationController.instance.dismissNotification(adapter.getKey(viewPager.currentItem))
                 true
             }
         }
@@ -55,25 +55,60 @@ class NotificationsActivity : BaseActivity() {
     }
 
     class NotificationsPagerAdapter(
-        notificationsFlow: StateFlow<List<NotificationData>>,
+        changes: Flow<NotificationChange>,
         activity: NotificationsActivity
     ) : RecyclerView.Adapter<NotificationsPagerAdapter.NotificationViewHolder>() {
 
-        private var notifications: List<NotificationData> = notificationsFlow.value
+        // same order as in NotificationController, keys are its packed (package, id)
+        private val notifications = ArrayList<NotificationData>()
+        private val keys = ArrayList<Long>()
 
         init {
-            notificationsFlow
+            setHasStableIds(true)
+            changes
                 .onEach {
-                    if (it.isEmpty()) {
+                    apply(it)
+                    if (notifications.isEmpty())
                         activity.finish() // close activity if no notifications
-                    } else {
-                        notifications = it
-                        notifyDataSetChanged()
-                    }
                 }
                 .launchIn(activity.lifecycleScope)
         }
 
+        private fun apply(change: NotificationChange) {
+            when (change) {
+                is NotificationChange.Reset -> {
+                    notifications.clear()
+                    keys.clear()
+                    change.notifications.forEach {
+                        notifications += it
+                        keys += NotificationController.instance.keyOf(it)
+                    }
+                    notifyDataSetChanged()
+                }
+
+                is NotificationChange.Inserted -> {
+                    notifications += change.notification
+                    keys += change.key
+                    notifyItemInserted(notifications.size - 1)
+                }
+
+                is NotificationChange.Updated -> {
+                    val index = keys.indexOf(change.key)
+                    if (-1 == index) return
+                    notifications[index] = change.notification
+                    notifyItemChanged(index)
+                }
+
+                is NotificationChange.Removed -> {
+                    val index = keys.indexOf(change.key)
+                    if (-1 == index) return
+                    notifications.removeAt(index)
+                    keys.removeAt(index)
+                    notifyItemRemoved(index)
+                }
+            }
+        }
+
         override fun onCreateViewHolder(parent: ViewGroup, viewType: Int) =
             NotificationViewHolder(LayoutNotificationsStackBinding.inflate(
                 LayoutInflater.from(parent.context),
@@ -88,7 +123,9 @@ class NotificationsActivity : BaseActivity() {
 
         override fun getItemCount(): Int = notifications.size
 
-        fun getData(currentItem: Int) = notifications[currentItem]
+        override fun getItemId(position: Int): Long = keys[position]
+
+        fun getKey(currentItem: Int) = keys[currentItem]
 
         class NotificationViewHolder(val binding: LayoutNotificationsStackBinding) :
             RecyclerView.ViewHolder(binding.root)
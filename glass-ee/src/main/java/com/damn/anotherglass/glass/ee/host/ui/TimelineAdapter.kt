@@ -0,0 +1,63 @@
+package com.damn.anotherglass.glass.ee.host.ui
+
+import androidx.fragment.app.Fragment
+import androidx.fragment.app.FragmentActivity
+import androidx.recyclerview.widget.DiffUtil
+import androidx.viewpager2.adapter.FragmentStateAdapter
+import com.damn.anotherglass.glass.ee.host.ui.cards.BaseFragment
+
+/**
+ * Cards of the main timeline, ordered by priority: highest first, newest first within the same priority.
+ * Each card gets a stable id and changes are dispatched with DiffUtil,
+ * so adding or removing a card creates or destroys only that card, others keep their views.
+ */
+class TimelineAdapter(activity: FragmentActivity) : FragmentStateAdapter(activity) {
+
+    private class Card(val id: Long, val priority: Int, val fragment: BaseFragment)
+
+    private var cards: List<Card> = emptyList()
+    private var nextId = 0L
+
+    fun getFragment(position: Int): BaseFragment? = cards.getOrNull(position)?.fragment
+
+    /**
+     * @return position of the new card
+     */
+    fun add(fragment: BaseFragment, priority: Int): Int {
+        var index = cards.indexOfFirst { it.priority <= priority }
+        if (-1 == index) index = cards.size
+        submit(cards.toMutableList().apply { add(index, Card(nextId++, priority, fragment)) })
+        return index
+    }
+
+    fun removeIf(predicate: (BaseFragment) -> Boolean): Boolean {
+        val updated = cards.filterNot { predicate(it.fragment) }
+        if (updated.size == cards.size) return false
+        submit(updated)
+        return true
+    }
+
+    fun indexOfFirst(predicate: (BaseFragment) -> Boolean): Int = cards.indexOfFirst { predicate(it.fragment) }
+
+    private fun submit(updated: List<Card>) {
+        val previous = cards
+        val diff = DiffUtil.calculateDiff(object : DiffUtil.Callback() {
+            override fun getOldListSize() = previous.size
+            override fun getNewListSize() = updated.size
+            override fun areItemsTheSame(oldPosition: Int, newPosition: Int) =
+                previous[oldPosition].id == updated[newPosition].id
+            // cards update themselves, only presence and order matter here
+            override fun areContentsTheSame(oldPosition: Int, newPosition: Int) = true
+        })
+        cards = updated
+        diff.dispatchUpdatesTo(this)
+    }
+
+    override fun getItemCount(): Int = cards.size
+
+    override fun createFragment(position: Int): Fragment = cards[position].fragment
+
+    override fun getItemId(position: Int): Long = cards[position].id
+
+    override fun containsItem(itemId: Long): Boolean = cards.any { it.id == itemId }
+}
@@ -17,9 +17,14 @@ package com.damn.anotherglass.glass.ee.host.ui.cards
 
 import android.app.Activity
 import android.content.Intent
+import android.view.LayoutInflater
+import android.view.View
+import android.view.ViewGroup
 import android.widget.Toast
+import androidx.annotation.LayoutRes
 import androidx.fragment.app.Fragment
 import com.damn.anotherglass.glass.ee.host.R
+import com.damn.anotherglass.glass.ee.host.ui.MainActivity
 import com.damn.anotherglass.glass.ee.host.ui.menu.MenuActivity
 
 /**
@@ -42,6 +47,13 @@ abstract class BaseFragment : Fragment(),
 
     override fun onTapAndHold() = Unit
 
+    /**
+     * Inflates card layout, or takes one prefetched by the timeline if there is one.
+     */
+    protected fun inflateCard(@LayoutRes layout: Int, inflater: LayoutInflater, container: ViewGroup?): View =
+        (activity as? MainActivity)?.layouts?.take(layout, inflater, container)
+            ?: inflater.inflate(layout, container, false)
+
     /**
      * Code for a response to selected menu item should be placed inside of this method.
      *
@@ -6,33 +6,40 @@ import android.content.Context
 import android.content.Intent
 import android.content.IntentFilter
 import android.content.pm.PackageManager
+import android.graphics.Bitmap
 import android.location.Location
 import android.location.LocationListener
 import android.location.LocationManager
 import android.os.Bundle
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.Looper
 import android.provider.Settings
 import android.util.Log
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
-import coil3.load
-import coil3.request.CachePolicy
-import coil3.request.lifecycle
-import coil3.request.transitionFactory
-import coil3.transition.CrossfadeTransition
 import com.damn.anotherglass.glass.ee.host.R
 import com.damn.anotherglass.glass.ee.host.databinding.LayoutCardMapBinding
 import com.damn.anotherglass.glass.ee.host.gpsPermissions
 import com.damn.anotherglass.glass.ee.host.utility.hasPermission
 import com.damn.anotherglass.glass.ee.host.utility.locationManager
-import java.util.Locale
+import com.damn.glass.shared.map.MapRenderer
 
 
 class MapCard : BaseFragment() {
 
     private lateinit var locationManager: LocationManager
     private var root: LayoutCardMapBinding? = null
-    private var lastMapUrl: String? = null
+
+    // composes map from cached tiles, moving does not need network
+    private var renderer: MapRenderer? = null
+    private var lastLocation: Location? = null
+
+    // tiles are composed off main thread, only the bitmap swap is posted back
+    private var renderThread: HandlerThread? = null
+    private var renderHandler: Handler? = null
+    private val mainHandler = Handler(Looper.getMainLooper())
 
     private val statusReceiver: BroadcastReceiver = object : BroadcastReceiver() {
         override fun onReceive(context: Context, intent: Intent) {
@@ -69,7 +76,7 @@ class MapCard : BaseFragment() {
         inflater: LayoutInflater,
         container: ViewGroup?,
         savedInstanceState: Bundle?
-    ): View? = LayoutCardMapBinding.inflate(inflater, container, false)
+    ): View? = LayoutCardMapBinding.bind(inflateCard(R.layout.layout_card_map, inflater, container))
         .also { root = it }
         .root
 
@@ -109,7 +116,14 @@ class MapCard : BaseFragment() {
             requireContext().registerReceiver(statusReceiver, it)
         }
         val context = requireContext()
-        lastMapUrl = null // we lost image, force reload
+        renderThread = HandlerThread(RENDER_THREAD).also {
+            it.start()
+            renderHandler = Handler(it.looper)
+        }
+        renderer = MapRenderer(context, MAP_WIDTH, MAP_HEIGHT).apply {
+            // tiles that were missing have arrived
+            setOnInvalidated { lastLocation?.let { updateMap(it) } }
+        }
         @SuppressLint("MissingPermission")
         if (hasLocationPermissions(context)) {
             locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER)?.let {
@@ -120,6 +134,13 @@ class MapCard : BaseFragment() {
 
     override fun onPause() {
         super.onPause()
+        renderer?.release()
+        renderer = null
+        renderHandler?.removeCallbacksAndMessages(null)
+        renderHandler = null
+        renderThread?.quitSafely()
+        renderThread = null
+        mainHandler.removeCallbacksAndMessages(null)
         val context = requireContext()
         if (hasLocationPermissions(context)) {
             locationManager.removeUpdates(locationListener)
@@ -148,21 +169,24 @@ class MapCard : BaseFragment() {
     }
 
     private fun updateMap(location: Location) {
-        root?.apply {
-            @SuppressLint("SetTextI18n")
-            lblGpsStatus.text = "${location.latitude}, ${location.longitude}"
-            mapView.apply {
-                val url = getMapUrl(location)
-                if (lastMapUrl == url) return
-                load(url) {
-                    diskCachePolicy(CachePolicy.DISABLED)
-                    lifecycle(getViewLifecycleOwner())
-                    transitionFactory(CrossfadeTransition.Factory())
-                    listener(
-                        onSuccess = { _, _ -> lastMapUrl = url },
-                        onError = { _, _ -> Log.e(TAG, "Failed to load $url") })
-                }
-            }
+        lastLocation = location
+        @SuppressLint("SetTextI18n")
+        root?.lblGpsStatus?.text = "${location.latitude}, ${location.longitude}"
+        val renderer = renderer ?: return
+        val handler = renderHandler ?: return
+        // only the latest fix is worth drawing
+        handler.removeCallbacksAndMessages(null)
+        handler.post { render(renderer, location) }
+    }
+
+    // render thread
+    private fun render(renderer: MapRenderer, location: Location) {
+        // same tiles and marker has not moved by a pixel, nothing to redraw
+        if (renderer.isUpToDate(location)) return
+        // renderer draws into the same bitmap next time, the view needs one of its own
+        val map = renderer.render(location).copy(Bitmap.Config.RGB_565, false)
+        mainHandler.post {
+            if (this.renderer === renderer) root?.mapView?.setImageBitmap(map)
         }
     }
 
@@ -180,7 +204,10 @@ class MapCard : BaseFragment() {
     companion object {
 
         private const val TAG = "MapCard"
+        private const val RENDER_THREAD = "MapCardRenderer"
         private const val PERMISSIONS_REQUEST_LOCATION = 1
+        private const val MAP_WIDTH = 640
+        private const val MAP_HEIGHT = 360
 
         // We need at least one
         private fun hasLocationPermissions(context: Context) =
@@ -201,18 +228,6 @@ class MapCard : BaseFragment() {
             }
         }
 
-        // todo: copypasted from Explorer app
-        private fun getMapUrl(location: Location): String {
-            return String.format(
-                Locale.getDefault(),
-                "https://static-maps.yandex.ru/1.x/?lang=en_US" +
-                        "&size=640,360&z=15&l=map&pt=" +
-                        "%f,%f" +
-                        ",pm2rdl",
-                location.longitude, location.latitude
-            )
-        }
-
         @JvmStatic
         fun newInstance(): BaseFragment = MapCard()
     }
@@ -8,10 +8,13 @@ import android.view.View
 import android.view.ViewGroup
 import androidx.lifecycle.lifecycleScope
 import com.damn.glass.shared.notifications.NotificationController
+import com.damn.anotherglass.glass.ee.host.R
 import com.damn.anotherglass.glass.ee.host.databinding.LayoutNotificationsStackBinding
 import com.damn.anotherglass.glass.ee.host.ui.NotificationsActivity
 import com.damn.anotherglass.glass.ee.host.ui.extensions.LayoutNotificationsStackBindingEx.bindData
+import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.launchIn
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.onEach
 
 class NotificationsCard : BaseFragment() {
@@ -27,19 +30,24 @@ class NotificationsCard : BaseFragment() {
         inflater: LayoutInflater,
         container: ViewGroup?,
         savedInstanceState: Bundle?
-    ): View? = LayoutNotificationsStackBinding.inflate(inflater).apply {
+    ): View? = LayoutNotificationsStackBinding.bind(
+        inflateCard(R.layout.layout_notifications_stack, inflater, container)
+    ).apply {
         binding = this
     }.root
 
     override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
         super.onViewCreated(view, savedInstanceState)
         NotificationController.instance.getNotifications()
-            .onEach {
-                if (it.isEmpty()) return@onEach  // we are about to be removed
+            // only the last one is shown, updates of the others do not matter
+            .map { it.lastOrNull() to it.size }
+            .distinctUntilChanged()
+            .onEach { (last, size) ->
+                if (null == last) return@onEach  // we are about to be removed
                 binding?.apply {
-                    bindData(it.last(), requireContext())
+                    bindData(last, requireContext())
                     // todo: add another place for counter
-                    if (it.size > 1) footer.text = "" + it.size
+                    if (size > 1) footer.text = "" + size
                 }
             }
             .launchIn(viewLifecycleOwner.lifecycleScope)
@@ -15,6 +15,7 @@ import com.damn.anotherglass.glass.ee.host.R
 import com.damn.anotherglass.glass.ee.host.core.BatteryStatus
 import com.damn.anotherglass.glass.ee.host.core.ConnectionUtils.getHostIPAddress
 import com.damn.anotherglass.glass.ee.host.core.IService
+import com.damn.anotherglass.glass.ee.host.core.Settings
 import com.damn.anotherglass.glass.ee.host.databinding.LayoutCardServiceBinding
 import com.damn.anotherglass.glass.ee.host.ui.qr2.CameraActivity
 import com.damn.anotherglass.glass.ee.host.ui.MainActivity
@@ -25,7 +26,7 @@ class ServiceStateCard : BaseFragment() {
     // todo:
     //  - voice commands (only for some time interval, e.g. 5 seconds, to conserve battery)
     // todo WIP:
-    //  - persist last used IPs, maybe also remember WiFi name (will require location permission)
+    //  - remember WiFi name for recent hosts (will require location permission)
 
     private lateinit var binding: LayoutCardServiceBinding
     private val batteryStatus: BatteryStatus by lazy { BatteryStatus(requireContext()) }
@@ -128,6 +129,7 @@ class ServiceStateCard : BaseFragment() {
             IService.ServiceState.INITIALIZING -> R.string.msg_service_initializing
             IService.ServiceState.WAITING -> R.string.msg_service_waiting
             IService.ServiceState.CONNECTED -> R.string.msg_service_connected
+            IService.ServiceState.RECONNECTING -> R.string.msg_service_reconnecting
             IService.ServiceState.DISCONNECTED -> R.string.msg_service_disconnected
         }
 
@@ -136,6 +138,7 @@ class ServiceStateCard : BaseFragment() {
             IService.ServiceState.INITIALIZING -> ""
             IService.ServiceState.WAITING -> ""
             IService.ServiceState.CONNECTED -> resources.getString(R.string.msg_service_connected_hint)
+            IService.ServiceState.RECONNECTING -> resources.getString(R.string.msg_service_connected_hint)
             IService.ServiceState.DISCONNECTED -> ""
         }
 
@@ -153,14 +156,18 @@ class ServiceStateCard : BaseFragment() {
                 text = context.getString(R.string.lbl_barcode),
                 icon = R.drawable.ic_qr_code_scanner,
                 tag = "barcode_scanner"
-            ),
-            // todo: last used IPs
-            DynamicMenuActivity.DynamicMenuItem(
-                id = 2,
-                text = "192.168.1.241",
-                icon = R.drawable.ic_save,
-                tag = "192.168.1.241"
             )
-        )
+        ).apply {
+            Settings(context).recentHosts.forEachIndexed { index, ip ->
+                add(
+                    DynamicMenuActivity.DynamicMenuItem(
+                        id = 2 + index,
+                        text = ip,
+                        icon = R.drawable.ic_save,
+                        tag = ip
+                    )
+                )
+            }
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.damn.anotherglass.glass.ee.host.ui.cards
 
 import android.graphics.Typeface
 import android.os.Bundle
+import android.os.SystemClock
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
@@ -9,9 +10,11 @@ import android.widget.FrameLayout
 import android.widget.TextView
 import com.damn.anotherglass.glass.ee.host.R
 import com.damn.anotherglass.glass.ee.host.core.Settings
+import com.damn.anotherglass.glass.ee.host.core.tiltawake.TiltToWake
 import com.damn.anotherglass.glass.ee.host.core.tiltawake.TiltToWakeService
 import com.damn.anotherglass.glass.ee.host.ui.cards.TextLayoutFragment.Companion.BODY_TEXT_SIZE
 import com.damn.anotherglass.glass.ee.host.utility.isRunning
+import java.util.concurrent.TimeUnit
 
 class TiltToWakeCard : BaseFragment() {
 
@@ -39,12 +42,28 @@ class TiltToWakeCard : BaseFragment() {
         return view
     }
 
+    override fun onResume() {
+        super.onResume()
+        textView.text = serviceStatusLabel(requireContext().isRunning<TiltToWakeService>())
+    }
+
     private fun serviceStatusLabel(running: Boolean) =
         when {
-            running -> getString(R.string.lbl_wake_service_tap_to_stop)
+            running -> getString(R.string.lbl_wake_service_tap_to_stop) + "\n" + statsLabel()
             else -> getString(R.string.wake_service_tap_to_start)
         }
 
+    // what detector has cost so far, to see it is cheap enough to keep running
+    private fun statsLabel(): String = TiltToWake.stats.run {
+        getString(
+            R.string.lbl_wake_service_stats,
+            deliveries.get(),
+            TimeUnit.NANOSECONDS.toMillis(cpuNanos.get()),
+            wakes.get(),
+            TimeUnit.MILLISECONDS.toMinutes(SystemClock.elapsedRealtime() - since)
+        )
+    }
+
     // We do not properly update service status if it will be changed outside of this card
     override fun onTapAndHold() {
         super.onTapAndHold()
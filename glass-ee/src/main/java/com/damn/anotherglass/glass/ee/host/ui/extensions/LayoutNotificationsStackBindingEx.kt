@@ -1,36 +1,50 @@
 package com.damn.anotherglass.glass.ee.host.ui.extensions
 
 import android.content.Context
-import android.graphics.BitmapFactory
 import android.text.format.DateUtils
 import android.util.Log
 import com.damn.anotherglass.glass.ee.host.databinding.LayoutNotificationsStackBinding
 import com.damn.anotherglass.shared.notifications.NotificationData
+import com.damn.glass.shared.image.BitmapCache
+import com.damn.glass.shared.notifications.displayText
 
 object LayoutNotificationsStackBindingEx {
 
     private const val TAG = "LayoutNotificationsStackBindingEx"
 
+    // icon takes a third of the card, phone never sends them larger than that
+    private const val ICON_SIZE = 128
+
     fun LayoutNotificationsStackBinding.bindData(
         last: NotificationData,
         context: Context
     ) {
         title.text = last.title
-        text.text = last.text
+        text.text = last.displayText()
         footer.text = last.tickerText
         timestamp.text = DateUtils.formatDateTime(
             context,
             last.postedTime,
             DateUtils.FORMAT_SHOW_DATE or DateUtils.FORMAT_SHOW_TIME or DateUtils.FORMAT_ABBREV_ALL
         )
-        if (last.icon == null) {
+        val icon = last.icon
+        if (icon == null) {
+            imgIcon.tag = null
             imgIcon.setImageResource(android.R.drawable.ic_dialog_info)
-        } else {
-            try {
-                val bitmap = BitmapFactory.decodeByteArray(last.icon, 0, last.icon.size)
+            return
+        }
+        val key = BitmapCache.keyOf(last.iconHash, icon, ICON_SIZE, ICON_SIZE)
+        if (imgIcon.tag == key) return // already shown
+        imgIcon.tag = key
+        val cache = BitmapCache.getInstance()
+        if (null == cache.get(key)) imgIcon.setImageDrawable(null) // do not show previous one while decoding
+        cache.load(key, icon, ICON_SIZE, ICON_SIZE) { bitmap ->
+            // view may have been bound to another notification meanwhile
+            if (imgIcon.tag != key) return@load
+            if (null != bitmap) {
                 imgIcon.setImageBitmap(bitmap)
-            } catch (e: Exception) {
-                Log.e(TAG, "Failed to decode icon: " + e.message, e)
+            } else {
+                Log.e(TAG, "Failed to decode icon")
                 imgIcon.setImageResource(android.R.drawable.ic_dialog_info)
             }
         }
@@ -1,6 +1,6 @@
 package com.damn.anotherglass.glass.ee.host.ui.qr2
 
-import android.annotation.SuppressLint
+import android.os.SystemClock
 import android.util.Log
 import android.util.Size
 import androidx.camera.core.ImageAnalysis
@@ -9,6 +9,8 @@ import com.google.zxing.BarcodeFormat
 import com.google.zxing.BinaryBitmap
 import com.google.zxing.ChecksumException
 import com.google.zxing.DecodeHintType
+import com.google.zxing.FormatException
+import com.google.zxing.NotFoundException
 import com.google.zxing.PlanarYUVLuminanceSource
 import com.google.zxing.common.HybridBinarizer
 import com.google.zxing.qrcode.QRCodeReader
@@ -17,6 +19,10 @@ import java.util.concurrent.Executor
 
 /**
  * Sets up and performs image analysis for QR code detection.
+ * Most frames only look at the center of the image at half resolution, that is where the code is
+ * when pairing and it is several times less work than the whole frame. From time to time the center
+ * is checked at full resolution (code is far) and the whole frame at half resolution (code is off center).
+ * Buffers and the reader are reused between frames, analysis runs on a single camera thread.
  */
 class QRCodeImageAnalysis(
     private val executor: Executor,
@@ -27,6 +33,27 @@ class QRCodeImageAnalysis(
         fun onQrCodeDetected(result: String)
     }
 
+    private enum class Pass(val region: Float, val scale: Int) {
+        Center(CENTER_REGION, 2),
+        CenterFullResolution(CENTER_REGION, 1),
+        FullFrame(1f, 2)
+    }
+
+    private val reader = QRCodeReader()
+
+    // all below is used on the analysis thread only
+    private var luminance = ByteArray(0)
+    private var rows = ByteArray(0)
+    private var frames = 0L
+    private var decodeNanos = 0L
+    private val startTime = SystemClock.elapsedRealtime()
+
+    /**
+     * Average time spent on a frame, ms
+     */
+    val averageDecodeTime: Float
+        get() = if (0L == frames) 0f else decodeNanos / frames / 1_000_000f
+
     /**
      * Builds and returns an [ImageAnalysis] use case configured for QR code scanning.
      */
@@ -41,61 +68,98 @@ class QRCodeImageAnalysis(
     /**
      * Performs an analysis of the image, searching for the QR code, using the ZXing library.
      * This method is called for each frame from the camera.
-     *
-     * `@SuppressLint("UnsafeExperimentalUsageError", "UnsafeOptInUsageError")`
-     * is used because `image.getImage()` is an experimental API.
      */
-    @SuppressLint("UnsafeExperimentalUsageError", "UnsafeOptInUsageError")
-    override fun analyze(imageProxy: ImageProxy) { // Renamed 'image' to 'imageProxy' for clarity
-        val mediaImage = imageProxy.image
-        if (mediaImage == null) {
-            // IMPORTANT: Close the ImageProxy even if mediaImage is null
+    override fun analyze(imageProxy: ImageProxy) {
+        // IMPORTANT: You must close the ImageProxy, otherwise subsequent images may not be received.
+        val result = try {
+            val start = SystemClock.elapsedRealtimeNanos()
+            val pass = SCHEDULE[(frames % SCHEDULE.size).toInt()]
+            val text = decode(imageProxy, pass)
+            decodeNanos += SystemClock.elapsedRealtimeNanos() - start
+            frames++
+            if (0L == frames % LOG_EVERY)
+                Log.d(TAG, "$frames frames, ${"%.1f".format(averageDecodeTime)}ms per frame")
+            text
+        } finally {
             imageProxy.close()
-        } else {
-            val buffer: ByteBuffer = mediaImage.planes[0].buffer
-            val imageBytes = ByteArray(buffer.remaining())
-            buffer.get(imageBytes)
-            val width: Int = mediaImage.width
-            val height: Int = mediaImage.height
-
-            // Create a PlanarYUVLuminanceSource
-            val source = PlanarYUVLuminanceSource(
-                imageBytes,
-                width,
-                height,
-                0,
-                0,
-                width,
-                height,
-                false
-            )
-
-            val binaryBitmap = BinaryBitmap(HybridBinarizer(source))
-
-            try {
-                val result = QRCodeReader().decode(
-                    binaryBitmap,
-                    mapOf(
-                        DecodeHintType.POSSIBLE_FORMATS to listOf(BarcodeFormat.QR_CODE),
-                        DecodeHintType.CHARACTER_SET to "UTF-8"
-                    )
-                )
-                if(result.text.isBlank()) return
-                callback.onQrCodeDetected(result.text)
-            } catch (e: com.google.zxing.NotFoundException) {
-                // No QR code found in the current frame. This is expected.
-            } catch (e: ChecksumException) {
-                Log.e(TAG, "QR Code decoding error (ChecksumException)", e)
-            } catch (e: com.google.zxing.FormatException) {
-                Log.e(TAG, "QR Code decoding error (FormatException)", e)
-            } finally {
-                // IMPORTANT: You must close the ImageProxy, otherwise subsequent images may not be received.
-                imageProxy.close()
+        }
+        if (result.isNullOrBlank()) return
+        Log.i(TAG, "Detected in ${SystemClock.elapsedRealtime() - startTime}ms, $frames frames, " +
+                "${"%.1f".format(averageDecodeTime)}ms per frame")
+        callback.onQrCodeDetected(result)
+    }
+
+    private fun decode(image: ImageProxy, pass: Pass): String? {
+        // Y plane is the luminance as is
+        val plane = image.planes[0]
+        val width = (image.width * pass.region).toInt()
+        val height = (image.height * pass.region).toInt()
+        val left = (image.width - width) / 2
+        val top = (image.height - height) / 2
+        val outWidth = width / pass.scale
+        val outHeight = height / pass.scale
+        if (luminance.size < outWidth * outHeight) luminance = ByteArray(outWidth * outHeight)
+        if (1 == pass.scale)
+            crop(plane.buffer, plane.rowStride, left, top, width, height)
+        else
+            downscale(plane.buffer, plane.rowStride, left, top, outWidth, outHeight)
+
+        val source = PlanarYUVLuminanceSource(luminance, outWidth, outHeight, 0, 0, outWidth, outHeight, false)
+        return try {
+            reader.decode(BinaryBitmap(HybridBinarizer(source)), HINTS).text
+        } catch (e: NotFoundException) {
+            null // No QR code found in the current frame. This is expected.
+        } catch (e: ChecksumException) {
+            Log.e(TAG, "QR Code decoding error (ChecksumException)", e)
+            null
+        } catch (e: FormatException) {
+            Log.e(TAG, "QR Code decoding error (FormatException)", e)
+            null
+        } finally {
+            reader.reset()
+        }
+    }
+
+    private fun crop(buffer: ByteBuffer, rowStride: Int, left: Int, top: Int, width: Int, height: Int) {
+        for (y in 0 until height) {
+            buffer.position((top + y) * rowStride + left)
+            buffer.get(luminance, y * width, width)
+        }
+    }
+
+    // 2x2 average, also takes some sensor noise away
+    private fun downscale(buffer: ByteBuffer, rowStride: Int, left: Int, top: Int, outWidth: Int, outHeight: Int) {
+        val width = outWidth * 2
+        if (rows.size < width * 2) rows = ByteArray(width * 2)
+        for (y in 0 until outHeight) {
+            buffer.position((top + y * 2) * rowStride + left)
+            buffer.get(rows, 0, width)
+            buffer.position((top + y * 2 + 1) * rowStride + left)
+            buffer.get(rows, width, width)
+            val out = y * outWidth
+            for (x in 0 until outWidth) {
+                val i = x * 2
+                val sum = (rows[i].toInt() and 0xff) + (rows[i + 1].toInt() and 0xff) +
+                        (rows[width + i].toInt() and 0xff) + (rows[width + i + 1].toInt() and 0xff)
+                luminance[out + x] = (sum shr 2).toByte()
             }
         }
     }
 
     companion object {
         private const val TAG: String = "QRCodeImageAnalysis"
+
+        private const val CENTER_REGION = 0.6f
+        private const val LOG_EVERY = 50L
+
+        private val SCHEDULE = arrayOf(
+            Pass.Center, Pass.Center, Pass.Center, Pass.CenterFullResolution,
+            Pass.Center, Pass.Center, Pass.Center, Pass.FullFrame
+        )
+
+        private val HINTS = mapOf(
+            DecodeHintType.POSSIBLE_FORMATS to listOf(BarcodeFormat.QR_CODE),
+            DecodeHintType.CHARACTER_SET to "UTF-8"
+        )
     }
-}
\ No newline at end of file
+}
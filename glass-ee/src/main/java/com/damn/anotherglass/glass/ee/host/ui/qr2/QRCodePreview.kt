@@ -16,6 +16,8 @@ class QRCodePreview(
     private val previewView: PreviewView
 ) {
 
+    // analyzer reuses its reader and buffers, so it must stay on one thread;
+    // STRATEGY_KEEP_ONLY_LATEST does not hand out the next frame until the current one is closed
     private var cameraExecutor: ExecutorService = Executors.newSingleThreadExecutor()
 
     fun startCamera(callback: QrCodeAnalysisCallback) {
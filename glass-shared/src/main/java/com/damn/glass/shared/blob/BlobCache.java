@@ -0,0 +1,148 @@
+package com.damn.glass.shared.blob;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.blob.Blobs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Disk-backed LRU cache of blobs received from the phone, keyed by content hash.
+// Survives restarts, so icons and album art do not have to be transferred again.
+// Does file IO, keep it off main thread; even the directory is scanned on first use, not in constructor.
+// Hashes come from the network and become file names, so anything but a hex SHA-1 is a miss.
+public class BlobCache {
+
+    private static final String TAG = "BlobCache";
+    private static final String DIRECTORY = "blobs";
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    // hash -> size, in access order
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mSize;
+    private boolean mIndexed;
+
+    public BlobCache(@NonNull Context context) {
+        this(new File(context.getCacheDir(), DIRECTORY), DEFAULT_MAX_BYTES);
+    }
+
+    public BlobCache(@NonNull File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    private void index() {
+        if (mIndexed)
+            return;
+        mIndexed = true;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            Log.e(TAG, "Failed to create " + mDirectory);
+        File[] files = mDirectory.listFiles();
+        if (null == files)
+            return;
+        // restore LRU order from modification time, it is updated on every read
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (!Blobs.isHash(file.getName()))
+                continue;
+            mEntries.put(file.getName(), file.length());
+            mSize += file.length();
+        }
+    }
+
+    public synchronized boolean contains(@NonNull String hash) {
+        if (!Blobs.isHash(hash))
+            return false;
+        index();
+        return mEntries.containsKey(hash);
+    }
+
+    @Nullable
+    public synchronized byte[] get(@NonNull String hash) {
+        if (!Blobs.isHash(hash))
+            return null;
+        index();
+        if (null == mEntries.get(hash))
+            return null;
+        File file = new File(mDirectory, hash);
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream stream = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                int count = stream.read(data, read, data.length - read);
+                if (count < 0)
+                    throw new IOException("Unexpected end of " + file);
+                read += count;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read blob " + hash, e);
+            remove(hash);
+            return null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+        return data;
+    }
+
+    public synchronized void put(@NonNull String hash, @NonNull byte[] data) {
+        if (!Blobs.isHash(hash)) {
+            Log.w(TAG, "Not a blob hash: " + hash);
+            return;
+        }
+        index();
+        if (mEntries.containsKey(hash))
+            return;
+        File file = new File(mDirectory, hash);
+        try (OutputStream stream = new FileOutputStream(file)) {
+            stream.write(data);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write blob " + hash, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return;
+        }
+        mEntries.put(hash, (long) data.length);
+        mSize += data.length;
+        trim();
+    }
+
+    private void remove(@NonNull String hash) {
+        Long size = mEntries.remove(hash);
+        if (null != size)
+            mSize -= size;
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, hash).delete();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+        while (mSize > mMaxBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            mSize -= entry.getValue();
+            it.remove();
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, entry.getKey()).delete();
+        }
+    }
+}
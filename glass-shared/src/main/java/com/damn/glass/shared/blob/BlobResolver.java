@@ -0,0 +1,193 @@
+package com.damn.glass.shared.blob;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.blob.BlobAPI;
+import com.damn.anotherglass.shared.blob.BlobData;
+import com.damn.anotherglass.shared.blob.BlobHolder;
+import com.damn.anotherglass.shared.blob.BlobRequest;
+import com.damn.anotherglass.shared.rpc.RPCMessage;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+// Replaces blob references in incoming messages with the bytes, from BlobCache or requested from the phone.
+// Messages of the same service are passed on in the order they were received, so one waiting for a blob
+// holds back only later messages of its service (e.g. removal of the notification), GPS or map traffic goes on.
+// Not thread safe, meant to be used from main thread, RPC listener is called on it.
+// BlobCache is only touched on a background thread, results come back through the main thread handler.
+public class BlobResolver {
+
+    private static final String TAG = "BlobResolver";
+
+    public interface Sender {
+        void send(@NonNull RPCMessage message);
+    }
+
+    public interface Consumer {
+        void accept(@NonNull RPCMessage message);
+    }
+
+    private final BlobCache mCache;
+    private final Sender mSender;
+    private final Consumer mConsumer;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // service -> messages waiting behind one that needs a blob, only services with something waiting
+    private final Map<String, ArrayDeque<RPCMessage>> mQueues = new LinkedHashMap<>();
+    private final Set<String> mLookups = new HashSet<>(); // being read from the cache
+    private final Set<String> mRequested = new HashSet<>(); // asked the phone for
+    private final Set<String> mMissing = new HashSet<>(); // phone does not have them anymore
+    private final Map<String, byte[]> mLoaded = new HashMap<>(); // ready for queued messages
+
+    public BlobResolver(@NonNull BlobCache cache, @NonNull Sender sender, @NonNull Consumer consumer) {
+        mCache = cache;
+        mSender = sender;
+        mConsumer = consumer;
+    }
+
+    public void onMessage(@NonNull RPCMessage message) {
+        if (BlobAPI.ID.equals(message.service)) {
+            if (message.payload instanceof BlobData)
+                onBlob((BlobData) message.payload);
+            return;
+        }
+        ArrayDeque<RPCMessage> queue = mQueues.get(message.service);
+        if (null == queue) {
+            if (isResolved(message)) {
+                mConsumer.accept(message);
+                return;
+            }
+            queue = new ArrayDeque<>();
+            mQueues.put(message.service, queue);
+        }
+        queue.add(message);
+        lookup(message);
+        drain();
+    }
+
+    // connection is gone, pass on what we have without waiting for blobs
+    public void flush() {
+        for (ArrayDeque<RPCMessage> queue : mQueues.values()) {
+            for (RPCMessage message : queue) {
+                if (message.payload instanceof BlobHolder)
+                    attach((BlobHolder) message.payload);
+                mConsumer.accept(message);
+            }
+        }
+        mQueues.clear();
+        mLookups.clear();
+        mRequested.clear();
+        mMissing.clear();
+        mLoaded.clear();
+    }
+
+    public void close() {
+        flush();
+        mHandler.removeCallbacksAndMessages(null);
+        mExecutor.shutdown();
+    }
+
+    private void onBlob(@NonNull BlobData blob) {
+        mRequested.remove(blob.hash);
+        if (null != blob.data) {
+            mLoaded.put(blob.hash, blob.data);
+            final String hash = blob.hash;
+            final byte[] data = blob.data;
+            execute(() -> mCache.put(hash, data));
+        } else {
+            mMissing.add(blob.hash);
+        }
+        drain();
+    }
+
+    private void onLookup(@NonNull String hash, @Nullable byte[] data) {
+        if (!mLookups.remove(hash))
+            return; // flushed meanwhile
+        if (null != data) {
+            mLoaded.put(hash, data);
+            drain();
+        } else if (mRequested.add(hash)) {
+            Log.d(TAG, "Requesting blob " + hash);
+            mSender.send(new RPCMessage(BlobAPI.ID, new BlobRequest(hash)));
+        }
+    }
+
+    private void drain() {
+        for (Iterator<ArrayDeque<RPCMessage>> queues = mQueues.values().iterator(); queues.hasNext(); ) {
+            ArrayDeque<RPCMessage> queue = queues.next();
+            while (!queue.isEmpty()) {
+                RPCMessage head = queue.peek();
+                if (!isResolved(head))
+                    break;
+                queue.poll();
+                if (head.payload instanceof BlobHolder)
+                    attach((BlobHolder) head.payload);
+                mConsumer.accept(head);
+            }
+            if (queue.isEmpty())
+                queues.remove();
+        }
+        // keep only what messages still waiting need
+        Set<String> needed = new HashSet<>();
+        for (ArrayDeque<RPCMessage> queue : mQueues.values())
+            for (RPCMessage message : queue)
+                if (message.payload instanceof BlobHolder)
+                    needed.add(((BlobHolder) message.payload).getBlobHash());
+        for (Iterator<String> it = mLoaded.keySet().iterator(); it.hasNext(); )
+            if (!needed.contains(it.next()))
+                it.remove();
+    }
+
+    private boolean isResolved(@NonNull RPCMessage message) {
+        if (!(message.payload instanceof BlobHolder))
+            return true;
+        BlobHolder holder = (BlobHolder) message.payload;
+        String hash = holder.getBlobHash();
+        return null != holder.getBlob() || null == hash || mMissing.contains(hash) || mLoaded.containsKey(hash);
+    }
+
+    // cache first, phone is asked if it is not there
+    private void lookup(@NonNull RPCMessage message) {
+        if (!(message.payload instanceof BlobHolder))
+            return;
+        BlobHolder holder = (BlobHolder) message.payload;
+        final String hash = holder.getBlobHash();
+        if (null != holder.getBlob() || null == hash || mLoaded.containsKey(hash)
+                || mMissing.contains(hash) || mRequested.contains(hash) || !mLookups.add(hash))
+            return;
+        execute(() -> {
+            byte[] data = mCache.get(hash);
+            mHandler.post(() -> onLookup(hash, data));
+        });
+    }
+
+    private void attach(@NonNull BlobHolder holder) {
+        String hash = holder.getBlobHash();
+        if (null == holder.getBlob() && null != hash)
+            holder.setBlob(mLoaded.get(hash));
+    }
+
+    private void execute(@NonNull Runnable task) {
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // closed already
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.damn.glass.shared.device;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.PowerManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.device.DisplayStateData;
+
+// Tracks screen on/off and the visible card, reports every change
+public class DisplayStateReporter {
+
+    public interface Listener {
+        void onDisplayStateChanged(@NonNull DisplayStateData data);
+    }
+
+    private final Context mContext;
+    private final Listener mListener;
+    private BroadcastReceiver mReceiver;
+
+    private boolean mScreenOn = true;
+    @Nullable
+    private String mCard;
+
+    public DisplayStateReporter(@NonNull Context context, @NonNull Listener listener) {
+        mContext = context;
+        mListener = listener;
+    }
+
+    @SuppressWarnings("deprecation") // isInteractive() is API 20+
+    public void start() {
+        if (mReceiver != null) {
+            return; // already started
+        }
+        mReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                setScreenOn(Intent.ACTION_SCREEN_ON.equals(intent.getAction()));
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        mContext.registerReceiver(mReceiver, filter);
+        PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+        mScreenOn = null == pm || pm.isScreenOn();
+    }
+
+    public void stop() {
+        if (mReceiver != null) {
+            mContext.unregisterReceiver(mReceiver);
+            mReceiver = null;
+        }
+    }
+
+    public void setVisibleCard(@Nullable String card) {
+        if (null == card ? null == mCard : card.equals(mCard))
+            return;
+        mCard = card;
+        mListener.onDisplayStateChanged(getState());
+    }
+
+    @NonNull
+    public DisplayStateData getState() {
+        return new DisplayStateData(mScreenOn, mCard);
+    }
+
+    private void setScreenOn(boolean screenOn) {
+        if (screenOn == mScreenOn)
+            return;
+        mScreenOn = screenOn;
+        mListener.onDisplayStateChanged(getState());
+    }
+}
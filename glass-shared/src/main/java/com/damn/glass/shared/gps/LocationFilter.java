@@ -0,0 +1,167 @@
+package com.damn.glass.shared.gps;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.gps.DeadReckoning;
+import com.damn.anotherglass.shared.gps.Location;
+
+// Constant velocity Kalman filter over phone fixes, one independent [position, velocity] filter
+// per axis in meters east and north of the first fix. Smooths out GPS noise and estimates where we are
+// between fixes, which phone sends only when plain extrapolation would go wrong (see GPSRateController).
+public class LocationFilter {
+
+    private static final double ACCELERATION_NOISE = 1.0; // (m/s^2)^2, walking and city driving
+    private static final double SPEED_NOISE = 0.5 * 0.5; // (m/s)^2, GPS doppler speed is quite good
+    private static final double MIN_ACCURACY = 3.0; // meters
+    private static final double RESET_DISTANCE = 10 * 1000.0; // flat earth does not hold further away
+    private static final double OUTLIER_SIGMAS = 5.0;
+    private static final double OUTLIER_DISTANCE = 100.0;
+
+    private static class Axis {
+        double position;
+        double velocity;
+        // covariance
+        double pp;
+        double pv;
+        double vv;
+
+        void reset(double position, double velocity, double positionVariance, double velocityVariance) {
+            this.position = position;
+            this.velocity = velocity;
+            pp = positionVariance;
+            pv = 0;
+            vv = velocityVariance;
+        }
+
+        void predict(double dt) {
+            position += velocity * dt;
+            double q = ACCELERATION_NOISE;
+            pp += 2 * dt * pv + dt * dt * vv + q * dt * dt * dt / 3;
+            pv += dt * vv + q * dt * dt / 2;
+            vv += q * dt;
+        }
+
+        // how unlikely is this measurement, in standard deviations
+        double sigmas(double measured, double variance) {
+            return Math.abs(measured - position) / Math.sqrt(pp + variance);
+        }
+
+        void updatePosition(double measured, double variance) {
+            double s = pp + variance;
+            double kp = pp / s;
+            double kv = pv / s;
+            double innovation = measured - position;
+            position += kp * innovation;
+            velocity += kv * innovation;
+            vv -= kv * pv;
+            pp *= 1 - kp;
+            pv *= 1 - kp;
+        }
+
+        void updateVelocity(double measured, double variance) {
+            double s = vv + variance;
+            double kp = pv / s;
+            double kv = vv / s;
+            double innovation = measured - velocity;
+            position += kp * innovation;
+            velocity += kv * innovation;
+            pp -= kp * pv;
+            pv *= 1 - kv;
+            vv *= 1 - kv;
+        }
+    }
+
+    private final Axis mEast = new Axis();
+    private final Axis mNorth = new Axis();
+
+    private boolean mInitialized;
+    private long mTime; // elapsedRealtime() the state is for
+    private double mOriginLatitude;
+    private double mOriginLongitude;
+    private double mAltitude;
+
+    /**
+     * @param time our elapsedRealtime() of the fix
+     */
+    public void update(@NonNull Location fix, long time) {
+        double accuracy = Math.max(MIN_ACCURACY, fix.accuracy);
+        double variance = accuracy * accuracy;
+        double bearing = Math.toRadians(fix.bearing);
+        double east = fix.speed * Math.sin(bearing);
+        double north = fix.speed * Math.cos(bearing);
+        mAltitude = fix.altitude;
+
+        if (!mInitialized
+                || DeadReckoning.distance(mOriginLatitude, mOriginLongitude, fix.latitude, fix.longitude) > RESET_DISTANCE) {
+            reset(fix, time, variance, east, north);
+            return;
+        }
+        predict(time);
+        double x = x(fix.longitude);
+        double y = y(fix.latitude);
+        // after a tunnel or a long pause extrapolated state is just wrong, do not average with it
+        if (Math.hypot(x - mEast.position, y - mNorth.position) > OUTLIER_DISTANCE
+                && Math.max(mEast.sigmas(x, variance), mNorth.sigmas(y, variance)) > OUTLIER_SIGMAS) {
+            reset(fix, time, variance, east, north);
+            return;
+        }
+        mEast.updatePosition(x, variance);
+        mNorth.updatePosition(y, variance);
+        mEast.updateVelocity(east, SPEED_NOISE);
+        mNorth.updateVelocity(north, SPEED_NOISE);
+    }
+
+    /**
+     * @return estimated location at our elapsedRealtime() [time], null before the first fix
+     */
+    @Nullable
+    public Location estimate(long time) {
+        if (!mInitialized)
+            return null;
+        double dt = Math.max(0, time - mTime) / 1000.0;
+        double east = mEast.position + mEast.velocity * dt;
+        double north = mNorth.position + mNorth.velocity * dt;
+        Location location = new Location();
+        location.latitude = mOriginLatitude + Math.toDegrees(north / DeadReckoning.EARTH_RADIUS);
+        location.longitude = mOriginLongitude
+                + Math.toDegrees(east / (DeadReckoning.EARTH_RADIUS * Math.cos(Math.toRadians(mOriginLatitude))));
+        location.altitude = mAltitude;
+        location.speed = (float) Math.hypot(mEast.velocity, mNorth.velocity);
+        location.bearing = (float) ((Math.toDegrees(Math.atan2(mEast.velocity, mNorth.velocity)) + 360) % 360);
+        double variance = Math.max(mEast.pp, mNorth.pp) + ACCELERATION_NOISE * dt * dt * dt / 3;
+        location.accuracy = (float) Math.sqrt(variance);
+        return location;
+    }
+
+    public void reset() {
+        mInitialized = false;
+    }
+
+    private void reset(@NonNull Location fix, long time, double variance, double east, double north) {
+        mOriginLatitude = fix.latitude;
+        mOriginLongitude = fix.longitude;
+        mEast.reset(0, east, variance, SPEED_NOISE);
+        mNorth.reset(0, north, variance, SPEED_NOISE);
+        mTime = time;
+        mInitialized = true;
+    }
+
+    private void predict(long time) {
+        // fix times come through ClockSync and may be a bit off, never go back
+        if (time <= mTime)
+            return;
+        double dt = (time - mTime) / 1000.0;
+        mEast.predict(dt);
+        mNorth.predict(dt);
+        mTime = time;
+    }
+
+    private double x(double longitude) {
+        return Math.toRadians(longitude - mOriginLongitude) * DeadReckoning.EARTH_RADIUS * Math.cos(Math.toRadians(mOriginLatitude));
+    }
+
+    private double y(double latitude) {
+        return Math.toRadians(latitude - mOriginLatitude) * DeadReckoning.EARTH_RADIUS;
+    }
+}
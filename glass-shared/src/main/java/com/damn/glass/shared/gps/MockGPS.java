@@ -4,24 +4,54 @@ import android.content.Context;
 import android.location.Location;
 import android.location.LocationManager;
 import android.location.LocationProvider;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 
 import android.util.Log;
 
+import com.damn.anotherglass.shared.session.ClockSync;
+
 // Requires MOCK_LOCATION permission on Android 6+
 // On most devices it's enabled in Developer Options
 // On Glass use adb shell to grant permission:
 // "adb shell appops set com.damn.anotherglass.glass.ee android:mock_location allow"
+// Phone sends fixes only when they can not be predicted (see GPSRateController),
+// in between locations are estimated by LocationFilter and published at a steady rate while moving.
 public class MockGPS {
 
     private static final String LOG_TAG = "MockGPS";
 
+    private static final long PUBLISH_INTERVAL = 1000L;
+    private static final long MAX_EXTRAPOLATION = 60 * 1000L; // after that we just do not know
+    private static final float MIN_SPEED = 0.3f; // m/s, standing still, nothing to interpolate
+
     private final LocationManager locationManager;
 
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final LocationFilter filter = new LocationFilter();
+
+    private long lastFixTime; // elapsedRealtime()
+
     private boolean installed;
 
+    private final Runnable publishEstimate = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastFixTime > MAX_EXTRAPOLATION)
+                return;
+            com.damn.anotherglass.shared.gps.Location estimate = filter.estimate(now);
+            if (null == estimate || estimate.speed < MIN_SPEED)
+                return;
+            setLocation(estimate);
+            handler.postDelayed(this, PUBLISH_INTERVAL);
+        }
+    };
+
     public MockGPS(@NonNull Context context) {
         locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
     }
@@ -60,6 +90,8 @@ public class MockGPS {
         if (null == locationManager) {
             return;
         }
+        handler.removeCallbacks(publishEstimate);
+        filter.reset();
         try {
             locationManager.removeTestProvider(LocationManager.GPS_PROVIDER);
         } catch (Exception e) {
@@ -72,6 +104,18 @@ public class MockGPS {
         if (null == locationManager || !installed) {
             return;
         }
+        long now = SystemClock.elapsedRealtime();
+        // fix may have spent a while in phone's deferred queue
+        long fixTime = 0 != location.time ? Math.min(now, ClockSync.getInstance().toLocal(location.time)) : now;
+        filter.update(location, fixTime);
+        lastFixTime = fixTime;
+        com.damn.anotherglass.shared.gps.Location estimate = filter.estimate(now);
+        setLocation(null != estimate ? estimate : location);
+        handler.removeCallbacks(publishEstimate);
+        handler.postDelayed(publishEstimate, PUBLISH_INTERVAL);
+    }
+
+    private void setLocation(@NonNull com.damn.anotherglass.shared.gps.Location location) {
         try {
             Location location1 = new Location(LocationManager.GPS_PROVIDER);
             location1.setLatitude(location.latitude);
@@ -0,0 +1,195 @@
+package com.damn.glass.shared.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.blob.Blobs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Decoded icons and album art, keyed by content (blob hash if there is one) and target size,
+// so rebinding a card does not decode the same bytes again.
+// Decoding runs on a background thread, large images are subsampled down to the target size,
+// and bitmaps given back with release() are reused for next decodes instead of allocating new ones.
+// Bitmaps evicted from the cache are not reused, they may still be shown by some view.
+// Only owners that know when a bitmap is off screen release it: music card does for album art,
+// notification icons are kept by card views with no such moment, so they are left to GC.
+public class BitmapCache {
+
+    private static final String TAG = "BitmapCache";
+
+    private static final int MAX_MEMORY_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_POOL_BYTES = 2 * 1024 * 1024;
+    private static final int MAX_FAILED = 64;
+
+    public interface Callback {
+        // on main thread, or right away if bitmap is already cached, null if bytes can't be decoded
+        void onLoaded(@Nullable Bitmap bitmap);
+    }
+
+    private static BitmapCache sInstance;
+
+    private final LruCache<String, Bitmap> mMemory = new LruCache<String, Bitmap>(MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getAllocationByteCount();
+        }
+    };
+
+    private final List<Bitmap> mPool = new ArrayList<>();
+    private int mPoolBytes;
+
+    private final Map<String, List<Callback>> mPending = new HashMap<>();
+    private final Set<String> mFailed = new HashSet<>();
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    @NonNull
+    public static synchronized BitmapCache getInstance() {
+        if (null == sInstance)
+            sInstance = new BitmapCache();
+        return sInstance;
+    }
+
+    // hash is BlobHolder hash if the bytes came by reference, otherwise content of the bytes is hashed,
+    // same digest as blobs, so different images never share a key
+    @NonNull
+    public static String keyOf(@Nullable String hash, @NonNull byte[] data, int width, int height) {
+        String content = null != hash ? hash : Blobs.hash(data);
+        return content + "@" + width + "x" + height;
+    }
+
+    @Nullable
+    public Bitmap get(@NonNull String key) {
+        return mMemory.get(key);
+    }
+
+    public void load(@NonNull String key, @NonNull byte[] data, int width, int height, @NonNull Callback callback) {
+        Bitmap cached = mMemory.get(key);
+        if (null != cached) {
+            callback.onLoaded(cached);
+            return;
+        }
+        synchronized (this) {
+            if (mFailed.contains(key)) {
+                callback.onLoaded(null);
+                return;
+            }
+            List<Callback> callbacks = mPending.get(key);
+            if (null != callbacks) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            mPending.put(key, callbacks);
+        }
+        mExecutor.execute(() -> {
+            Bitmap bitmap = decode(data, width, height);
+            if (null != bitmap) {
+                mMemory.put(key, bitmap);
+            } else {
+                Log.e(TAG, "Failed to decode " + key);
+                synchronized (this) {
+                    if (mFailed.size() >= MAX_FAILED)
+                        mFailed.clear();
+                    mFailed.add(key);
+                }
+            }
+            mHandler.post(() -> {
+                List<Callback> callbacks;
+                synchronized (BitmapCache.this) {
+                    callbacks = mPending.remove(key);
+                }
+                if (null != callbacks)
+                    for (Callback c : callbacks)
+                        c.onLoaded(bitmap);
+            });
+        });
+    }
+
+    // owner is done with it (e.g. RemoteViews already have a copy), bitmap memory can be used for another image
+    public void release(@NonNull String key) {
+        Bitmap bitmap = mMemory.remove(key);
+        if (null == bitmap || !bitmap.isMutable() || bitmap.isRecycled())
+            return;
+        synchronized (mPool) {
+            int size = bitmap.getAllocationByteCount();
+            if (size > MAX_POOL_BYTES)
+                return;
+            // drop the oldest ones to make room
+            while (mPoolBytes + size > MAX_POOL_BYTES && !mPool.isEmpty())
+                mPoolBytes -= mPool.remove(0).getAllocationByteCount();
+            mPool.add(bitmap);
+            mPoolBytes += size;
+        }
+    }
+
+    @Nullable
+    private Bitmap decode(@NonNull byte[] data, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, width, height);
+        options.inMutable = true; // to be reusable after release()
+        options.inBitmap = takeFromPool(
+                ceilDiv(options.outWidth, options.inSampleSize),
+                ceilDiv(options.outHeight, options.inSampleSize));
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // pooled bitmap did not fit after all
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    @Nullable
+    private Bitmap takeFromPool(int width, int height) {
+        int needed = width * height * 4; // ARGB_8888
+        synchronized (mPool) {
+            // smallest one that fits
+            Bitmap best = null;
+            for (Bitmap bitmap : mPool) {
+                int size = bitmap.getAllocationByteCount();
+                if (size >= needed && (null == best || size < best.getAllocationByteCount()))
+                    best = bitmap;
+            }
+            if (null != best) {
+                mPool.remove(best);
+                mPoolBytes -= best.getAllocationByteCount();
+            }
+            return best;
+        }
+    }
+
+    // largest power of two that keeps both sides at least the target size
+    private static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sample = 1;
+        while (width / (sample * 2) >= targetWidth && height / (sample * 2) >= targetHeight)
+            sample *= 2;
+        return sample;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,321 @@
+package com.damn.glass.shared.map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+// Draws map around a location from cached tiles, with position marker drawn locally on top:
+// moving around only re-composes tiles we already have, network is needed only for new ones.
+// Missing tiles are replaced by a scaled up part of a lower zoom tile if there is one in memory,
+// and tiles ahead along the current heading are prefetched if the tile source allows that.
+// Attribution of the tile source is drawn in the corner.
+// render() may run on a background thread, but one render at a time; invalidation callback comes on main thread.
+public class MapRenderer implements TileLoader.Listener {
+
+    public static final int DEFAULT_ZOOM = 15;
+
+    private static final double LOOKAHEAD = 60; // seconds of movement to prefetch for
+    private static final float MIN_SPEED = 0.5f; // m/s, below that heading is unreliable
+    private static final int MAX_FALLBACK_LEVELS = 3;
+    private static final long INVALIDATE_DELAY = 100; // tiles tend to arrive in bursts
+    private static final float MARKER_RADIUS = 10;
+    private static final int BEARING_STEP = 5; // degrees, smaller turns do not redraw the arrow
+    private static final float ATTRIBUTION_SIZE = 14;
+    private static final float ATTRIBUTION_PADDING = 4;
+
+    private final TileLoader mLoader;
+    private final int mTileSize;
+    private final int mWidth;
+    private final int mHeight;
+
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mMarkerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mOutlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mAccuracyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mAttributionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mAttributionBackground = new Paint();
+    private final Path mArrow = new Path();
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private Bitmap mBitmap;
+    private int mZoom = DEFAULT_ZOOM;
+
+    // visible tiles of the last render, guarded by this
+    private int mMinX;
+    private int mMaxX;
+    private int mMinY;
+    private int mMaxY;
+
+    // what the last render has shown, see isUpToDate(), guarded by this
+    private boolean mDirty = true; // nothing rendered yet, or a visible tile has arrived since
+    private long mShownX;
+    private long mShownY;
+    private int mShownMarker;
+
+    @Nullable
+    private Runnable mOnInvalidated;
+
+    private final Runnable mInvalidate = new Runnable() {
+        @Override
+        public void run() {
+            if (null != mOnInvalidated)
+                mOnInvalidated.run();
+        }
+    };
+
+    public MapRenderer(@NonNull Context context, int width, int height) {
+        mLoader = MapTiles.getLoader(context);
+        mTileSize = mLoader.getSource().getTileSize();
+        mWidth = width;
+        mHeight = height;
+        mMarkerPaint.setColor(Color.rgb(0x21, 0x96, 0xf3));
+        mOutlinePaint.setColor(Color.WHITE);
+        mOutlinePaint.setStyle(Paint.Style.STROKE);
+        mOutlinePaint.setStrokeWidth(3);
+        mAccuracyPaint.setColor(Color.argb(0x40, 0x21, 0x96, 0xf3));
+        mAttributionPaint.setColor(Color.DKGRAY);
+        mAttributionPaint.setTextSize(ATTRIBUTION_SIZE);
+        mAttributionPaint.setTextAlign(Paint.Align.RIGHT);
+        mAttributionBackground.setColor(Color.argb(0xb0, 0xff, 0xff, 0xff));
+        mArrow.moveTo(0, -MARKER_RADIUS * 1.8f);
+        mArrow.lineTo(MARKER_RADIUS * 1.2f, MARKER_RADIUS * 1.2f);
+        mArrow.lineTo(0, MARKER_RADIUS * 0.6f);
+        mArrow.lineTo(-MARKER_RADIUS * 1.2f, MARKER_RADIUS * 1.2f);
+        mArrow.close();
+        mLoader.addListener(this);
+    }
+
+    // called when a tile that is visible has arrived and map is worth rendering again
+    public void setOnInvalidated(@Nullable Runnable onInvalidated) {
+        mOnInvalidated = onInvalidated;
+    }
+
+    public synchronized void setZoom(int zoom) {
+        int clamped = Math.max(0, Math.min(mLoader.getSource().getMaxZoom(), zoom));
+        if (clamped != mZoom)
+            mDirty = true;
+        mZoom = clamped;
+    }
+
+    public synchronized int getZoom() {
+        return mZoom;
+    }
+
+    public void release() {
+        mLoader.removeListener(this);
+        mHandler.removeCallbacks(mInvalidate);
+        mOnInvalidated = null;
+    }
+
+    /**
+     * @return true if render() would draw the same as the last time: no new tiles,
+     * and neither the map nor the marker would move by a pixel
+     */
+    public synchronized boolean isUpToDate(@NonNull Location location) {
+        if (mDirty)
+            return false;
+        double worldSize = worldSize(mZoom);
+        return mShownX == Math.round(x(location.getLongitude(), worldSize))
+                && mShownY == Math.round(y(location.getLatitude(), worldSize))
+                && mShownMarker == marker(location, worldSize);
+    }
+
+    /**
+     * @return map centered at the location, the same bitmap is reused by the next render
+     */
+    @NonNull
+    public Bitmap render(@NonNull Location location) {
+        int zoom;
+        synchronized (this) {
+            zoom = mZoom;
+        }
+        if (null == mBitmap)
+            mBitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(mBitmap);
+        canvas.drawColor(Color.rgb(0xe0, 0xe0, 0xe0));
+
+        double worldSize = worldSize(zoom);
+        double centerX = x(location.getLongitude(), worldSize);
+        double centerY = y(location.getLatitude(), worldSize);
+        double left = centerX - mWidth / 2.0;
+        double top = centerY - mHeight / 2.0;
+        int tiles = 1 << zoom;
+        int minX = (int) Math.floor(left / mTileSize);
+        int maxX = (int) Math.floor((left + mWidth - 1) / mTileSize);
+        int minY = (int) Math.floor(top / mTileSize);
+        int maxY = (int) Math.floor((top + mHeight - 1) / mTileSize);
+        synchronized (this) {
+            mMinX = minX;
+            mMaxX = maxX;
+            mMinY = minY;
+            mMaxY = maxY;
+            // tiles arriving while we draw make it dirty again
+            mDirty = false;
+            mShownX = Math.round(centerX);
+            mShownY = Math.round(centerY);
+            mShownMarker = marker(location, worldSize);
+        }
+        for (int ty = minY; ty <= maxY; ty++) {
+            if (ty < 0 || ty >= tiles)
+                continue;
+            for (int tx = minX; tx <= maxX; tx++) {
+                int x = wrap(tx, tiles); // wraps around 180th meridian
+                float dx = (float) (tx * (double) mTileSize - left);
+                float dy = (float) (ty * (double) mTileSize - top);
+                mDst.set(dx, dy, dx + mTileSize, dy + mTileSize);
+                Bitmap tile = mLoader.get(zoom, x, ty);
+                if (null != tile)
+                    canvas.drawBitmap(tile, null, mDst, mTilePaint);
+                else
+                    drawFallback(canvas, zoom, x, ty);
+            }
+        }
+
+        drawMarker(canvas, location, worldSize);
+        drawAttribution(canvas);
+        prefetch(location, zoom, centerX, centerY);
+        return mBitmap;
+    }
+
+    @Override
+    public void onTileLoaded(int zoom, int x, int y) {
+        synchronized (this) {
+            if (zoom != mZoom || y < mMinY || y > mMaxY)
+                return;
+            int tiles = 1 << zoom;
+            boolean visible = false;
+            for (int tx = mMinX; tx <= mMaxX && !visible; tx++)
+                visible = wrap(tx, tiles) == x;
+            if (!visible)
+                return;
+            mDirty = true;
+        }
+        mHandler.removeCallbacks(mInvalidate);
+        mHandler.postDelayed(mInvalidate, INVALIDATE_DELAY);
+    }
+
+    private void drawFallback(@NonNull Canvas canvas, int zoom, int x, int y) {
+        for (int up = 1; up <= MAX_FALLBACK_LEVELS && zoom - up >= 0; up++) {
+            Bitmap parent = mLoader.peek(zoom - up, x >> up, y >> up);
+            if (null == parent)
+                continue;
+            int parts = 1 << up;
+            int size = parent.getWidth() / parts;
+            int sx = (x & (parts - 1)) * size;
+            int sy = (y & (parts - 1)) * size;
+            mSrc.set(sx, sy, sx + size, sy + size);
+            canvas.drawBitmap(parent, mSrc, mDst, mTilePaint);
+            return;
+        }
+    }
+
+    private void drawMarker(@NonNull Canvas canvas, @NonNull Location location, double worldSize) {
+        float cx = mWidth / 2f;
+        float cy = mHeight / 2f;
+        if (location.hasAccuracy()) {
+            float radius = (float) (location.getAccuracy() / metersPerPixel(location.getLatitude(), worldSize));
+            if (radius > MARKER_RADIUS)
+                canvas.drawCircle(cx, cy, radius, mAccuracyPaint);
+        }
+        if (hasHeading(location)) {
+            canvas.save();
+            canvas.translate(cx, cy);
+            canvas.rotate(location.getBearing());
+            canvas.drawPath(mArrow, mMarkerPaint);
+            canvas.drawPath(mArrow, mOutlinePaint);
+            canvas.restore();
+        } else {
+            canvas.drawCircle(cx, cy, MARKER_RADIUS, mMarkerPaint);
+            canvas.drawCircle(cx, cy, MARKER_RADIUS, mOutlinePaint);
+        }
+    }
+
+    // bottom right corner, as tile servers ask
+    private void drawAttribution(@NonNull Canvas canvas) {
+        String attribution = mLoader.getSource().getAttribution();
+        if (null == attribution)
+            return;
+        float width = mAttributionPaint.measureText(attribution);
+        Paint.FontMetrics metrics = mAttributionPaint.getFontMetrics();
+        float baseline = mHeight - ATTRIBUTION_PADDING - metrics.descent;
+        canvas.drawRect(mWidth - width - 2 * ATTRIBUTION_PADDING, baseline + metrics.ascent - ATTRIBUTION_PADDING,
+                mWidth, mHeight, mAttributionBackground);
+        canvas.drawText(attribution, mWidth - ATTRIBUTION_PADDING, baseline, mAttributionPaint);
+    }
+
+    // tiles we will need soon if we keep going the same way
+    private void prefetch(@NonNull Location location, int zoom, double centerX, double centerY) {
+        if (!mLoader.getSource().allowsPrefetch())
+            return;
+        if (!hasHeading(location))
+            return;
+        double worldSize = worldSize(zoom);
+        double distance = location.getSpeed() * LOOKAHEAD / metersPerPixel(location.getLatitude(), worldSize);
+        double bearing = Math.toRadians(location.getBearing());
+        double stepX = Math.sin(bearing);
+        double stepY = -Math.cos(bearing); // y grows to the south
+        int tiles = 1 << zoom;
+        double halfTile = mTileSize / 2.0;
+        for (double travelled = halfTile; travelled <= distance; travelled += halfTile) {
+            double x = centerX + stepX * travelled;
+            double y = centerY + stepY * travelled;
+            int minX = (int) Math.floor((x - mWidth / 2.0) / mTileSize);
+            int maxX = (int) Math.floor((x + mWidth / 2.0) / mTileSize);
+            int minY = Math.max(0, (int) Math.floor((y - mHeight / 2.0) / mTileSize));
+            int maxY = Math.min(tiles - 1, (int) Math.floor((y + mHeight / 2.0) / mTileSize));
+            for (int ty = minY; ty <= maxY; ty++)
+                for (int tx = minX; tx <= maxX; tx++)
+                    mLoader.prefetch(zoom, wrap(tx, tiles), ty);
+        }
+    }
+
+    private static boolean hasHeading(@NonNull Location location) {
+        return location.hasBearing() && location.getSpeed() >= MIN_SPEED;
+    }
+
+    // what drawMarker() would draw: arrow direction, or accuracy circle radius (negative) for a dot
+    private static int marker(@NonNull Location location, double worldSize) {
+        if (hasHeading(location))
+            return Math.round(location.getBearing() / BEARING_STEP) % (360 / BEARING_STEP);
+        if (!location.hasAccuracy())
+            return -1;
+        return -1 - Math.round((float) (location.getAccuracy() / metersPerPixel(location.getLatitude(), worldSize)));
+    }
+
+    // Math.floorMod() needs API 24
+    private static int wrap(int value, int size) {
+        int mod = value % size;
+        return mod < 0 ? mod + size : mod;
+    }
+
+    private double worldSize(int zoom) {
+        return mTileSize * (double) (1 << zoom);
+    }
+
+    private static double x(double longitude, double worldSize) {
+        return (longitude + 180) / 360 * worldSize;
+    }
+
+    private static double y(double latitude, double worldSize) {
+        double sin = Math.sin(Math.toRadians(Math.max(-85.0511, Math.min(85.0511, latitude))));
+        return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * worldSize;
+    }
+
+    private static double metersPerPixel(double latitude, double worldSize) {
+        return Math.cos(Math.toRadians(latitude)) * 2 * Math.PI * 6378137 / worldSize;
+    }
+}
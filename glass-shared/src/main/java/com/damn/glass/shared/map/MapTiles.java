@@ -0,0 +1,30 @@
+package com.damn.glass.shared.map;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+// Process wide tile loader, so all map cards share memory and disk caches
+public class MapTiles {
+
+    private static TileSource sSource = UrlTileSource.OSM;
+    private static TileLoader sLoader;
+
+    @NonNull
+    public static synchronized TileLoader getLoader(@NonNull Context context) {
+        if (null == sLoader)
+            sLoader = new TileLoader(context.getApplicationContext(), sSource);
+        return sLoader;
+    }
+
+    // e.g. PhoneTileSource or a local tile server in tests, call it before any map is shown
+    public static synchronized void setSource(@NonNull TileSource source) {
+        if (source == sSource)
+            return;
+        sSource = source;
+        if (null != sLoader) {
+            sLoader.stop();
+            sLoader = null;
+        }
+    }
+}
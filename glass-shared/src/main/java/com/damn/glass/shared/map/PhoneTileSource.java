@@ -0,0 +1,130 @@
+package com.damn.glass.shared.map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.map.MapAPI;
+import com.damn.anotherglass.shared.map.MapTile;
+import com.damn.anotherglass.shared.map.MapTileRequest;
+import com.damn.anotherglass.shared.rpc.RPCMessage;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Tiles fetched by the phone (see MapAPI), works over Bluetooth only connection.
+// TileLoader workers block in load() until the phone answers, replies are passed to onTile() by the RPC listener.
+public class PhoneTileSource implements TileSource {
+
+    private static final long TIMEOUT = 15000;
+
+    public interface Sender {
+        void send(@NonNull RPCMessage message);
+    }
+
+    private static class Pending {
+        final CountDownLatch received = new CountDownLatch(1);
+        byte[] data;
+    }
+
+    private final Sender mSender;
+
+    // tile name -> worker waiting for it
+    private final Map<String, Pending> mPending = new HashMap<>();
+
+    private volatile boolean mConnected;
+
+    public PhoneTileSource(@NonNull Sender sender) {
+        mSender = sender;
+    }
+
+    @NonNull
+    @Override
+    public String getId() {
+        return "phone";
+    }
+
+    @Override
+    public int getTileSize() {
+        return 256;
+    }
+
+    @Override
+    public int getMaxZoom() {
+        return 19;
+    }
+
+    @Override
+    public boolean allowsPrefetch() {
+        return false; // phone gets them from public OpenStreetMap servers
+    }
+
+    @Nullable
+    @Override
+    public String getAttribution() {
+        return UrlTileSource.OSM_ATTRIBUTION;
+    }
+
+    @Nullable
+    @Override
+    public byte[] load(int zoom, int x, int y) throws IOException {
+        if (!mConnected)
+            throw new IOException("Phone is not connected");
+        String name = name(zoom, x, y);
+        Pending pending;
+        boolean request;
+        synchronized (mPending) {
+            pending = mPending.get(name);
+            request = null == pending;
+            if (request) {
+                pending = new Pending();
+                mPending.put(name, pending);
+            }
+        }
+        if (request)
+            mSender.send(new RPCMessage(MapAPI.ID, new MapTileRequest(zoom, x, y)));
+        try {
+            if (!pending.received.await(TIMEOUT, TimeUnit.MILLISECONDS))
+                throw new IOException("Phone did not answer in time");
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            synchronized (mPending) {
+                if (mPending.get(name) == pending)
+                    mPending.remove(name);
+            }
+        }
+        return pending.data;
+    }
+
+    public void onTile(@NonNull MapTile tile) {
+        Pending pending;
+        synchronized (mPending) {
+            pending = mPending.remove(name(tile.zoom, tile.x, tile.y));
+        }
+        if (null == pending)
+            return; // timed out already
+        pending.data = tile.data;
+        pending.received.countDown();
+    }
+
+    public void setConnected(boolean connected) {
+        mConnected = connected;
+        if (connected)
+            return;
+        // nobody is going to answer, let workers go
+        synchronized (mPending) {
+            for (Pending pending : mPending.values())
+                pending.received.countDown();
+            mPending.clear();
+        }
+    }
+
+    @NonNull
+    private static String name(int zoom, int x, int y) {
+        return zoom + "_" + x + "_" + y;
+    }
+}
@@ -0,0 +1,215 @@
+package com.damn.glass.shared.map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.glass.shared.blob.BlobCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+// Map tiles of a single TileSource: decoded ones in memory, loaded ones on disk (LRU, survives restarts,
+// so once seen area works without connectivity), the rest is loaded by a couple of worker threads.
+// Visible tiles go to the front of the queue, prefetched ones to the back.
+public class TileLoader {
+
+    private static final String TAG = "TileLoader";
+
+    private static final String DIRECTORY = "tiles";
+    private static final long MAX_DISK_BYTES = 32L * 1024 * 1024;
+    private static final int MAX_MEMORY_BYTES = 8 * 1024 * 1024;
+    private static final int WORKERS = 2;
+    private static final int MAX_PREFETCH_QUEUE = 64;
+    private static final long RETRY_DELAY = 30 * 1000L; // do not hammer the server for missing tiles
+
+    public interface Listener {
+        // on main thread
+        void onTileLoaded(int zoom, int x, int y);
+    }
+
+    private final TileSource mSource;
+    private final BlobCache mDisk;
+    private final LruCache<Long, Bitmap> mMemory = new LruCache<Long, Bitmap>(MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    private final LinkedBlockingDeque<Long> mQueue = new LinkedBlockingDeque<>();
+    private final Set<Long> mRequested = new HashSet<>(); // queued or loading
+    private final LruCache<Long, Long> mFailed = new LruCache<>(256); // key -> time of the failure
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Set<Listener> mListeners = new HashSet<>();
+
+    private volatile boolean mStopped;
+
+    public TileLoader(@NonNull Context context, @NonNull TileSource source) {
+        mSource = source;
+        mDisk = new BlobCache(new File(new File(context.getCacheDir(), DIRECTORY), source.getId()), MAX_DISK_BYTES);
+        for (int i = 0; i < WORKERS; i++) {
+            Thread worker = new Thread(this::work, TAG + "-" + i);
+            worker.setPriority(Thread.MIN_PRIORITY);
+            worker.start();
+        }
+    }
+
+    @NonNull
+    public TileSource getSource() {
+        return mSource;
+    }
+
+    public synchronized void addListener(@NonNull Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public synchronized void removeListener(@NonNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return tile if it is in memory, otherwise null and it is loaded (from disk or network) with high priority
+     */
+    @Nullable
+    public Bitmap get(int zoom, int x, int y) {
+        Bitmap bitmap = peek(zoom, x, y);
+        if (null == bitmap)
+            request(key(zoom, x, y), true);
+        return bitmap;
+    }
+
+    // memory only, nothing gets loaded
+    @Nullable
+    public Bitmap peek(int zoom, int x, int y) {
+        return mMemory.get(key(zoom, x, y));
+    }
+
+    // loads tile with low priority, unless it is already here or the source does not allow that
+    public void prefetch(int zoom, int x, int y) {
+        if (!mSource.allowsPrefetch())
+            return;
+        long key = key(zoom, x, y);
+        if (null != mMemory.get(key) || mDisk.contains(name(key)))
+            return;
+        request(key, false);
+    }
+
+    public void stop() {
+        mStopped = true;
+        synchronized (this) {
+            mQueue.clear();
+            mRequested.clear();
+            mListeners.clear();
+        }
+        // wake workers up so they can quit
+        for (int i = 0; i < WORKERS; i++)
+            mQueue.offer(-1L);
+    }
+
+    private synchronized void request(long key, boolean visible) {
+        if (mStopped || mRequested.contains(key))
+            return;
+        Long failedAt = mFailed.get(key);
+        if (null != failedAt && System.currentTimeMillis() - failedAt < RETRY_DELAY)
+            return;
+        if (visible) {
+            mQueue.offerFirst(key);
+        } else {
+            if (mQueue.size() >= MAX_PREFETCH_QUEUE)
+                return;
+            mQueue.offerLast(key);
+        }
+        mRequested.add(key);
+    }
+
+    private void work() {
+        while (!mStopped) {
+            long key;
+            try {
+                key = mQueue.poll(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (mStopped || key < 0)
+                continue;
+            load(key);
+            synchronized (this) {
+                mRequested.remove(key);
+            }
+        }
+    }
+
+    private void load(long key) {
+        String name = name(key);
+        byte[] data = mDisk.get(name);
+        if (null == data) {
+            data = download(key);
+            if (null == data) {
+                mFailed.put(key, System.currentTimeMillis());
+                return;
+            }
+            mDisk.put(name, data);
+        }
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+        if (null == bitmap) {
+            Log.e(TAG, "Failed to decode tile " + name);
+            return;
+        }
+        mMemory.put(key, bitmap);
+        final int zoom = zoom(key);
+        final int x = x(key);
+        final int y = y(key);
+        mHandler.post(() -> {
+            Listener[] listeners;
+            synchronized (TileLoader.this) {
+                listeners = mListeners.toArray(new Listener[0]);
+            }
+            for (Listener listener : listeners)
+                listener.onTileLoaded(zoom, x, y);
+        });
+    }
+
+    @Nullable
+    private byte[] download(long key) {
+        try {
+            return mSource.load(zoom(key), x(key), y(key));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load tile " + name(key) + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // zoom (5 bits) | x (25 bits) | y (25 bits), enough for any zoom a tile server has
+    private static long key(int zoom, int x, int y) {
+        return ((long) zoom << 50) | ((long) x << 25) | y;
+    }
+
+    private static int zoom(long key) {
+        return (int) (key >>> 50);
+    }
+
+    private static int x(long key) {
+        return (int) ((key >>> 25) & 0x1ffffff);
+    }
+
+    private static int y(long key) {
+        return (int) (key & 0x1ffffff);
+    }
+
+    private static String name(long key) {
+        return zoom(key) + "_" + x(key) + "_" + y(key);
+    }
+}
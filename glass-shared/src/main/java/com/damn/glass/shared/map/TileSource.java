@@ -0,0 +1,33 @@
+package com.damn.glass.shared.map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+// Where raster map tiles come from, Web Mercator z/x/y scheme. See MapTiles.setSource().
+public interface TileSource {
+
+    // tiles of different sources are cached separately
+    @NonNull
+    String getId();
+
+    int getTileSize();
+
+    int getMaxZoom();
+
+    // false if the server only allows tiles actually being viewed, e.g. public OpenStreetMap ones
+    boolean allowsPrefetch();
+
+    // drawn over the map, tile servers usually require it, null if there is nothing to credit
+    @Nullable
+    String getAttribution();
+
+    /**
+     * Called on TileLoader worker threads, may block.
+     *
+     * @return encoded tile image, null if there is no such tile
+     */
+    @Nullable
+    byte[] load(int zoom, int x, int y) throws IOException;
+}
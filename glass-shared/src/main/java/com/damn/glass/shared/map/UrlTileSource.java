@@ -0,0 +1,107 @@
+package com.damn.glass.shared.map;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+// Tile server with a {z}/{x}/{y} URL template, e.g. a local stand-in "http://192.168.1.2:8080/{z}/{x}/{y}.png".
+// Prefetch is off unless asked for: most public servers (OSM included) forbid bulk downloads in their usage policy.
+public class UrlTileSource implements TileSource {
+
+    private static final String TAG = "UrlTileSource";
+    private static final int TIMEOUT = 10000;
+
+    public static final String OSM_ATTRIBUTION = "© OpenStreetMap contributors";
+
+    public static final UrlTileSource OSM = new UrlTileSource(
+            "osm", "https://tile.openstreetmap.org/{z}/{x}/{y}.png", 19, false, OSM_ATTRIBUTION);
+
+    private final String mId;
+    private final String mTemplate;
+    private final int mMaxZoom;
+    private final boolean mAllowsPrefetch;
+    @Nullable
+    private final String mAttribution;
+
+    public UrlTileSource(@NonNull String id, @NonNull String template, int maxZoom) {
+        this(id, template, maxZoom, false, null);
+    }
+
+    public UrlTileSource(@NonNull String id, @NonNull String template, int maxZoom,
+                         boolean allowsPrefetch, @Nullable String attribution) {
+        mId = id;
+        mTemplate = template;
+        mMaxZoom = maxZoom;
+        mAllowsPrefetch = allowsPrefetch;
+        mAttribution = attribution;
+    }
+
+    @NonNull
+    @Override
+    public String getId() {
+        return mId;
+    }
+
+    @Override
+    public int getTileSize() {
+        return 256;
+    }
+
+    @Override
+    public int getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    @Override
+    public boolean allowsPrefetch() {
+        return mAllowsPrefetch;
+    }
+
+    @Nullable
+    @Override
+    public String getAttribution() {
+        return mAttribution;
+    }
+
+    @NonNull
+    public String getUrl(int zoom, int x, int y) {
+        return mTemplate
+                .replace("{z}", Integer.toString(zoom))
+                .replace("{x}", Integer.toString(x))
+                .replace("{y}", Integer.toString(y));
+    }
+
+    @Nullable
+    @Override
+    public byte[] load(int zoom, int x, int y) throws IOException {
+        String url = getUrl(zoom, x, y);
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            // tile servers usually require it
+            connection.setRequestProperty("User-Agent", "AnotherGlass");
+            if (HttpURLConnection.HTTP_OK != connection.getResponseCode()) {
+                Log.w(TAG, "Failed to load " + url + ": " + connection.getResponseCode());
+                return null;
+            }
+            try (InputStream stream = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+                byte[] buffer = new byte[8 * 1024];
+                int count;
+                while ((count = stream.read(buffer)) > 0)
+                    out.write(buffer, 0, count);
+                return out.toByteArray();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.damn.glass.shared.notifications
+
+import com.damn.anotherglass.shared.notifications.NotificationData
+
+/**
+ * Single modification of [NotificationController] store, lets UI update only what has changed.
+ * [version] grows by one with every change, [key] is [NotificationController.keyOf] of the notification.
+ */
+sealed class NotificationChange {
+
+    abstract val version: Long
+
+    // whole content, first one every collector gets, and after the store was cleared or events were missed
+    class Reset(override val version: Long, val notifications: List<NotificationData>) : NotificationChange()
+
+    // added after all others, store keeps posting order
+    class Inserted(override val version: Long, val key: Long, val notification: NotificationData) : NotificationChange()
+
+    // same place in posting order as before
+    class Updated(override val version: Long, val key: Long, val notification: NotificationData) : NotificationChange()
+
+    class Removed(override val version: Long, val key: Long, val notification: NotificationData) : NotificationChange()
+}
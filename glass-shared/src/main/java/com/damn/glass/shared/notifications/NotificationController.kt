@@ -1,50 +1,139 @@
 package com.damn.glass.shared.notifications
 
 import com.damn.anotherglass.shared.notifications.NotificationData
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.flow
 
+/**
+ * Notifications shown on Glass, keyed by (package, id) packed into a Long (see [keyOf]), in posting order.
+ * Besides the snapshot list every modification is published as [NotificationChange],
+ * so adapters can insert/update/remove single items instead of rebinding everything.
+ * Store is bounded with [MAX_NOTIFICATIONS], oldest dismissible ones are dropped first.
+ */
 class NotificationController {
 
+    private val entries = LinkedHashMap<Long, NotificationData>()
+
+    // package name -> small index for keys, there are only so many packages posting notifications
+    private val packages = HashMap<String, Int>()
+
+    private var version = 0L
+
     private val notifications = MutableStateFlow(listOf<NotificationData>())
+    private val snapshot = MutableStateFlow(Snapshot(0, emptyList()))
+
+    // recent changes are replayed, so a collector subscribing right after it took the snapshot misses nothing
+    private val changes = MutableSharedFlow<NotificationChange>(
+        replay = REPLAY,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    )
+
+    private class Snapshot(val version: Long, val notifications: List<NotificationData>)
 
     fun getNotifications(): StateFlow<List<NotificationData>> = notifications
 
-    fun onNotificationUpdate(notification: NotificationData) {
-        // We expect that modification will always happen, so make mutable copy in any case
-        val current = notifications.value.toMutableList()
+    /**
+     * [NotificationChange.Reset] with current content first, then changes one by one.
+     * If collector falls behind more than [REPLAY] changes it gets a new Reset.
+     */
+    fun getChanges(): Flow<NotificationChange> = flow {
+        val initial = snapshot.value
+        emit(NotificationChange.Reset(initial.version, initial.notifications))
+        var seen = initial.version
+        changes.collect { change ->
+            if (change.version <= seen) return@collect // already in the snapshot
+            if (change.version == seen + 1) {
+                emit(change)
+                seen = change.version
+            } else {
+                // fell behind, snapshot is updated before a change is published, so it has this one too
+                val current = snapshot.value
+                emit(NotificationChange.Reset(current.version, current.notifications))
+                seen = current.version
+            }
+        }
+    }
+
+    fun onNotificationUpdate(notification: NotificationData) = synchronized(this) {
+        val key = keyOf(notification)
         when (notification.action) {
             NotificationData.Action.Posted -> {
-                when (val index = current.indexOfFirst { it.id == notification.id && it.packageName == notification.packageName }) {
-                    -1 -> current += notification
-                    else -> current[index] = notification
+                val previous = entries[key]
+                entries[key] = notification.apply { mergeMessages(previous) }
+                if (null == previous) {
+                    publish(NotificationChange.Inserted(++version, key, notification))
+                    evict()
+                } else {
+                    publish(NotificationChange.Updated(++version, key, notification))
                 }
-                notifications.value = current
             }
 
-            NotificationData.Action.Removed -> {
-                if (current.removeAll { it.id == notification.id && it.packageName == notification.packageName }) {
-                    notifications.value = current
-                }
-            }
+            NotificationData.Action.Removed -> remove(key)
         }
     }
 
-    fun onServiceConnected() {
+    fun onServiceConnected() = synchronized(this) {
         // Clear all notifications on service reconnection to avoid stale ones
-        notifications.value = emptyList()
+        if (entries.isEmpty()) return@synchronized
+        entries.clear()
+        publish(NotificationChange.Reset(++version, emptyList()))
+    }
+
+    fun dismissNotification(notificationId: NotificationId) = synchronized(this) {
+        remove(keyOf(notificationId.packageName, notificationId.id))
+    }
+
+    fun dismissNotification(key: Long) = synchronized(this) {
+        remove(key)
+    }
+
+    fun keyOf(notification: NotificationData): Long = keyOf(notification.packageName, notification.id)
+
+    fun keyOf(packageName: String?, id: Int): Long = synchronized(packages) {
+        val name = packageName.orEmpty()
+        val index = packages.getOrPut(name) { packages.size }
+        (index.toLong() shl 32) or (id.toLong() and 0xffffffffL)
     }
 
-    fun dismissNotification(notificationId: NotificationId) {
-        val current = notifications.value.toMutableList()
-        if (current.removeAll { it.id == notificationId.id && it.packageName == notificationId.packageName }) {
-            notifications.value = current
+    private fun remove(key: Long) {
+        val removed = entries.remove(key) ?: return
+        publish(NotificationChange.Removed(++version, key, removed))
+    }
+
+    // ongoing ones are kept, phone removes them itself and there can't be many
+    private fun evict() {
+        while (entries.size > MAX_NOTIFICATIONS) {
+            val oldest = entries.entries.firstOrNull { !it.value.isOngoing } ?: return
+            remove(oldest.key)
         }
     }
 
+    private fun publish(change: NotificationChange) {
+        val list = ArrayList(entries.values)
+        snapshot.value = Snapshot(change.version, list)
+        notifications.value = list
+        changes.tryEmit(change)
+    }
+
+    // phone sends only new messages of a conversation, keep the last MAX_MESSAGES of it here
+    private fun NotificationData.mergeMessages(previous: NotificationData?) {
+        val received = messages ?: return
+        // if previous one is gone (dismissed on Glass) new messages are all we have
+        val merged = if (messagesAppended) previous?.messages.orEmpty() + received else received
+        messages = ArrayList(merged.takeLast(MAX_MESSAGES))
+        messagesAppended = false
+    }
+
     companion object {
         private val TAG = "NotificationController"
+        private const val MAX_MESSAGES = 50
+        private const val MAX_NOTIFICATIONS = 64
+        private const val REPLAY = 32
         @JvmStatic
         val instance: NotificationController by lazy { NotificationController() }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,17 @@
+@file:JvmName("NotificationText")
+
+package com.damn.glass.shared.notifications
+
+import com.damn.anotherglass.shared.notifications.NotificationData
+
+/**
+ * Text to show for a notification: last messages of a conversation, one per line, or just its text.
+ */
+@JvmOverloads
+fun NotificationData.displayText(maxMessages: Int = 3): String? {
+    val conversation = messages
+    if (conversation.isNullOrEmpty()) return text
+    return conversation.takeLast(maxMessages).joinToString("\n") { message ->
+        if (message.sender.isNullOrEmpty()) message.text.orEmpty() else "${message.sender}: ${message.text.orEmpty()}"
+    }
+}
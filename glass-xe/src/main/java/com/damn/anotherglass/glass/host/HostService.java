@@ -15,7 +15,12 @@ import androidx.annotation.Nullable;
 import com.damn.anotherglass.glass.host.bluetooth.BluetoothClient;
 import com.damn.anotherglass.glass.host.music.MusicCardController;
 import com.damn.anotherglass.shared.rpc.IRPCClient;
+import com.damn.glass.shared.blob.BlobCache;
+import com.damn.glass.shared.blob.BlobResolver;
+import com.damn.glass.shared.device.DisplayStateReporter;
 import com.damn.glass.shared.gps.MockGPS;
+import com.damn.glass.shared.map.MapTiles;
+import com.damn.glass.shared.map.PhoneTileSource;
 import com.damn.anotherglass.glass.host.notifications.NotificationsCardController;
 import com.damn.anotherglass.glass.host.ui.ICardViewProvider;
 import com.damn.anotherglass.glass.host.ui.MapCard;
@@ -25,6 +30,8 @@ import com.damn.anotherglass.shared.rpc.RPCMessage;
 import com.damn.anotherglass.shared.rpc.RPCMessageListener;
 import com.damn.anotherglass.shared.gps.GPSServiceAPI;
 import com.damn.anotherglass.shared.gps.Location;
+import com.damn.anotherglass.shared.map.MapAPI;
+import com.damn.anotherglass.shared.map.MapTile;
 import com.damn.anotherglass.shared.music.MusicAPI;
 import com.damn.anotherglass.shared.music.MusicData;
 import com.damn.anotherglass.shared.notifications.NotificationData;
@@ -59,6 +66,15 @@ public class HostService extends Service {
 
     private BatteryStatus mBatteryStatus;
 
+    // icons and album art come as content hash references, bytes are fetched only if not cached
+    private BlobResolver mBlobs;
+
+    // map tiles are fetched by the phone, Glass may have no internet of its own
+    private PhoneTileSource mTiles;
+
+    // GDK does not tell which card is visible, so only screen state is reported
+    private DisplayStateReporter mDisplayState;
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -97,9 +113,19 @@ public class HostService extends Service {
             });
             mBatteryStatus.start();
 
+            mDisplayState = new DisplayStateReporter(this, data -> {
+                if(null != mRPCClient) {
+                    mRPCClient.send(new RPCMessage(DeviceAPI.SERVICE_NAME, data));
+                }
+            });
+            mDisplayState.start();
+
             AudioManager audio = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
 
             mRPCClient = new BluetoothClient();
+            mBlobs = new BlobResolver(new BlobCache(this), mRPCClient::send, this::route);
+            mTiles = new PhoneTileSource(mRPCClient::send);
+            MapTiles.setSource(mTiles);
             mMusicCardController = new MusicCardController(this, mRPCClient);
             mRPCClient.start(this, new RPCMessageListener() {
 
@@ -114,28 +140,37 @@ public class HostService extends Service {
                     audio.playSoundEffect(Sounds.SUCCESS);
                     // map can take a while or not show at all, so show status card
                     displayStatusCard(getString(R.string.msg_connected_to_s, device));
+                    mTiles.setConnected(true);
                     mCardProvider = new MapCard(mLiveCard, HostService.this);
+                    mRPCClient.send(new RPCMessage(DeviceAPI.SERVICE_NAME, mDisplayState.getState()));
                 }
 
                 @Override
                 public void onDataReceived(@NonNull RPCMessage data) {
-                    route(data);
+                    mBlobs.onMessage(data);
                 }
 
                 @Override
                 public void onConnectionLost(@Nullable String error) {
+                    mBlobs.flush();
+                    mTiles.setConnected(false);
                     //noinspection ConstantConditions
                     audio.playSoundEffect(Sounds.ERROR);
                     Toast.makeText(
                             HostService.this,
                             null != error ? error : getString(R.string.msg_disconnected),
                             Toast.LENGTH_LONG).show();
-                    stopSelf(); // do not restart for now
+                    // client will reconnect on its own, see onReconnecting
+                }
+
+                @Override
+                public void onReconnecting(long delay) {
+                    displayStatusCard(getString(R.string.msg_reconnecting));
                 }
 
                 @Override
                 public void onShutdown() {
-                    // already stopped in onConnectionLost
+                    stopSelf();
                 }
             });
         } else {
@@ -157,6 +192,9 @@ public class HostService extends Service {
             if (data.payload instanceof MusicData && mMusicCardController != null) {
                 mMusicCardController.update((MusicData) data.payload);
             }
+        } else if (MapAPI.ID.equals(data.service)) {
+            if (data.payload instanceof MapTile)
+                mTiles.onTile((MapTile) data.payload);
         } else if (WiFiAPI.ID.equals(data.service)) {
             if (data.type.equals(WiFiConfiguration.class.getName()))
                 WiFiActivity.start(this, (WiFiConfiguration) data.payload);
@@ -181,7 +219,13 @@ public class HostService extends Service {
             mBatteryStatus.stop();
             mBatteryStatus = null;
         }
+        if(null != mDisplayState) {
+            mDisplayState.stop();
+            mDisplayState = null;
+        }
+        mTiles.setConnected(false);
         mRPCClient.stop();
+        mBlobs.close();
         mNotificationsCardController.remove();
         if (mMusicCardController != null) {
             mMusicCardController.remove();
@@ -11,17 +11,26 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.damn.anotherglass.shared.Constants;
+import com.damn.anotherglass.shared.device.DeviceAPI;
+import com.damn.anotherglass.shared.device.ReconnectStatsData;
 import com.damn.anotherglass.shared.rpc.IRPCClient;
 import com.damn.anotherglass.shared.rpc.IMessageSerializer;
 import com.damn.anotherglass.shared.rpc.RPCHandler;
 import com.damn.anotherglass.shared.rpc.RPCMessage;
 import com.damn.anotherglass.shared.rpc.RPCMessageListener;
+import com.damn.anotherglass.shared.rpc.ReconnectSupervisor;
 import com.damn.anotherglass.shared.rpc.SerializerProvider;
+import com.damn.anotherglass.shared.session.ClientSession;
+import com.damn.anotherglass.shared.utility.Closeables;
 import com.damn.anotherglass.shared.utility.DisconnectReceiver;
+import com.damn.anotherglass.shared.utility.ReconnectTriggerReceiver;
 import com.damn.anotherglass.shared.utility.Sleep;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
@@ -33,16 +42,25 @@ public class BluetoothClient implements IRPCClient {
 
     private volatile Connection mConnection; // should be atomic
 
+    private final ReconnectSupervisor mSupervisor = new ReconnectSupervisor();
+
     private class Connection extends Thread {
 
         private final Context mContext;
 
         private final BlockingQueue<RPCMessage> mQueue = new LinkedBlockingDeque<>();
 
+        // outlives the socket, so nothing is lost while we reconnect
+        private final ClientSession mSession = new ClientSession(mQueue);
+
         private final RPCHandler mHandler;
 
         private volatile boolean mConnected = false; // are we are actually connected
 
+        private volatile boolean mActive = true; // false once shutdown was requested
+
+        private volatile BluetoothSocket mSocket;
+
         public Connection(Context context, RPCMessageListener listener) {
             mContext = context;
             mHandler = new RPCHandler(listener);
@@ -50,23 +68,25 @@ public class BluetoothClient implements IRPCClient {
 
         @Override
         public void run() {
-            try {
-//                if (ActivityCompat.checkSelfPermission(mContext, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-//                    Log.e(TAG, "Missing permission, aborting the connection");
-//                    return;
-//                }
-                BluetoothAdapter bt = BluetoothAdapter.getDefaultAdapter();
-                Set<BluetoothDevice> pairedDevices = bt.getBondedDevices();
-                if (null == pairedDevices || pairedDevices.isEmpty()) {
-                    Log.e(TAG, "No paired devices found, aborting the connection");
-                    return;
-                }
-                for (BluetoothDevice device : pairedDevices) {
-                    // connect to the first phone we find
-                    if (BluetoothClass.Device.PHONE_SMART == device.getBluetoothClass().getDeviceClass()) {
-                        runLoop(device);
+            // phone coming back into range (or Bluetooth turned back on) is a good moment to retry
+            try (ReconnectTriggerReceiver ignored = new ReconnectTriggerReceiver(
+                    mContext,
+                    mSupervisor::wake,
+                    BluetoothDevice.ACTION_ACL_CONNECTED,
+                    BluetoothAdapter.ACTION_STATE_CHANGED)) {
+                mHandler.onWaiting();
+                while (mActive) {
+                    String error = connectAndRun();
+                    if (!mActive)
+                        break;
+                    if (mSupervisor.onDisconnected())
+                        mHandler.onConnectionLost(error);
+                    else
+                        Log.w(TAG, "Connection attempt failed: " + error);
+                    long delay = mSupervisor.nextDelay();
+                    mHandler.onReconnecting(delay);
+                    if (!mSupervisor.awaitRetry(delay))
                         break;
-                    }
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Connection exception", e);
@@ -74,19 +94,23 @@ public class BluetoothClient implements IRPCClient {
                 Log.i(TAG, "Client has stopped");
                 mConnected = false;
                 mConnection = null;
-                mHandler.onConnectionLost("Connection was shut down");
+                mHandler.onShutdown();
             }
         }
 
         public void send(@NonNull RPCMessage message) {
-            if(!mQueue.offer(message))
-                Log.e(TAG, "Failed to queue message");
+            mSession.send(message);
         }
 
         public void shutdown() {
             Log.i(TAG, "Connection shutdown requested");
+            mActive = false;
+            mSupervisor.cancel();
             // send empty message to notify host we are shutting down
             mQueue.add(new RPCMessage(null, null));
+            // abort pending connection attempt, if any
+            if (!mConnected)
+                Closeables.close(mSocket);
             try {
                 join();
             } catch (InterruptedException e) {
@@ -95,36 +119,104 @@ public class BluetoothClient implements IRPCClient {
             Log.i(TAG, "Connection was shut down");
         }
 
+        // returns error message, or null if connection was closed normally
         @SuppressLint("MissingPermission")
-        private void runLoop(@NonNull BluetoothDevice device) throws Exception {
-            try (BluetoothSocket socket = device.createInsecureRfcommSocketToServiceRecord(Constants.uuid)) {
-                socket.connect();
-                Log.i(TAG, "Client has connected to " + device.getName());
-                AtomicBoolean active = new AtomicBoolean(true);
-                try (DisconnectReceiver ignored = new DisconnectReceiver(mContext, device, () -> active.getAndSet(false))) {
-                    try (OutputStream outputStream = socket.getOutputStream();
-                        InputStream inputStream = socket.getInputStream()) {
-                        IMessageSerializer serializer = SerializerProvider.getSerializer(inputStream, outputStream);
-                        mConnected = true;
-                        mHandler.onConnectionStarted(device.getName());
-                        while (active.get()) {
-                            while (null != mQueue.peek()) {
-                                RPCMessage message = mQueue.take();
-                                serializer.writeMessage(message);
-                                Log.v(TAG, "Message " + message.service + "/" + message.type + " was sent");
-                                if (null == message.service) {
-                                    Log.d(TAG, "Shutdown requested");
-                                    return;
-                                }
-                            }
-                            while (inputStream.available() > 0) {
-                                RPCMessage objectReceived = serializer.readMessage();
-                                mHandler.onDataReceived(objectReceived);
-                                Log.v(TAG, "Message " + objectReceived.service + "/" + objectReceived.type + " was received");
+        private String connectAndRun() {
+//            if (ActivityCompat.checkSelfPermission(mContext, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
+//                Log.e(TAG, "Missing permission, aborting the connection");
+//                return;
+//            }
+            BluetoothAdapter bt = BluetoothAdapter.getDefaultAdapter();
+            Set<BluetoothDevice> pairedDevices = bt.getBondedDevices();
+            if (null == pairedDevices || pairedDevices.isEmpty()) {
+                Log.e(TAG, "No paired devices found");
+                return "No paired devices found";
+            }
+            List<String> phones = new ArrayList<>();
+            for (BluetoothDevice device : pairedDevices) {
+                if (BluetoothClass.Device.PHONE_SMART == device.getBluetoothClass().getDeviceClass())
+                    phones.add(device.getAddress());
+            }
+            String error = "No paired phones found";
+            // try the phone we were connected to last time first
+            for (String address : mSupervisor.orderEndpoints(phones)) {
+                if (!mActive)
+                    return null;
+                BluetoothDevice device = bt.getRemoteDevice(address);
+                BluetoothSocket socket = null;
+                try {
+                    socket = device.createInsecureRfcommSocketToServiceRecord(Constants.uuid);
+                    mSocket = socket;
+                    socket.connect();
+                } catch (IOException e) {
+                    Closeables.close(socket);
+                    mSocket = null;
+                    Log.w(TAG, "Failed to connect to " + device.getName() + ": " + e.getMessage());
+                    error = e.getMessage();
+                    continue;
+                }
+                try {
+                    mSupervisor.onConnected(address);
+                    reportReconnectTime();
+                    runLoop(device, socket);
+                    return null;
+                } catch (Exception e) {
+                    Log.e(TAG, "Connection exception", e);
+                    return mActive ? e.getMessage() : null;
+                } finally {
+                    mConnected = false;
+                    Closeables.close(socket);
+                    mSocket = null;
+                }
+            }
+            return error;
+        }
+
+        // goes through the session, so it is written right after the hello exchange
+        private void reportReconnectTime() {
+            ReconnectStatsData stats = mSupervisor.getStats();
+            if (null == stats)
+                return;
+            Log.i(TAG, "Reconnected in " + stats.lastReconnectTime + "ms (average " + stats.averageReconnectTime
+                    + "ms over " + stats.reconnectCount + ")");
+            send(new RPCMessage(DeviceAPI.SERVICE_NAME, stats));
+        }
+
+        @SuppressLint("MissingPermission")
+        private void runLoop(@NonNull BluetoothDevice device, @NonNull BluetoothSocket socket) throws Exception {
+            Log.i(TAG, "Client has connected to " + device.getName());
+            AtomicBoolean active = new AtomicBoolean(true);
+            try (DisconnectReceiver ignored = new DisconnectReceiver(mContext, device, () -> active.getAndSet(false))) {
+                try (OutputStream outputStream = socket.getOutputStream();
+                    InputStream inputStream = socket.getInputStream()) {
+                    IMessageSerializer serializer = SerializerProvider.getSerializer(inputStream, outputStream);
+                    serializer.writeMessage(mSession.onConnected());
+                    mConnected = true;
+                    mHandler.onConnectionStarted(device.getName());
+                    while (active.get()) {
+                        mSession.poll();
+                        while (null != mQueue.peek()) {
+                            RPCMessage message = mQueue.take();
+                            serializer.writeMessage(message);
+                            Log.v(TAG, "Message " + message.service + "/" + message.type + " was sent");
+                            if (null == message.service) {
+                                Log.d(TAG, "Shutdown requested");
+                                return;
                             }
-                            Sleep.sleep(100);
                         }
+                        while (inputStream.available() > 0) {
+                            RPCMessage objectReceived = serializer.readMessage();
+                            if (null == objectReceived.service)
+                                throw new IOException("Host has closed the connection");
+                            if (mSession.onReceived(objectReceived))
+                                continue;
+                            mHandler.onDataReceived(objectReceived);
+                            Log.v(TAG, "Message " + objectReceived.service + "/" + objectReceived.type + " was received");
+                        }
+                        Sleep.sleep(100);
                     }
+                } finally {
+                    mSession.onDisconnected();
                 }
             }
         }
@@ -141,6 +233,7 @@ public class BluetoothClient implements IRPCClient {
             Log.e(TAG, "Connection is already present");
             return;
         }
+        mSupervisor.reset();
         mConnection = new Connection(context, listener);
         mConnection.start();
     }
@@ -148,13 +241,18 @@ public class BluetoothClient implements IRPCClient {
     @Override
     public void send(@NonNull RPCMessage message) {
         Connection connection = mConnection;
-        if (null == connection || !connection.isConnected()) {
+        if (null == connection) {
             Log.d(TAG, "Connection is not active, message was not sent");
             return;
         }
+        // queued until (re)connected
         connection.send(message);
     }
 
+    public ReconnectSupervisor getSupervisor() {
+        return mSupervisor;
+    }
+
     @Override
     public void stop() {
         Connection connection = mConnection;
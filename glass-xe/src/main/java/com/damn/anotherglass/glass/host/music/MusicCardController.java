@@ -6,9 +6,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.widget.RemoteViews;
 
 import com.damn.anotherglass.glass.host.HostService;
@@ -18,12 +18,15 @@ import com.damn.anotherglass.shared.music.MusicControl;
 import com.damn.anotherglass.shared.music.MusicData;
 import com.damn.anotherglass.shared.rpc.IRPCClient;
 import com.damn.anotherglass.shared.rpc.RPCMessage;
+import com.damn.anotherglass.shared.session.ClockSync;
+import com.damn.glass.shared.image.BitmapCache;
 import com.google.android.glass.timeline.LiveCard;
 
 public class MusicCardController extends BroadcastReceiver {
 
     private static final String CARD_TAG = "MusicCard";
     private static final long UI_UPDATE_INTERVAL = 1000L;
+    private static final int ART_SIZE_DP = 124; // see music_card layout
     
     private final HostService service;
     private final IRPCClient rpcClient;
@@ -31,8 +34,10 @@ public class MusicCardController extends BroadcastReceiver {
     private LiveCard liveCard;
     private MusicData lastData;
     private Bitmap cachedArt;
+    private String artKey; // of cachedArt in BitmapCache
+    private String requestedArtKey; // being decoded
     private long syncedPosition;
-    private long syncedTimestamp;
+    private long syncedTimestamp; // our elapsedRealtime() when syncedPosition was captured on the phone
     private String lastTrackKey;
     
     private final Runnable progressRunnable = new Runnable() {
@@ -55,14 +60,11 @@ public class MusicCardController extends BroadcastReceiver {
     public void update(MusicData data) {
         synchronized (this) {
             // If this is an art-only update, just cache the art and refresh
-            if (data.track == null && data.albumArt != null) {
-                if (cachedArt != null) {
-                    cachedArt.recycle();
-                }
-                cachedArt = BitmapFactory.decodeByteArray(data.albumArt, 0, data.albumArt.length);
-                if (lastData != null) {
-                    refreshCard();
+            if (data.track == null && (data.albumArt != null || data.albumArtHash != null)) {
+                if (data.albumArt == null) {
+                    return; // phone no longer had the image we have referenced
                 }
+                loadArt(data);
                 return;
             }
 
@@ -77,14 +79,11 @@ public class MusicCardController extends BroadcastReceiver {
             
             // Sync position from server
             syncedPosition = data.position;
-            syncedTimestamp = data.timestamp;
+            syncedTimestamp = ClockSync.getInstance().toLocal(data.timestamp);
             
             // Update cached art if included
             if (data.albumArt != null && data.albumArt.length > 0) {
-                if (cachedArt != null) {
-                    cachedArt.recycle();
-                }
-                cachedArt = BitmapFactory.decodeByteArray(data.albumArt, 0, data.albumArt.length);
+                loadArt(data); // card is refreshed once it is decoded
             }
             
             refreshCard();
@@ -104,6 +103,29 @@ public class MusicCardController extends BroadcastReceiver {
         }
     }
 
+    // decoded off the main thread and scaled down to the card size, previous art goes back to the pool
+    private void loadArt(MusicData data) {
+        int size = (int) (ART_SIZE_DP * service.getResources().getDisplayMetrics().density);
+        String key = BitmapCache.keyOf(data.albumArtHash, data.albumArt, size, size);
+        requestedArtKey = key;
+        if (key.equals(artKey))
+            return;
+        BitmapCache.getInstance().load(key, data.albumArt, size, size, bitmap -> {
+            synchronized (this) {
+                if (!key.equals(requestedArtKey))
+                    return; // another art came meanwhile, or card was removed
+                // RemoteViews keep their own copy of the old one
+                if (null != artKey)
+                    BitmapCache.getInstance().release(artKey);
+                artKey = key;
+                cachedArt = bitmap;
+                if (lastData != null) {
+                    refreshCard();
+                }
+            }
+        });
+    }
+
     private void refreshCard() {
         synchronized (this) {
             if (lastData == null) return;
@@ -130,8 +152,8 @@ public class MusicCardController extends BroadcastReceiver {
             // Set progress (calculate current position locally)
             if (lastData.duration > 0) {
                 long currentPosition = syncedPosition;
-                if (lastData.isPlaying && syncedTimestamp > 0) {
-                    currentPosition += System.currentTimeMillis() - syncedTimestamp;
+                if (lastData.isPlaying && lastData.timestamp > 0) {
+                    currentPosition += SystemClock.elapsedRealtime() - syncedTimestamp;
                 }
                 currentPosition = Math.min(currentPosition, lastData.duration);
                 String progress = formatTime(currentPosition) + " / " + formatTime(lastData.duration);
@@ -171,9 +193,11 @@ public class MusicCardController extends BroadcastReceiver {
             liveCard.unpublish();
         }
         liveCard = null;
-        if (cachedArt != null && !cachedArt.isRecycled()) {
-            cachedArt.recycle();
+        if (null != artKey) {
+            BitmapCache.getInstance().release(artKey);
         }
+        artKey = null;
+        requestedArtKey = null;
         cachedArt = null;
     }
 
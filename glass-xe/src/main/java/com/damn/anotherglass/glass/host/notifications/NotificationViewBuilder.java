@@ -2,10 +2,11 @@ package com.damn.anotherglass.glass.host.notifications;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.text.format.DateUtils;
 
 import com.damn.anotherglass.shared.notifications.NotificationData;
+import com.damn.glass.shared.image.BitmapCache;
+import com.damn.glass.shared.notifications.NotificationText;
 import com.google.android.glass.widget.CardBuilder;
 
 import java.text.DateFormat;
@@ -13,17 +14,21 @@ import java.util.Date;
 
 public class NotificationViewBuilder {
 
+    // icon of Author card layout, phone sends them at most 128px
+    private static final int ICON_SIZE = 80;
+
     public static CardBuilder buildView(Context context, NotificationData data) {
         // basic
         CardBuilder builder = new CardBuilder(context, CardBuilder.Layout.AUTHOR)
                 .setHeading(data.title)
                 .setSubheading(data.packageName) // todo: should be application name
-                .setText(data.text);
+                .setText(NotificationText.displayText(data));
 
-        // icon
+        // icon, only if already decoded, see loadIcon
         if (null != data.icon) {
-            Bitmap bitmap = BitmapFactory.decodeByteArray(data.icon, 0, data.icon.length);
-            builder.setIcon(bitmap);
+            Bitmap bitmap = BitmapCache.getInstance().get(iconKey(data));
+            if (null != bitmap)
+                builder.setIcon(bitmap);
         }
 
         // time
@@ -36,4 +41,21 @@ public class NotificationViewBuilder {
         return builder;
     }
 
+    // decodes the icon off the main thread, callback is called with null if there is no icon
+    public static void loadIcon(NotificationData data, BitmapCache.Callback callback) {
+        if (null == data.icon) {
+            callback.onLoaded(null);
+            return;
+        }
+        BitmapCache.getInstance().load(iconKey(data), data.icon, ICON_SIZE, ICON_SIZE, callback);
+    }
+
+    public static boolean isIconReady(NotificationData data) {
+        return null == data.icon || null != BitmapCache.getInstance().get(iconKey(data));
+    }
+
+    private static String iconKey(NotificationData data) {
+        return BitmapCache.keyOf(data.iconHash, data.icon, ICON_SIZE, ICON_SIZE);
+    }
+
 }
@@ -8,7 +8,7 @@ import android.view.ViewGroup
 import android.widget.AdapterView
 import com.damn.anotherglass.shared.notifications.NotificationData
 import com.damn.glass.shared.notifications.NotificationController
-import com.damn.glass.shared.notifications.NotificationId
+import com.damn.glass.shared.notifications.NotificationChange
 import com.google.android.glass.media.Sounds
 import com.google.android.glass.widget.CardScrollAdapter
 import com.google.android.glass.widget.CardScrollView
@@ -21,7 +21,9 @@ import kotlinx.coroutines.launch
 class NotificationsActivity : Activity() {
     private lateinit var mCardScroller: CardScrollView
 
-    private var mNotifications: List<NotificationData> = listOf()
+    // dismissible ones, newest first, with their NotificationController keys
+    private val mNotifications = ArrayList<NotificationData>()
+    private val mKeys = ArrayList<Long>()
 
     // we cant use latest lifecycle due to API levels, so use coroutines directly
     private val customScope = CoroutineScope(Job() + Dispatchers.Main)
@@ -29,20 +31,17 @@ class NotificationsActivity : Activity() {
     override fun onCreate(bundle: Bundle?) {
         super.onCreate(bundle)
 
-        mNotifications = NotificationController.instance
-            .getDismissibleNotifications()
-            .sortedByDescending { it.postedTime }
-
         mCardScroller = CardScrollView(this)
-        if (mNotifications.isEmpty()) {
+        if (NotificationController.instance.getDismissibleNotifications().isEmpty()) {
             // allow to create mCardScroller for empty list, to avoid checks later
             finish()
             return
         }
 
         customScope.launch{
-            NotificationController.instance.getNotifications().collect {
-                mNotifications = it.filter { !it.isOngoing }.sortedByDescending { it.postedTime }
+            NotificationController.instance.getChanges().collect {
+                if (!apply(it))
+                    return@collect
                 if(mNotifications.isEmpty())
                     finish()
                 else
@@ -67,8 +66,7 @@ class NotificationsActivity : Activity() {
 
         // todo: handle controls: allow to dismiss single/all
         mCardScroller.onItemClickListener = AdapterView.OnItemClickListener { parent, view, position, id ->
-                val notification = mNotifications[position]
-                NotificationController.instance.dismissNotification(NotificationId(notification))
+                NotificationController.instance.dismissNotification(mKeys[position])
                 val am = getSystemService(AUDIO_SERVICE) as AudioManager?
                 am?.playSoundEffect(Sounds.DISMISSED)
             }
@@ -90,8 +88,55 @@ class NotificationsActivity : Activity() {
         super.onDestroy()
     }
 
-    private fun buildView(notification: NotificationData): View? =
-        NotificationViewBuilder.buildView(this, notification).view
+    // keeps the list sorted without re-sorting it, returns false if nothing visible has changed
+    private fun apply(change: NotificationChange): Boolean = when (change) {
+        is NotificationChange.Reset -> {
+            mNotifications.clear()
+            mKeys.clear()
+            change.notifications.forEach {
+                insert(NotificationController.instance.keyOf(it), it)
+            }
+            true
+        }
+
+        is NotificationChange.Inserted -> insert(change.key, change.notification)
+
+        is NotificationChange.Updated -> {
+            // may have become ongoing or got another time
+            val removed = remove(change.key)
+            insert(change.key, change.notification) || removed
+        }
+
+        is NotificationChange.Removed -> remove(change.key)
+    }
+
+    private fun insert(key: Long, notification: NotificationData): Boolean {
+        if (notification.isOngoing) return false
+        var index = mNotifications.indexOfFirst { it.postedTime < notification.postedTime }
+        if (-1 == index) index = mNotifications.size
+        mNotifications.add(index, notification)
+        mKeys.add(index, key)
+        return true
+    }
+
+    private fun remove(key: Long): Boolean {
+        val index = mKeys.indexOf(key)
+        if (-1 == index) return false
+        mNotifications.removeAt(index)
+        mKeys.removeAt(index)
+        return true
+    }
+
+    private fun buildView(notification: NotificationData): View? {
+        // icon could have been evicted from the cache, show card without it and rebuild once it is decoded
+        if (!NotificationViewBuilder.isIconReady(notification)) {
+            NotificationViewBuilder.loadIcon(notification) {
+                if (null != it && !isDestroyed && mNotifications.contains(notification))
+                    mCardScroller.adapter?.notifyDataSetChanged()
+            }
+        }
+        return NotificationViewBuilder.buildView(this, notification).view
+    }
 }
 
 fun NotificationController.getDismissibleNotifications(): List<NotificationData> =
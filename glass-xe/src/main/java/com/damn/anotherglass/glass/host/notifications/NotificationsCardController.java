@@ -54,6 +54,19 @@ public class NotificationsCardController extends BroadcastReceiver {
         // we do not observe NotificationController in XE app,
         // since the service is always running and we can handle events directly
         NotificationController.getInstance().onNotificationUpdate(data);
+        if (data.action == NotificationData.Action.Posted) {
+            // cards are built with already decoded icon, so decode it first (right away if cached)
+            NotificationViewBuilder.loadIcon(data, icon -> {
+                // removed or replaced while decoding
+                if (NotificationController.getInstance().getNotifications().getValue().contains(data))
+                    show(data);
+            });
+        } else {
+            show(data);
+        }
+    }
+
+    private void show(NotificationData data) {
         NotificationId id = new NotificationId(data);
         if (data.action == NotificationData.Action.Posted) {
             if (data.isOngoing) {
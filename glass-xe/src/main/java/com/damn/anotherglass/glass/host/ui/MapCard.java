@@ -1,58 +1,78 @@
 package com.damn.anotherglass.glass.host.ui;
 
 import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.Bitmap;
-import android.graphics.drawable.Drawable;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.PowerManager;
 import androidx.annotation.NonNull;
-import android.util.Log;
 import android.widget.RemoteViews;
 
+import com.damn.glass.shared.map.MapRenderer;
 import com.google.android.glass.timeline.LiveCard;
 import com.google.android.glass.widget.CardBuilder;
-import com.squareup.picasso.MemoryPolicy;
-import com.squareup.picasso.Picasso;
-import com.squareup.picasso.Target;
-
-import java.util.Locale;
 
 public class MapCard extends ICardViewProvider implements LocationListener {
 
-    private static final String LIVE_CARD_TAG = "MapCard";
-    private static final int sIMAGE_TIMEOUT = 5000;
-    private static final int UPDATE_FREQ_MS = sIMAGE_TIMEOUT;
+    private static final int MAP_WIDTH = 640;
+    private static final int MAP_HEIGHT = 360;
 
     private final LocationManager locationManager;
     private final Context mContext;
 
-    private static abstract class TimedTarget implements Target {
-        public final long timeStamp = System.currentTimeMillis();
-    }
+    // composes map from cached tiles, moving does not need network
+    private final MapRenderer mRenderer;
+
+    // composing 640x360 map is too much for main thread
+    private final HandlerThread mRenderThread = new HandlerThread("MapCardRenderer");
+    private final Handler mRenderHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     private Bitmap mLastMap;
-    private String mLastMapUrl = "";
-    private TimedTarget mMapLoading;
 
     private Location mLocation;
 
+    // fixes are not rendered while screen is off, catch up once it is on
+    private final BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            checkMap();
+        }
+    };
+
     @SuppressLint("MissingPermission")
     public MapCard(@NonNull LiveCard card, Context context) {
         super(card);
         mContext = context;
         locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        mRenderer = new MapRenderer(context, MAP_WIDTH, MAP_HEIGHT);
+        mRenderThread.start();
+        mRenderHandler = new Handler(mRenderThread.getLooper());
+        // tiles that were missing have arrived
+        mRenderer.setOnInvalidated(this::checkMap);
         locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, this);
-        updateMapStatus();
+        context.registerReceiver(mScreenReceiver, new IntentFilter(Intent.ACTION_SCREEN_ON));
+        checkMap();
     }
 
     @Override
     public void onRemoved() {
         super.onRemoved();
         locationManager.removeUpdates(this);
+        mContext.unregisterReceiver(mScreenReceiver);
+        mRenderHandler.removeCallbacksAndMessages(null);
+        mRenderThread.quit();
+        mMainHandler.removeCallbacksAndMessages(null);
+        mRenderer.release();
     }
 
     @Override
@@ -77,44 +97,30 @@ public class MapCard extends ICardViewProvider implements LocationListener {
     }
 
     private void checkMap() {
-        if(null != mMapLoading && mMapLoading.timeStamp + sIMAGE_TIMEOUT > System.currentTimeMillis())
-            return;
-
-        if(null == mLocation)
-            return;
-
-        final String mapUrl = getMapUrl(mLocation);
-        if (mLastMapUrl.equals(mapUrl))
+        final Location location = mLocation;
+        if(null == location || !isScreenOn())
             return;
+        // only the latest fix matters
+        mRenderHandler.removeCallbacksAndMessages(null);
+        mRenderHandler.post(() -> render(location));
+    }
 
-        mMapLoading = new TimedTarget() {
-            @Override
-            public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
-                mLastMapUrl = mapUrl;
-                mLastMap = bitmap;
-                mMapLoading = null;
-                onMapUpdated();
-            }
-
-            @Override
-            public void onBitmapFailed(Exception e, Drawable errorDrawable) {
-                mMapLoading = null;
-                Log.e(LIVE_CARD_TAG, "Failed to load map image " + mapUrl, e);
-            }
-
-            @Override
-            public void onPrepareLoad(Drawable placeHolderDrawable) {
-            }
-        };
-        Picasso.get().load(mapUrl).memoryPolicy(MemoryPolicy.NO_STORE).into(mMapLoading);
+    // render thread
+    private void render(@NonNull Location location) {
+        if (mRenderer.isUpToDate(location))
+            return; // same tiles, marker has not moved by a pixel
+        // renderer draws into the same bitmap next time, RemoteViews need one of their own
+        final Bitmap map = mRenderer.render(location).copy(Bitmap.Config.RGB_565, false);
+        mMainHandler.post(() -> {
+            mLastMap = map;
+            onMapUpdated();
+        });
     }
 
-    private void updateMapStatus() {
+    @SuppressWarnings("deprecation")
+    private boolean isScreenOn() {
         PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
-        if(null != pm && !pm.isScreenOn()) {
-            return;
-        }
-        checkMap();
+        return null == pm || pm.isScreenOn();
     }
 
     private void onMapUpdated() {
@@ -130,14 +136,4 @@ public class MapCard extends ICardViewProvider implements LocationListener {
         return cardBuilder.getRemoteViews();
     }
 
-    private String getMapUrl(Location location) {
-        return String.format(
-                Locale.getDefault(),
-                "https://static-maps.yandex.ru/1.x/?lang=en_US" +
-                        "&size=640,360&z=15&l=map&pt=" +
-                        "%f,%f" +
-                        ",pm2rdl",
-                location.getLongitude(), location.getLatitude());
-    }
-
 }
@@ -0,0 +1,118 @@
+package com.damn.anotherglass.core
+
+import kotlin.concurrent.Volatile
+import kotlin.math.max
+
+/**
+ * Estimates link throughput from the time it takes data to reach the application on Glass.
+ * Writes to the socket only show how fast the kernel buffer is filled, so after a batch of writes
+ * host writes a [com.damn.anotherglass.shared.session.BandwidthProbe] and Glass sends it back right away:
+ *  - batches of at least [MIN_SAMPLE_BYTES] give throughput samples, bytes over the time until the probe came back;
+ *  - small batches (at most once per [DELAY_PROBE_INTERVAL]) measure the round trip with nothing to transfer,
+ *    mostly polling of both connection loops, and it is subtracted from the large ones.
+ * Starts from a rough guess for the transport and follows samples with exponential smoothing.
+ * Times are [System.nanoTime] values, passed in so the estimator can be fed without a real link.
+ */
+class BandwidthEstimator(initialBytesPerSecond: Double) {
+
+    @Volatile
+    var bytesPerSecond: Double = initialBytesPerSecond
+        private set
+
+    // peer echoes probes, only true for clients that support sessions
+    @Volatile
+    var enabled = false
+        set(value) {
+            synchronized(this) {
+                field = value
+                reset()
+            }
+        }
+
+    // writes not covered by a probe yet
+    private var windowStart = 0L
+    private var windowBytes = 0L
+    private var lastWrite = 0L
+
+    // probe we wait to come back
+    private var probeId = 0L
+    private var probeStart = 0L
+    private var probeBytes = 0L
+    private var probeSent = 0L
+    private var outstanding = false
+
+    private var baseDelay = UNKNOWN
+
+    /**
+     * Call after each message written to the socket.
+     *
+     * @return id of a probe to write right now, 0 if none is needed
+     */
+    @Synchronized
+    fun onWrite(bytes: Long, start: Long, end: Long): Long {
+        if (!enabled) return 0
+        if (outstanding && end - probeSent > PROBE_TIMEOUT) outstanding = false // lost with the link
+        // previous writes must be delivered by now, link was idle since and the time would not count
+        if (windowBytes > 0 && start - lastWrite > drainTime(windowBytes)) windowBytes = 0
+        if (0L == windowBytes) windowStart = start
+        windowBytes += bytes
+        lastWrite = end
+        if (outstanding) return 0 // window keeps growing until the probe is back
+        if (windowBytes < MIN_SAMPLE_BYTES && end - probeSent < DELAY_PROBE_INTERVAL) return 0
+        outstanding = true
+        probeStart = windowStart
+        probeBytes = windowBytes
+        probeSent = end
+        windowBytes = 0
+        return ++probeId
+    }
+
+    /**
+     * Call when the probe comes back from the peer.
+     */
+    @Synchronized
+    fun onEcho(id: Long, now: Long) {
+        if (!outstanding || id != probeId) return
+        outstanding = false
+        val elapsed = now - probeStart
+        if (probeBytes < MIN_SAMPLE_BYTES) {
+            // follow the minimum, but let it grow slowly if polling got slower
+            baseDelay = if (UNKNOWN == baseDelay || elapsed < baseDelay) elapsed
+            else baseDelay + ((elapsed - baseDelay) * DELAY_ALPHA).toLong()
+            return
+        }
+        val delay = if (UNKNOWN == baseDelay) 0 else baseDelay
+        val transfer = max(elapsed - delay, MIN_TRANSFER_NANOS)
+        val sample = probeBytes * NANOS_PER_SECOND / transfer
+        bytesPerSecond += ALPHA * (sample - bytesPerSecond)
+    }
+
+    val quality: MediaQuality
+        get() = MediaQuality.forBandwidth(bytesPerSecond)
+
+    private fun reset() {
+        windowBytes = 0
+        outstanding = false
+    }
+
+    private fun drainTime(bytes: Long): Long =
+        (bytes * NANOS_PER_SECOND / bytesPerSecond).toLong() + max(baseDelay, 0)
+
+    companion object {
+        private const val MIN_SAMPLE_BYTES = 4 * 1024L
+        private const val ALPHA = 0.3
+        private const val DELAY_ALPHA = 0.1
+        private const val UNKNOWN = -1L
+
+        private const val NANOS_PER_SECOND = 1e9
+        private const val DELAY_PROBE_INTERVAL = 10_000_000_000L
+        private const val PROBE_TIMEOUT = 10_000_000_000L
+        // faster than that can't be told apart from polling jitter, still above High
+        private const val MIN_TRANSFER_NANOS = 10_000_000L
+
+        // RFCOMM rarely does better than a couple hundred KB/s, and is often congested by audio
+        fun forBluetooth() = BandwidthEstimator(64 * 1024.0)
+
+        fun forWiFi() = BandwidthEstimator(1024 * 1024.0)
+    }
+}
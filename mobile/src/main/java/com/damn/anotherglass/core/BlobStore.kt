@@ -0,0 +1,47 @@
+package com.damn.anotherglass.core
+
+import com.damn.anotherglass.shared.blob.BlobHolder
+import com.damn.anotherglass.shared.blob.Blobs
+
+/**
+ * Blobs (icons, album art) we have referenced by hash in sent messages, so we can serve Glass requests.
+ * Least recently used ones are dropped once [maxBytes] is exceeded,
+ * Glass gets an empty answer for those and shows the message without the image.
+ */
+class BlobStore(private val maxBytes: Long = DEFAULT_MAX_BYTES) {
+
+    private val mBlobs = LinkedHashMap<String, ByteArray>(16, 0.75f, true)
+    private var mSize = 0L
+
+    @Synchronized
+    fun put(data: ByteArray): String {
+        val hash = Blobs.hash(data)
+        if (null == mBlobs.put(hash, data)) {
+            mSize += data.size
+            trim()
+        }
+        return hash
+    }
+
+    @Synchronized
+    fun get(hash: String): ByteArray? = mBlobs[hash]
+
+    // replaces inline blob with a reference to the store
+    fun externalize(holder: BlobHolder) {
+        val data = holder.blob ?: return
+        holder.blobHash = put(data)
+        holder.blob = null
+    }
+
+    private fun trim() {
+        val it = mBlobs.entries.iterator()
+        while (mSize > maxBytes && it.hasNext()) {
+            mSize -= it.next().value.size
+            it.remove()
+        }
+    }
+
+    companion object {
+        private const val DEFAULT_MAX_BYTES = 4L * 1024 * 1024
+    }
+}
@@ -19,13 +19,15 @@ import com.damn.anotherglass.shared.rpc.RPCHandler;
 import com.damn.anotherglass.shared.rpc.RPCMessage;
 import com.damn.anotherglass.shared.rpc.RPCMessageListener;
 import com.damn.anotherglass.shared.rpc.SerializerProvider;
+import com.damn.anotherglass.shared.session.BandwidthProbe;
+import com.damn.anotherglass.shared.session.SessionAPI;
 import com.damn.anotherglass.shared.utility.Closeables;
+import com.damn.anotherglass.shared.utility.CountingOutputStream;
 import com.damn.anotherglass.shared.utility.DisconnectReceiver;
 import com.damn.anotherglass.shared.utility.Sleep;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
 
@@ -36,12 +38,18 @@ public class BluetoothHost implements IRPCHost {
     private static final String TAG = "GlassHostBt";
 
     private final RPCHandler mHandler;
+    private final BandwidthEstimator mEstimator;
 
     private volatile WorkerThread mWorkerThread;
     private volatile boolean mActive; // are we still need to run?
 
     public BluetoothHost(RPCMessageListener listener) {
+        this(listener, null);
+    }
+
+    public BluetoothHost(RPCMessageListener listener, BandwidthEstimator estimator) {
         mHandler = new RPCHandler(listener);
+        mEstimator = estimator;
     }
 
     @Override
@@ -82,6 +90,7 @@ public class BluetoothHost implements IRPCHost {
     private class WorkerThread extends Thread {
         private final Context mContext;
         private BluetoothServerSocket serverSocket; // should use atomic reference, but it's not that critical
+        private volatile boolean mConnected; // current client is still there
 
         private final BlockingQueue<RPCMessage> mQueue = new LinkedBlockingDeque<>();
 
@@ -116,6 +125,8 @@ public class BluetoothHost implements IRPCHost {
                 } finally {
                     Closeables.close(serverSocket);
                     serverSocket = null;
+                    // whatever did not go out is resent by the session once the client is back
+                    mQueue.clear();
                     mHandler.onConnectionLost(null); // will be called twice on error
                 }
             }
@@ -144,22 +155,38 @@ public class BluetoothHost implements IRPCHost {
         private void runLoop(BluetoothSocket socket) throws Exception {
             final BluetoothDevice remoteDevice = socket.getRemoteDevice();
             ALog.d(TAG, "Connected to " + remoteDevice.getName());
+            mConnected = true;
+            // new client gets the session hello reply and resend first, nothing left from the previous one
+            mQueue.clear();
             mHandler.onConnectionStarted(remoteDevice.getName());
             try (DisconnectReceiver ignored = new DisconnectReceiver(mContext, remoteDevice, this::onConnectionLost)) {
 
                 try (InputStream inputStream = socket.getInputStream();
-                     OutputStream outputStream = socket.getOutputStream()) {
+                     CountingOutputStream outputStream = new CountingOutputStream(socket.getOutputStream())) {
                     IMessageSerializer serializer = SerializerProvider.getSerializer(inputStream, outputStream);
-                    while (mActive) {
+                    while (mActive && mConnected) {
                         while (inputStream.available() > 0) {
                             RPCMessage objectReceived = serializer.readMessage();
                             if (null == objectReceived.service)
                                 return; // shutdown requested
+                            if (objectReceived.payload instanceof BandwidthProbe) {
+                                // timed here, main thread would add its own delay
+                                if (null != mEstimator)
+                                    mEstimator.onEcho(((BandwidthProbe) objectReceived.payload).id, System.nanoTime());
+                                continue;
+                            }
                             mHandler.onDataReceived(objectReceived);
                         }
                         while (null != mQueue.peek()) {
                             RPCMessage message = mQueue.take();
+                            long bytes = outputStream.getCount();
+                            long start = System.nanoTime();
                             serializer.writeMessage(message);
+                            if (null != mEstimator) {
+                                long probe = mEstimator.onWrite(outputStream.getCount() - bytes, start, System.nanoTime());
+                                if (0 != probe)
+                                    serializer.writeMessage(new RPCMessage(SessionAPI.ID, new BandwidthProbe(probe)));
+                            }
                         }
                         Sleep.sleep(100);
                     }
@@ -167,9 +194,10 @@ public class BluetoothHost implements IRPCHost {
             }
         }
 
+        // only this client is gone, go back to accept() so it can reconnect and resume the session
         private void onConnectionLost() {
             ALog.i(TAG, "Device was disconnected");
-            mActive = false;
+            mConnected = false;
         }
     }
 
@@ -1,6 +1,7 @@
 package com.damn.anotherglass.core
 
 import com.damn.anotherglass.shared.device.BatteryStatusData
+import com.damn.anotherglass.shared.device.ReconnectStatsData
 import kotlinx.coroutines.flow.StateFlow
 
 /**
@@ -10,5 +11,6 @@ import kotlinx.coroutines.flow.StateFlow
  */
 data class ConnectedDevice(
     val name: StateFlow<String>,
-    val batteryStatus: StateFlow<BatteryStatusData?> // null if not available yet
+    val batteryStatus: StateFlow<BatteryStatusData?>, // null if not available yet
+    val reconnectStats: StateFlow<ReconnectStatsData?> // null until Glass has reconnected at least once
 )
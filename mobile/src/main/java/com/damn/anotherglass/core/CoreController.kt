@@ -37,12 +37,14 @@ class CoreController(
         MutableLiveData(settings.isNotificationsEnabled && NotificationService.isEnabled(activity))
     private val _isGPSEnabled = MutableLiveData(settings.isGPSEnabled)
     private val _isMusicExtensionEnabled = MutableLiveData(settings.isMusicExtensionEnabled)
+    private val _notificationThrottleWindow = MutableLiveData(settings.notificationThrottleWindow)
 
     override val isServiceRunning: LiveData<Boolean> = _serviceState
     override val hostMode: LiveData<Settings.HostMode> = _hostMode
     override val notificationsEnabled: LiveData<Boolean> = _isNotificationsEnabled
     override val isGPSEnabled: LiveData<Boolean> = _isGPSEnabled
     override val isMusicExtensionEnabled: LiveData<Boolean> = _isMusicExtensionEnabled
+    override val notificationThrottleWindow: LiveData<Long> = _notificationThrottleWindow
 
     init {
         gpsPermissionLauncher = activity.createGPSPermissionLauncher {
@@ -66,6 +68,7 @@ class CoreController(
                 Settings.GPS_ENABLED -> _isGPSEnabled.postValue(settings.isGPSEnabled)
                 Settings.NOTIFICATIONS_ENABLED -> syncNotificationsState()
                 Settings.MUSIC_EXTENSION_ENABLED -> _isMusicExtensionEnabled.postValue(settings.isMusicExtensionEnabled)
+                Settings.NOTIFICATION_THROTTLE_WINDOW -> _notificationThrottleWindow.postValue(settings.notificationThrottleWindow)
             }
         }, activity.lifecycle)
     }
@@ -144,6 +147,10 @@ class CoreController(
         settings.isMusicExtensionEnabled = enabled
     }
 
+    override fun setNotificationThrottleWindow(window: Long) {
+        settings.notificationThrottleWindow = window
+    }
+
     fun onServiceDisconnected() {
         _serviceState.postValue(false)
     }
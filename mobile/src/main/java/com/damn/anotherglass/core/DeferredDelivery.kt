@@ -0,0 +1,68 @@
+package com.damn.anotherglass.core
+
+import com.applicaster.xray.core.Logger
+import com.damn.anotherglass.logging.ALog
+import com.damn.anotherglass.shared.rpc.RPCMessage
+
+/**
+ * Holds back non-urgent messages while Glass display is off, every message wakes up Glass radio and CPU.
+ * Held messages go out in one batch when display turns on, or right before an urgent message
+ * (so Glass never sees them out of order).
+ * Messages with the same coalesce key replace each other, only the latest one is delivered.
+ */
+class DeferredDelivery(private val sink: (RPCMessage) -> Unit) {
+
+    private val log = ALog(Logger.get(TAG))
+
+    private val mPending = LinkedHashMap<Any, RPCMessage>()
+
+    private var mDisplayOn = true
+
+    @Synchronized
+    fun send(message: RPCMessage) {
+        flush()
+        sink(message)
+    }
+
+    @Synchronized
+    fun sendDeferrable(message: RPCMessage, coalesceKey: Any? = null) {
+        if (mDisplayOn) {
+            send(message)
+            return
+        }
+        val key = coalesceKey ?: Any()
+        // re-insert, so coalesced message takes the position of the latest one
+        mPending.remove(key)
+        mPending[key] = message
+        if (mPending.size > MAX_PENDING) {
+            log.w(TAG, "Too many deferred messages, delivering them now")
+            flush()
+        }
+    }
+
+    @Synchronized
+    fun setDisplayOn(displayOn: Boolean) {
+        mDisplayOn = displayOn
+        if (displayOn) flush()
+    }
+
+    // connection is gone, nothing to deliver anymore
+    @Synchronized
+    fun reset() {
+        mPending.clear()
+        mDisplayOn = true
+    }
+
+    private fun flush() {
+        if (mPending.isEmpty()) return
+        log.d(TAG, "Delivering ${mPending.size} deferred messages")
+        val batch = ArrayList(mPending.values)
+        mPending.clear()
+        batch.forEach(sink)
+    }
+
+    companion object {
+        private const val TAG = "DeferredDelivery"
+        private const val MAX_PENDING = 200
+    }
+}
@@ -0,0 +1,94 @@
+package com.damn.anotherglass.core
+
+import android.os.Build
+import com.applicaster.xray.core.Logger
+import com.damn.anotherglass.logging.ALog
+import com.damn.anotherglass.shared.Constants
+import com.damn.anotherglass.shared.discovery.DiscoveryBeacon
+import java.io.IOException
+import java.net.DatagramPacket
+import java.net.DatagramSocket
+import java.net.Inet4Address
+import java.net.InetAddress
+import java.net.NetworkInterface
+import kotlin.concurrent.Volatile
+
+/**
+ * Periodically broadcasts [DiscoveryBeacon] on every IPv4 interface that supports broadcast
+ * (WiFi, hotspot, USB tethering), so Glass can find us without QR code or gateway guessing.
+ * Only runs while host is waiting for a connection.
+ */
+class DiscoveryBroadcaster(
+    private val port: Int,
+    private val capabilities: List<String>
+) {
+    private val logger = ALog(Logger.get(TAG))
+
+    @Volatile
+    private var mThread: Thread? = null
+
+    @Volatile
+    private var mSocket: DatagramSocket? = null
+
+    fun start() {
+        if (null != mThread) return
+        mThread = Thread(::run, TAG).also { it.start() }
+    }
+
+    fun stop() {
+        val thread = mThread ?: return
+        mThread = null
+        thread.interrupt()
+        mSocket?.close()
+        thread.join()
+    }
+
+    private fun run() {
+        try {
+            DatagramSocket().use { socket ->
+                mSocket = socket
+                socket.broadcast = true
+                while (mThread === Thread.currentThread()) {
+                    broadcast(socket)
+                    Thread.sleep(INTERVAL)
+                }
+            }
+        } catch (e: InterruptedException) {
+            // stopped
+        } catch (e: IOException) {
+            if (mThread === Thread.currentThread())
+                logger.e(TAG, "Discovery broadcast failed: ${e.message}", e)
+        } finally {
+            mSocket = null
+        }
+    }
+
+    private fun broadcast(socket: DatagramSocket) {
+        for ((address, broadcast) in broadcastAddresses()) {
+            val data = DiscoveryBeacon(Build.MODEL, address.hostAddress, port, capabilities).toBytes()
+            try {
+                socket.send(DatagramPacket(data, data.size, broadcast, Constants.discoveryPort))
+            } catch (e: IOException) {
+                // interface can go down in between, just skip it this time
+                logger.w(TAG, "Failed to send beacon to $broadcast: ${e.message}")
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "DiscoveryBroadcaster"
+        private const val INTERVAL = 2000L
+
+        // pairs of (own address, broadcast address)
+        private fun broadcastAddresses(): List<Pair<InetAddress, InetAddress>> =
+            try {
+                NetworkInterface.getNetworkInterfaces()?.toList().orEmpty()
+                    .filter { it.isUp && !it.isLoopback }
+                    .flatMap { it.interfaceAddresses }
+                    .filter { it.address is Inet4Address && null != it.broadcast }
+                    .map { it.address to it.broadcast }
+            } catch (e: IOException) {
+                emptyList()
+            }
+    }
+}
@@ -17,13 +17,20 @@ import androidx.lifecycle.lifecycleScope
 import com.applicaster.xray.core.Logger
 import com.damn.anotherglass.R
 import com.damn.anotherglass.extensions.GPSExtension
+import com.damn.anotherglass.extensions.map.MapExtension
 import com.damn.anotherglass.extensions.music.MusicExtension
 import com.damn.anotherglass.extensions.notifications.NotificationExtension
 import com.damn.anotherglass.logging.ALog
+import com.damn.anotherglass.shared.blob.BlobAPI
+import com.damn.anotherglass.shared.blob.BlobData
+import com.damn.anotherglass.shared.blob.BlobRequest
 import com.damn.anotherglass.shared.device.BatteryStatusData
 import com.damn.anotherglass.shared.device.DeviceAPI
+import com.damn.anotherglass.shared.device.DisplayStateData
+import com.damn.anotherglass.shared.device.ReconnectStatsData
+import com.damn.anotherglass.shared.map.MapAPI
+import com.damn.anotherglass.shared.map.MapTileRequest
 import com.damn.anotherglass.shared.music.MusicAPI
-import com.damn.anotherglass.shared.rpc.IRPCHost
 import com.damn.anotherglass.shared.rpc.RPCMessage
 import com.damn.anotherglass.shared.rpc.RPCMessageListener
 import com.damn.anotherglass.ui.MainActivity
@@ -44,9 +51,11 @@ class GlassService
 
     private val mBinder: IBinder = LocalBinder()
 
-    private lateinit var mHost: IRPCHost
+    private lateinit var mHost: SessionHost
     private lateinit var mNM: NotificationManager
     private lateinit var mSettings: Settings
+    private val mDelivery = DeferredDelivery { mHost.send(it) }
+    private val mBlobs = BlobStore()
 
     private val log = ALog(Logger.get(TAG))
 
@@ -55,11 +64,13 @@ class GlassService
     private lateinit var mGPS: GPSExtension
     private lateinit var mNotifications: NotificationExtension
     private lateinit var mMusic: MusicExtension
+    private lateinit var mMap: MapExtension
 
     // connected device info
     private val mDeviceName = MutableStateFlow("")
     private val mBatteryStatus = MutableStateFlow<BatteryStatusData?>(null)
-    private val mConnectedDeviceData = ConnectedDevice(mDeviceName, mBatteryStatus)
+    private val mReconnectStats = MutableStateFlow<ReconnectStatsData?>(null)
+    private val mConnectedDeviceData = ConnectedDevice(mDeviceName, mBatteryStatus, mReconnectStats)
     private val mConnectedDevice = MutableStateFlow<ConnectedDevice?>(null)
 
     override fun onCreate() {
@@ -92,6 +103,8 @@ class GlassService
                     .show()
                 mDeviceName.value = device
                 mBatteryStatus.value = null
+                mReconnectStats.value = null
+                mDelivery.reset()
                 mConnectedDevice.value = mConnectedDeviceData
                 if (mSettings.isGPSEnabled) mGPS.start()
                 if (mSettings.isNotificationsEnabled) mNotifications.start()
@@ -104,9 +117,23 @@ class GlassService
                     val payload = data.payload
                     if (payload is BatteryStatusData) {
                         mBatteryStatus.value = payload
+                    } else if (payload is ReconnectStatsData) {
+                        mReconnectStats.value = payload
+                    } else if (payload is DisplayStateData) {
+                        mDelivery.setDisplayOn(payload.screenOn)
+                        mHost.deferAcks = !payload.screenOn
                     }
                 } else if (MusicAPI.ID == data.service) {
                     mMusic.onMessage(data.payload)
+                } else if (BlobAPI.ID == data.service) {
+                    val payload = data.payload
+                    if (payload is BlobRequest) {
+                        // Glass is waiting on it, never defer
+                        send(RPCMessage(BlobAPI.ID, BlobData(payload.hash, mBlobs.get(payload.hash))))
+                    }
+                } else if (MapAPI.ID == data.service) {
+                    val payload = data.payload
+                    if (payload is MapTileRequest) mMap.onRequest(payload)
                 }
             }
 
@@ -117,14 +144,20 @@ class GlassService
                 mGPS.stop()
                 mNotifications.stop()
                 mMusic.stop()
+                mDelivery.reset()
+                mHost.deferAcks = false
                 mConnectedDevice.value = null
             }
 
+            override fun onReconnecting(delay: Long) {
+                // hosts do not reconnect, they just wait for the next client in onWaiting
+            }
+
             override fun onShutdown() {
-                log.i(TAG, "BluetoothHost has stopped, terminating GlassService")
+                log.i(TAG, "Host has stopped, terminating GlassService")
                 Toast.makeText(
                     this@GlassService,
-                    "BluetoothHost has stopped, terminating GlassService",
+                    "Host has stopped, terminating GlassService",
                     Toast.LENGTH_SHORT
                 ).show()
                 mConnectedDevice.value = null
@@ -136,9 +169,9 @@ class GlassService
         mNotifications = NotificationExtension(this)
         mGPS = GPSExtension(this)
         mMusic = MusicExtension(this)
+        mMap = MapExtension(this)
 
-        val useWifi = Settings.HostMode.WiFi == mSettings.hostMode
-        mHost = if (useWifi) WiFiHost(rpcMessageListener) else BluetoothHost(rpcMessageListener)
+        mHost = SessionHost(rpcMessageListener, mSettings.hostMode)
 
         mSettings.registerListener(this, this.lifecycle)
 
@@ -162,15 +195,21 @@ class GlassService
 
     override fun onDestroy() {
         mGPS.stop()
-        mNotifications.stop()
+        mNotifications.close()
         mMusic.stop()
+        mMap.close()
         mHost.stop()
         mConnectedDevice.value = null
         super.onDestroy()
     }
 
     fun send(message: RPCMessage) {
-        mHost.send(message)
+        mDelivery.send(message)
+    }
+
+    // for traffic nobody needs while Glass display is off, see DeferredDelivery
+    fun sendDeferrable(message: RPCMessage, coalesceKey: Any? = null) {
+        mDelivery.sendDeferrable(message, coalesceKey)
     }
 
     val connectedDevice: StateFlow<ConnectedDevice?>
@@ -179,6 +218,18 @@ class GlassService
     val settings: Settings
         get() = mSettings
 
+    // package -> notification updates Glass never got, coalesced or unchanged reposts
+    val suppressedNotifications: StateFlow<Map<String, Int>>
+        get() = mNotifications.suppressedCounts
+
+    // images are sent by hash, Glass fetches bytes only if it does not have them cached
+    val blobs: BlobStore
+        get() = mBlobs
+
+    // image producers should size their output with this
+    val mediaQuality: MediaQuality
+        get() = mHost.mediaQuality
+
     private fun createChannels() {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return
         val defaultChannel = NotificationChannel(
@@ -0,0 +1,29 @@
+package com.damn.anotherglass.core
+
+/**
+ * Size and quality limits for images sent to Glass, picked by [BandwidthEstimator].
+ * Zero size means "do not send".
+ */
+enum class MediaQuality(
+    val albumArtSize: Int,
+    val albumArtQuality: Int,
+    val albumArtPreview: Boolean, // small thumbnail first, for instant feedback
+    val iconSize: Int, // max icon side, Glass never shows them larger than High size
+    val iconQuality: Int, // WebP quality, 100 is lossless (PNG before API 30)
+    val mapTileQuality: Int // WebP quality, 100 sends tiles as they come from the server
+) {
+    Low(albumArtSize = 0, albumArtQuality = 60, albumArtPreview = true, iconSize = 48, iconQuality = 70, mapTileQuality = 50),
+    Medium(albumArtSize = 128, albumArtQuality = 80, albumArtPreview = true, iconSize = 96, iconQuality = 85, mapTileQuality = 75),
+    High(albumArtSize = 256, albumArtQuality = 90, albumArtPreview = false, iconSize = 128, iconQuality = 100, mapTileQuality = 100);
+
+    companion object {
+        private const val LOW_BANDWIDTH = 16 * 1024.0
+        private const val HIGH_BANDWIDTH = 256 * 1024.0
+
+        fun forBandwidth(bytesPerSecond: Double): MediaQuality = when {
+            bytesPerSecond < LOW_BANDWIDTH -> Low
+            bytesPerSecond < HIGH_BANDWIDTH -> Medium
+            else -> High
+        }
+    }
+}
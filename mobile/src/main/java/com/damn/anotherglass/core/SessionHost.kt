@@ -0,0 +1,220 @@
+package com.damn.anotherglass.core
+
+import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import com.applicaster.xray.core.Logger
+import com.damn.anotherglass.logging.ALog
+import com.damn.anotherglass.shared.rpc.IRPCHost
+import com.damn.anotherglass.shared.rpc.RPCMessage
+import com.damn.anotherglass.shared.rpc.RPCMessageListener
+import com.damn.anotherglass.shared.session.ClockProbe
+import com.damn.anotherglass.shared.session.SessionAPI
+import com.damn.anotherglass.shared.session.Session
+import com.damn.anotherglass.shared.session.SessionAck
+import com.damn.anotherglass.shared.session.SessionHello
+
+/**
+ * Keeps a single [Session] on top of the transport host, so extensions see one continuous connection:
+ *  - after a reconnect, peer tells how much it has received and the rest is resent;
+ *  - if the transport is gone, session is kept for [RESUME_TIMEOUT] before reporting disconnect.
+ * Clients that do not send SessionHello are served as before, without resume.
+ */
+class SessionHost(
+    private val listener: RPCMessageListener,
+    mode: Settings.HostMode
+) : IRPCHost {
+
+    private val log = ALog(Logger.get(TAG))
+
+    private val mMainHandler = Handler(Looper.getMainLooper())
+
+    private inner class Link(val mode: Settings.HostMode) : RPCMessageListener {
+
+        val bandwidth = when (mode) {
+            Settings.HostMode.WiFi -> BandwidthEstimator.forWiFi()
+            Settings.HostMode.Bluetooth -> BandwidthEstimator.forBluetooth()
+        }
+
+        val host: IRPCHost = when (mode) {
+            Settings.HostMode.WiFi -> WiFiHost(this, bandwidth)
+            Settings.HostMode.Bluetooth -> BluetoothHost(this, bandwidth)
+        }
+
+        var connected = false
+        var ready = false // hello exchange is done (or peer does not support sessions)
+        var device = ""
+
+        override fun onWaiting() = this@SessionHost.onWaiting()
+        override fun onConnectionStarted(device: String) = onLinkStarted(device)
+        override fun onDataReceived(data: RPCMessage) = onLinkData(data)
+        override fun onConnectionLost(error: String?) = onLinkLost(error)
+        override fun onReconnecting(delay: Long) {
+            // hosts do not reconnect
+        }
+
+        override fun onShutdown() = listener.onShutdown()
+
+        override fun toString(): String = mode.name
+    }
+
+    private val mLink = Link(mode)
+
+    private var mSession: Session? = null
+    private var mResumable = false // peer supports sessions
+    private var mConnected = false // listener was told we are connected
+
+    private val mHandshakeTimeout = Runnable { onHandshakeTimeout() }
+
+    // while Glass display is off there is no rush to trim its resend buffer
+    var deferAcks = false
+        @Synchronized
+        set(value) {
+            field = value
+            if (!value && mResumable && mLink.ready) mSession?.let { mLink.host.send(it.ack()) }
+        }
+
+    private val mResumeTimeout = Runnable {
+        synchronized(this) {
+            log.i(TAG, "Session was not resumed in time")
+            endSession(null)
+        }
+    }
+
+    override fun start(context: Context) {
+        mLink.host.start(context)
+    }
+
+    override fun stop() {
+        mLink.host.stop()
+        mMainHandler.removeCallbacksAndMessages(null)
+    }
+
+    // what the link can carry
+    val mediaQuality: MediaQuality
+        get() = mLink.bandwidth.quality
+
+    @Synchronized
+    override fun send(message: RPCMessage) {
+        val session = mSession
+        if (null == session || !mConnected) {
+            log.e(TAG, "Not connected")
+            return
+        }
+        session.add(message)
+        // without the link message stays in the session until peer reconnects
+        if (mLink.ready) mLink.host.send(message)
+    }
+
+    private fun onWaiting() {
+        synchronized(this) {
+            if (mConnected || mLink.connected) return
+        }
+        listener.onWaiting()
+    }
+
+    @Synchronized
+    private fun onLinkStarted(device: String) {
+        val link = mLink
+        log.i(TAG, "$link connected to $device")
+        link.connected = true
+        link.ready = false
+        link.device = device
+        link.bandwidth.enabled = false // until we know the client echoes probes
+        if (null == mSession) mSession = Session(null)
+        // client talks first, wait for its hello
+        mMainHandler.postDelayed(mHandshakeTimeout, HANDSHAKE_TIMEOUT)
+    }
+
+    private fun onLinkData(data: RPCMessage) {
+        val received = System.currentTimeMillis()
+        val link = mLink
+        synchronized(this) {
+            val session = mSession ?: return
+            if (Session.isControl(data)) {
+                when (val payload = data.payload) {
+                    is SessionHello -> onHello(payload)
+                    is SessionAck -> session.acknowledge(payload.received)
+                    is ClockProbe -> {
+                        // Glass measures clock offset against our wall clock, see ClockSync
+                        payload.hostReceived = received
+                        payload.hostSent = System.currentTimeMillis()
+                        link.host.send(RPCMessage(SessionAPI.ID, payload))
+                    }
+                }
+                return
+            }
+            if (session.onReceived() && mResumable && !deferAcks) link.host.send(session.ack())
+        }
+        listener.onDataReceived(data)
+    }
+
+    @Synchronized
+    private fun onHello(hello: SessionHello) {
+        val link = mLink
+        mMainHandler.removeCallbacks(mHandshakeTimeout)
+        var session = mSession!!
+        if (null != session.id && session.id != hello.sessionId) {
+            // glass has restarted, old session can not be resumed
+            log.i(TAG, "New session ${hello.sessionId} replaces ${session.id}")
+            endSession(null)
+            session = Session(null)
+            mSession = session
+        }
+        session.setId(hello.sessionId)
+        mResumable = true
+        if (!hello.reply) link.host.send(session.hello(true))
+        link.ready = true
+        link.bandwidth.enabled = true
+        mMainHandler.removeCallbacks(mResumeTimeout)
+        // peer told us what it has, resend is the only replay of what was sent while it was away
+        session.pendingFrom(hello.received).forEach { link.host.send(it) }
+        log.i(TAG, "Session ${hello.sessionId} is active on $link")
+        onSessionReady(link)
+    }
+
+    @Synchronized
+    private fun onHandshakeTimeout() {
+        val link = mLink
+        if (!link.connected || link.ready) return
+        log.i(TAG, "$link peer does not support sessions")
+        link.ready = true
+        onSessionReady(link)
+    }
+
+    private fun onSessionReady(link: Link) {
+        if (mConnected) return
+        mConnected = true
+        listener.onConnectionStarted(link.device)
+    }
+
+    @Synchronized
+    private fun onLinkLost(error: String?) {
+        val link = mLink
+        if (!link.connected) return // some hosts report it more than once
+        log.i(TAG, "$link disconnected${error?.let { ": $it" } ?: ""}")
+        link.connected = false
+        link.ready = false
+        link.bandwidth.enabled = false
+        mMainHandler.removeCallbacks(mHandshakeTimeout)
+        if (null == mSession) return
+        if (mResumable) mMainHandler.postDelayed(mResumeTimeout, RESUME_TIMEOUT)
+        else endSession(error)
+    }
+
+    private fun endSession(error: String?) {
+        mSession = null
+        mResumable = false
+        if (!mConnected) return
+        mConnected = false
+        listener.onConnectionLost(error)
+    }
+
+    companion object {
+        private const val TAG = "SessionHost"
+        private const val RESUME_TIMEOUT = 30 * 1000L
+
+        // client that does not send its hello in time is an older one without session support
+        private const val HANDSHAKE_TIMEOUT = 2000L
+    }
+}
@@ -6,6 +6,7 @@ import androidx.core.content.edit
 import androidx.lifecycle.DefaultLifecycleObserver
 import androidx.lifecycle.Lifecycle
 import androidx.lifecycle.LifecycleOwner
+import com.damn.anotherglass.extensions.notifications.NotificationThrottle
 
 class Settings(context: Context) {
 
@@ -53,6 +54,11 @@ class Settings(context: Context) {
         get() = preferences.getBoolean(MUSIC_EXTENSION_ENABLED, false)
         set(enabled) = preferences.edit { putBoolean(MUSIC_EXTENSION_ENABLED, enabled) }
 
+    // ms between updates of the same notification on Glass, 0 to forward every change
+    var notificationThrottleWindow: Long
+        get() = preferences.getLong(NOTIFICATION_THROTTLE_WINDOW, NotificationThrottle.DEFAULT_WINDOW)
+        set(window) = preferences.edit { putLong(NOTIFICATION_THROTTLE_WINDOW, window) }
+
     var hostMode: HostMode
         get() = preferences.getString(HOST_MODE, HostMode.WiFi.value)?.let { mode ->
             HostMode.entries.firstOrNull { mode == it.value }
@@ -65,5 +71,6 @@ class Settings(context: Context) {
         const val NOTIFICATIONS_ENABLED = "notifications_enabled"
         const val MUSIC_EXTENSION_ENABLED = "music_extension_enabled"
         const val HOST_MODE = "host_mode"
+        const val NOTIFICATION_THROTTLE_WINDOW = "notification_throttle_window"
     }
 }
@@ -4,12 +4,19 @@ import android.content.Context
 import com.applicaster.xray.core.Logger
 import com.damn.anotherglass.logging.ALog
 import com.damn.anotherglass.shared.Constants
+import com.damn.anotherglass.shared.device.DeviceAPI
+import com.damn.anotherglass.shared.gps.GPSServiceAPI
+import com.damn.anotherglass.shared.music.MusicAPI
+import com.damn.anotherglass.shared.notifications.NotificationsAPI
 import com.damn.anotherglass.shared.rpc.IRPCHost
 import com.damn.anotherglass.shared.rpc.RPCHandler
 import com.damn.anotherglass.shared.rpc.RPCMessage
 import com.damn.anotherglass.shared.rpc.RPCMessageListener
 import com.damn.anotherglass.shared.rpc.SerializerProvider
+import com.damn.anotherglass.shared.session.BandwidthProbe
+import com.damn.anotherglass.shared.session.SessionAPI
 import com.damn.anotherglass.shared.utility.Closeables
+import com.damn.anotherglass.shared.utility.CountingOutputStream
 import com.damn.anotherglass.shared.utility.Sleep
 import java.net.ServerSocket
 import java.net.Socket
@@ -18,12 +25,20 @@ import java.util.concurrent.BlockingQueue
 import java.util.concurrent.LinkedBlockingDeque
 import kotlin.concurrent.Volatile
 
-class WiFiHost(listener: RPCMessageListener) : IRPCHost {
+class WiFiHost(
+    listener: RPCMessageListener,
+    private val estimator: BandwidthEstimator? = null
+) : IRPCHost {
 
     private val logger = ALog(Logger.get(TAG))
 
     private val mHandler: RPCHandler = RPCHandler(listener)
 
+    private val mDiscovery = DiscoveryBroadcaster(
+        Constants.defaultPort,
+        listOf(GPSServiceAPI.ID, NotificationsAPI.ID, MusicAPI.ID, DeviceAPI.SERVICE_NAME)
+    )
+
     @Volatile
     private var mWorkerThread: WorkerThread? = null
 
@@ -73,11 +88,16 @@ class WiFiHost(listener: RPCMessageListener) : IRPCHost {
                     mHandler.onWaiting()
                     ServerSocket(Constants.defaultPort).use { serverSocket ->
                         mServerSocket = serverSocket
+                        // let clients know where we are while we wait
+                        mDiscovery.start()
                         // do not accept more than one connection
                         serverSocket.accept().use { socket ->
+                            mDiscovery.stop()
                             mServerSocket = null
                             Closeables.close(serverSocket)
                             mSocket = socket
+                            // new client gets the session hello reply and resend first, nothing left from the previous one
+                            mQueue.clear()
                             mHandler.onConnectionStarted(socket.inetAddress.toString())
                             runLoop(socket)
                         }
@@ -90,8 +110,11 @@ class WiFiHost(listener: RPCMessageListener) : IRPCHost {
                 } catch (e: Exception) {
                     mHandler.onConnectionLost(e.message)
                 } finally {
+                    mDiscovery.stop()
                     mSocket = null
                     mServerSocket = null
+                    // whatever did not go out is resent by the session once the client is back
+                    mQueue.clear()
                 }
             }
             mWorkerThread = null
@@ -101,20 +124,31 @@ class WiFiHost(listener: RPCMessageListener) : IRPCHost {
         private fun runLoop(socket: Socket) {
             socket.getInputStream().use { inputStream ->
                 socket.getOutputStream().use { outputStream ->
-                    val serializer = SerializerProvider.getSerializer(inputStream, outputStream)
+                    val counter = CountingOutputStream(outputStream)
+                    val serializer = SerializerProvider.getSerializer(inputStream, counter)
                     while (mActive) {
                         while (mQueue.peek() != null) {
                             val message = mQueue.take()
+                            val bytes = counter.count
+                            val start = System.nanoTime()
                             serializer.writeMessage(message)
                             if (message.service == null) {
                                 return // disconnect requested
                             }
+                            val probe = estimator?.onWrite(counter.count - bytes, start, System.nanoTime()) ?: 0L
+                            if (0L != probe) serializer.writeMessage(RPCMessage(SessionAPI.ID, BandwidthProbe(probe)))
                         }
                         while (mActive && inputStream.available() > 0) {
                             val message = serializer.readMessage()
                             if (message.service == null) {
                                 return // client disconnected
                             }
+                            val payload = message.payload
+                            if (payload is BandwidthProbe) {
+                                // timed here, main thread would add its own delay
+                                estimator?.onEcho(payload.id, System.nanoTime())
+                                continue
+                            }
                             mHandler.onDataReceived(message)
                         }
                         Sleep.sleep(100)
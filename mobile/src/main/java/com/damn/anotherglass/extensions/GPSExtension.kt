@@ -25,6 +25,8 @@ class GPSExtension(private val service: GlassService) : LocationListener {
 
     private val log = ALog(Logger.get(TAG))
 
+    private val rate = GPSRateController()
+
     fun start() {
         if(!hasGeoPermission(service)) {
             log.w(TAG, "Permission not granted, cannot start GPS")
@@ -32,12 +34,8 @@ class GPSExtension(private val service: GlassService) : LocationListener {
             Toast.makeText(service, R.string.msg_no_gps_permission, Toast.LENGTH_LONG).show()
             return
         }
-        locationManager.requestLocationUpdates(
-            LocationManager.GPS_PROVIDER,
-            MIN_TIME_BW_UPDATES,
-            0f,
-            this
-        )
+        rate.reset()
+        requestUpdates()
         log.i(TAG, "GPS extension started")
     }
 
@@ -46,6 +44,16 @@ class GPSExtension(private val service: GlassService) : LocationListener {
         log.i(TAG, "GPS extension stopped")
     }
 
+    private fun requestUpdates() {
+        val mode = rate.mode
+        locationManager.requestLocationUpdates(
+            LocationManager.GPS_PROVIDER,
+            mode.interval,
+            mode.minDistance,
+            this
+        )
+    }
+
     override fun onLocationChanged(location: Location) {
         log.d(TAG, "GPS extension received location update")
         val loc = com.damn.anotherglass.shared.gps.Location().apply {
@@ -55,9 +63,19 @@ class GPSExtension(private val service: GlassService) : LocationListener {
             altitude = location.altitude
             bearing = location.bearing
             speed = location.speed
+            time = location.time
+        }
+        if (rate.onFix(loc)) {
+            log.d(TAG, "Switching GPS updates to ${rate.mode}")
+            // replaces the previous request for this listener
+            requestUpdates()
         }
+        // Glass extrapolates from the last fix it has got, skip ones it can predict
+        if (!rate.shouldSend(loc)) return
+        rate.onSent(loc)
         val rpcMessage = RPCMessage(GPSServiceAPI.ID, loc)
-        service.send(rpcMessage)
+        // only the latest fix matters if nobody is looking
+        service.sendDeferrable(rpcMessage, GPSServiceAPI.ID)
     }
 
     override fun onStatusChanged(s: String, i: Int, bundle: Bundle) {}
@@ -66,7 +84,6 @@ class GPSExtension(private val service: GlassService) : LocationListener {
 
     companion object {
         private const val TAG = "GPSExtension"
-        private const val MIN_TIME_BW_UPDATES = 30 * 1000L // 30 seconds
 
         @JvmStatic
         fun hasGeoPermission(context: Context): Boolean =
@@ -0,0 +1,87 @@
+package com.damn.anotherglass.extensions
+
+import com.damn.anotherglass.shared.gps.DeadReckoning
+import com.damn.anotherglass.shared.gps.Location
+
+/**
+ * Decides how often GPS is asked for fixes and which fixes are worth sending to Glass:
+ *  - update interval follows speed, standing still needs a fix per half a minute, driving one per couple of seconds;
+ *  - Glass extrapolates the last fix along its speed and bearing, so a fix is only sent when that
+ *    prediction has drifted off, the course has changed, or nothing was sent for [MAX_SILENCE].
+ */
+class GPSRateController {
+
+    enum class Mode(val interval: Long, val minDistance: Float) {
+        Stationary(30 * 1000L, 10f),
+        Walking(5 * 1000L, 0f),
+        Moving(2 * 1000L, 0f)
+    }
+
+    var mode = Mode.Stationary
+        private set
+
+    private var mLastSent: Location? = null
+
+    /**
+     * @return true if GPS updates have to be requested again with the new [mode]
+     */
+    fun onFix(location: Location): Boolean {
+        val next = modeFor(location.speed)
+        if (next == mode) return false
+        mode = next
+        return true
+    }
+
+    fun shouldSend(location: Location): Boolean {
+        val last = mLastSent ?: return true
+        val elapsed = location.time - last.time
+        if (elapsed >= MAX_SILENCE || elapsed < 0) return true
+        val predicted = DeadReckoning.predict(last, elapsed)
+        if (DeadReckoning.distance(predicted, location) > maxOf(MAX_POSITION_ERROR, location.accuracy.toDouble()))
+            return true
+        if (Math.abs(location.speed - last.speed) > MAX_SPEED_CHANGE) return true
+        // bearing of a slow fix is mostly noise
+        return location.speed > MIN_BEARING_SPEED &&
+                DeadReckoning.bearingDifference(location.bearing, last.bearing) > MAX_BEARING_CHANGE
+    }
+
+    fun onSent(location: Location) {
+        mLastSent = location
+    }
+
+    // with a bit of hysteresis, so speed noise around a threshold does not re-request updates every fix
+    private fun modeFor(speed: Float): Mode = when (mode) {
+        Mode.Stationary -> when {
+            speed > MOVING_SPEED + HYSTERESIS -> Mode.Moving
+            speed > WALKING_SPEED + HYSTERESIS -> Mode.Walking
+            else -> Mode.Stationary
+        }
+        Mode.Walking -> when {
+            speed > MOVING_SPEED + HYSTERESIS -> Mode.Moving
+            speed < WALKING_SPEED - HYSTERESIS -> Mode.Stationary
+            else -> Mode.Walking
+        }
+        Mode.Moving -> when {
+            speed < WALKING_SPEED - HYSTERESIS -> Mode.Stationary
+            speed < MOVING_SPEED - HYSTERESIS -> Mode.Walking
+            else -> Mode.Moving
+        }
+    }
+
+    fun reset() {
+        mode = Mode.Stationary
+        mLastSent = null
+    }
+
+    companion object {
+        private const val MAX_SILENCE = 30 * 1000L
+        private const val MAX_POSITION_ERROR = 10.0 // meters
+        private const val MAX_SPEED_CHANGE = 1.5f // m/s
+        private const val MIN_BEARING_SPEED = 1f // m/s
+        private const val MAX_BEARING_CHANGE = 25f // degrees
+
+        private const val WALKING_SPEED = 0.7f
+        private const val MOVING_SPEED = 3f
+        private const val HYSTERESIS = 0.3f
+    }
+}
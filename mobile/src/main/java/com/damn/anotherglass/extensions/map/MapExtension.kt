@@ -0,0 +1,168 @@
+package com.damn.anotherglass.extensions.map
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.os.Build
+import com.applicaster.xray.core.Logger
+import com.damn.anotherglass.core.GlassService
+import com.damn.anotherglass.logging.ALog
+import com.damn.anotherglass.shared.map.MapAPI
+import com.damn.anotherglass.shared.map.MapTile
+import com.damn.anotherglass.shared.map.MapTileRequest
+import com.damn.anotherglass.shared.rpc.RPCMessage
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URL
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+
+/**
+ * Map tiles for Glass, which may have no internet of its own: tiles are downloaded from OSM and kept
+ * in a disk LRU cache here, so Glass refetching an area after its own cache has evicted it costs nothing.
+ * Before sending tiles are re-encoded to lossy WebP with [com.damn.anotherglass.core.MediaQuality.mapTileQuality],
+ * PNG tiles are mostly flat colors and get several times smaller.
+ */
+class MapExtension(private val service: GlassService) {
+
+    private val log = ALog(Logger.get(TAG))
+
+    // Glass asks for a handful of tiles at once, no need to download them one by one
+    private val executor = Executors.newFixedThreadPool(WORKERS)
+
+    private val directory = File(service.cacheDir, DIRECTORY)
+
+    private var cacheBytes = -1L // unknown until the first trim
+
+    fun onRequest(request: MapTileRequest) {
+        try {
+            executor.execute { answer(request) }
+        } catch (e: RejectedExecutionException) {
+            // closed already
+        }
+    }
+
+    fun close() {
+        executor.shutdownNow()
+    }
+
+    private fun answer(request: MapTileRequest) {
+        val original = cached(request) ?: download(request)?.also { store(request, it) }
+        // Glass is waiting on it, never defer, null lets it retry later
+        service.send(
+            RPCMessage(
+                MapAPI.ID,
+                MapTile(request.zoom, request.x, request.y, original?.let { encode(it) })
+            )
+        )
+    }
+
+    private fun encode(original: ByteArray): ByteArray {
+        val quality = service.mediaQuality.mapTileQuality
+        if (quality >= 100) return original
+        val bitmap = BitmapFactory.decodeByteArray(original, 0, original.size) ?: return original
+        return try {
+            ByteArrayOutputStream().use { stream ->
+                bitmap.compress(format(), quality, stream)
+                // already compact tile can get larger, send whichever is smaller
+                stream.toByteArray().takeIf { it.size < original.size } ?: original
+            }
+        } catch (e: IOException) {
+            log.e(TAG, "Failed to compress map tile: ${e.message}", e)
+            original
+        } finally {
+            bitmap.recycle()
+        }
+    }
+
+    private fun download(request: MapTileRequest): ByteArray? {
+        if (request.zoom !in 0..MAX_ZOOM) return null
+        val url = URL_TEMPLATE
+            .replace("{z}", request.zoom.toString())
+            .replace("{x}", request.x.toString())
+            .replace("{y}", request.y.toString())
+        var connection: HttpURLConnection? = null
+        return try {
+            connection = URL(url).openConnection() as HttpURLConnection
+            connection.connectTimeout = TIMEOUT
+            connection.readTimeout = TIMEOUT
+            // required by OSM tile usage policy
+            connection.setRequestProperty("User-Agent", USER_AGENT)
+            if (HttpURLConnection.HTTP_OK != connection.responseCode) {
+                log.w(TAG, "Tile $url: HTTP ${connection.responseCode}")
+                null
+            } else connection.inputStream.use { it.readBytes() }
+        } catch (e: IOException) {
+            log.w(TAG, "Failed to download tile $url: ${e.message}")
+            null
+        } finally {
+            connection?.disconnect()
+        }
+    }
+
+    private fun cached(request: MapTileRequest): ByteArray? {
+        val file = file(request)
+        if (!file.exists()) return null
+        return try {
+            val data = file.readBytes()
+            // last modified doubles as last access for the LRU
+            file.setLastModified(System.currentTimeMillis())
+            data
+        } catch (e: IOException) {
+            log.w(TAG, "Failed to read cached tile ${file.name}: ${e.message}")
+            null
+        }
+    }
+
+    @Synchronized
+    private fun store(request: MapTileRequest, data: ByteArray) {
+        try {
+            directory.mkdirs()
+            val file = file(request)
+            val temp = File(directory, file.name + ".tmp")
+            temp.writeBytes(data)
+            if (!temp.renameTo(file)) {
+                temp.delete()
+                return
+            }
+            if (cacheBytes < 0 || cacheBytes + data.size > MAX_CACHE_BYTES) trim()
+            else cacheBytes += data.size
+        } catch (e: IOException) {
+            log.w(TAG, "Failed to cache tile: ${e.message}")
+        }
+    }
+
+    // drops least recently used tiles down to 3/4 of the limit, so it does not run on every store
+    private fun trim() {
+        val files = directory.listFiles() ?: return
+        var total = files.sumOf { it.length() }
+        if (total > MAX_CACHE_BYTES) {
+            for (file in files.sortedBy { it.lastModified() }) {
+                if (total <= MAX_CACHE_BYTES * 3 / 4) break
+                val length = file.length()
+                if (file.delete()) total -= length
+            }
+        }
+        cacheBytes = total
+    }
+
+    private fun file(request: MapTileRequest) = File(directory, "${request.zoom}_${request.x}_${request.y}")
+
+    private fun format(): Bitmap.CompressFormat =
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) Bitmap.CompressFormat.WEBP_LOSSY
+        else @Suppress("DEPRECATION") Bitmap.CompressFormat.WEBP
+
+    companion object {
+        private const val TAG = "MapExtension"
+
+        private const val URL_TEMPLATE = "https://tile.openstreetmap.org/{z}/{x}/{y}.png"
+        private const val USER_AGENT = "AnotherGlass"
+        private const val MAX_ZOOM = 19
+        private const val TIMEOUT = 10 * 1000
+        private const val WORKERS = 2
+
+        private const val DIRECTORY = "map_tiles"
+        private const val MAX_CACHE_BYTES = 64L * 1024 * 1024
+    }
+}
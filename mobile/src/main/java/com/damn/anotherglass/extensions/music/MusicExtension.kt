@@ -167,7 +167,7 @@ class MusicExtension(private val service: GlassService) {
 
         // Send track info immediately (no art)
         val data = MusicData(artist, track, null, playing, position, duration)
-        service.send(RPCMessage(MusicAPI.ID, data))
+        service.sendDeferrable(RPCMessage(MusicAPI.ID, data), KEY_TRACK)
 
         // Send album art async only when track changes or art wasn't sent yet
         val artistOrEmpty = artist ?: ""
@@ -203,29 +203,18 @@ class MusicExtension(private val service: GlassService) {
                             var smallScaled: Bitmap? = null
                             var scaled: Bitmap? = null
                             try {
-                                // Send small 32x32 thumbnail first for instant feedback
-                                smallScaled = albumArtBitmap.scale(32, 32, true)
-                                ByteArrayOutputStream().use { smallStream ->
-                                    smallScaled.compress(Bitmap.CompressFormat.JPEG, 80, smallStream)
-                                    val smallArtBytes = smallStream.toByteArray()
-                                    val artData = MusicData()
-                                    artData.albumArt = smallArtBytes
-                                    artData.isPlaying = currentPlaying
-                                    artData.timestamp = System.currentTimeMillis()
-                                    service.send(RPCMessage(MusicAPI.ID, artData))
+                                // ask just before encoding, link could have changed since the track started
+                                val quality = service.mediaQuality
+                                if (quality.albumArtPreview) {
+                                    // Send small thumbnail first for instant feedback
+                                    smallScaled = albumArtBitmap.scale(PREVIEW_SIZE, PREVIEW_SIZE, true)
+                                    sendAlbumArt(smallScaled, quality.albumArtQuality, currentPlaying)
                                 }
-                                
-                                // Then send full 128x128 image
-                                scaled = albumArtBitmap.scale(128, 128, true)
-                                ByteArrayOutputStream().use { stream ->
-                                    scaled.compress(Bitmap.CompressFormat.JPEG, 80, stream)
-                                    val artBytes = stream.toByteArray()
-                                    val artData = MusicData()
-                                    artData.albumArt = artBytes
-                                    artData.isPlaying = currentPlaying
-                                    artData.timestamp = System.currentTimeMillis()
-                                    service.send(RPCMessage(MusicAPI.ID, artData))
-                                    log.d(TAG).message("Sent album art: ${artBytes.size} bytes")
+                                // Then send full image, unless link is too slow for it
+                                if (quality.albumArtSize > 0) {
+                                    scaled = albumArtBitmap.scale(quality.albumArtSize, quality.albumArtSize, true)
+                                    val size = sendAlbumArt(scaled, quality.albumArtQuality, currentPlaying)
+                                    log.d(TAG).message("Sent album art: $size bytes ($quality)")
                                 }
                             } catch (e: Exception) {
                                 log.e(TAG).exception(e).message("Failed to send album art")
@@ -241,8 +230,27 @@ class MusicExtension(private val service: GlassService) {
         }
     }
 
+    // returns size of the image, Glass only downloads it if not cached
+    private fun sendAlbumArt(bitmap: Bitmap, quality: Int, playing: Boolean): Int =
+        ByteArrayOutputStream().use { stream ->
+            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, stream)
+            val artData = MusicData()
+            val bytes = stream.toByteArray()
+            artData.albumArtHash = service.blobs.put(bytes)
+            artData.isPlaying = playing
+            artData.timestamp = System.currentTimeMillis()
+            service.sendDeferrable(RPCMessage(MusicAPI.ID, artData), KEY_ALBUM_ART)
+            bytes.size
+        }
+
     companion object {
         private const val TAG = "MusicExtension"
-        private const val SYNC_INTERVAL = 5000L // 5 seconds
+        private const val PREVIEW_SIZE = 32
+
+        // deferred updates replace each other, see GlassService.sendDeferrable
+        private const val KEY_TRACK = "music_track"
+        private const val KEY_ALBUM_ART = "music_album_art"
+        // Glass extrapolates position on a synced clock, this only corrects for playback speed hiccups
+        private const val SYNC_INTERVAL = 30000L // 30 seconds
     }
 }
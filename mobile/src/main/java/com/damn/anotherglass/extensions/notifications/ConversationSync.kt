@@ -0,0 +1,61 @@
+package com.damn.anotherglass.extensions.notifications
+
+import com.damn.anotherglass.shared.notifications.NotificationData
+import com.damn.anotherglass.shared.notifications.NotificationMessage
+
+/**
+ * Chat apps repost the whole conversation with every new message. For each notification (package, id)
+ * this remembers the last message Glass has got, and cuts what is sent down to messages after it.
+ * If that message is not in the new list (thread was cut or replaced) Glass gets the last [maxMessages]
+ * and starts over. Oldest conversations are forgotten above [maxConversations], that only costs a full resend.
+ */
+class ConversationSync(
+    private val maxMessages: Int = DEFAULT_MAX_MESSAGES,
+    private val maxConversations: Int = DEFAULT_MAX_CONVERSATIONS
+) {
+
+    // key -> last message sent to Glass
+    private val mSynced = object : LinkedHashMap<String, Long>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Long>?) = size > maxConversations
+    }
+
+    /**
+     * Leaves only messages Glass does not have yet in [data], to be called right before it is sent.
+     */
+    @Synchronized
+    fun prepare(data: NotificationData) {
+        val messages = data.messages ?: return
+        val key = keyOf(data.packageName, data.id)
+        val last = mSynced[key]
+        val index = if (null == last) -1 else messages.indexOfLast { messageKey(it) == last }
+        if (index >= 0) {
+            data.messages = ArrayList(messages.subList(index + 1, messages.size))
+            data.messagesAppended = true
+        } else {
+            data.messages = ArrayList(messages.takeLast(maxMessages))
+            data.messagesAppended = false
+        }
+        if (messages.isNotEmpty()) mSynced[key] = messageKey(messages.last())
+    }
+
+    @Synchronized
+    fun onRemoved(packageName: String, id: Int) {
+        mSynced.remove(keyOf(packageName, id))
+    }
+
+    @Synchronized
+    fun clear() {
+        mSynced.clear()
+    }
+
+    companion object {
+        const val DEFAULT_MAX_MESSAGES = 50
+        private const val DEFAULT_MAX_CONVERSATIONS = 64
+
+        private fun keyOf(packageName: String?, id: Int) = "$packageName:$id"
+
+        // messages have no ids, time and content are unique enough within one conversation
+        private fun messageKey(message: NotificationMessage): Long =
+            (message.timestamp * 31 + (message.sender?.hashCode() ?: 0)) * 1_000_003L + (message.text?.hashCode() ?: 0)
+    }
+}
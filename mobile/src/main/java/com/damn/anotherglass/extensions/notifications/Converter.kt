@@ -9,10 +9,11 @@ import android.graphics.drawable.Drawable
 import android.os.Build
 import android.service.notification.StatusBarNotification
 import com.applicaster.xray.core.Logger
+import com.damn.anotherglass.core.MediaQuality
 import com.damn.anotherglass.logging.ALog
 import com.damn.anotherglass.shared.notifications.NotificationData
-import java.io.ByteArrayOutputStream
-import java.io.IOException
+import com.damn.anotherglass.shared.notifications.NotificationMessage
+import androidx.core.app.NotificationCompat
 import androidx.core.graphics.createBitmap
 
 object Converter {
@@ -21,7 +22,9 @@ object Converter {
     fun convert(
         context: Context,
         acton: NotificationData.Action,
-        sbn: StatusBarNotification
+        sbn: StatusBarNotification,
+        maxIconSize: Int = MediaQuality.High.iconSize,
+        iconQuality: Int = MediaQuality.High.iconQuality
     ): NotificationData {
         val data = NotificationData()
         data.action = acton
@@ -32,8 +35,6 @@ object Converter {
         data.postedTime = sbn.postTime
         data.isOngoing = sbn.isOngoing
 
-        // todo: code below this point is not really needed for NotificationData.Action.Removed
-
         // todo: extract app name
 
         // parse Notification data
@@ -46,7 +47,12 @@ object Converter {
             data.tickerText = notification.tickerText.toString()
         }
         try {
-            extractIcon(context, data, notification)
+            data.messages = extractMessages(notification)
+        } catch (e: Exception) {
+            log.e(TAG, "Failed to extract messages from notification: " + e.message, e)
+        }
+        try {
+            extractIcon(context, data, notification, maxIconSize, iconQuality)
         } catch (e: Exception) {
             // todo: new Android version do not allow that, add required permission
             log.e(TAG, "Failed to extract icon from notification: " + e.message, e)
@@ -54,51 +60,71 @@ object Converter {
         return data
     }
 
+    // Glass finds removed notification by its key, nothing else is needed
+    fun removal(sbn: StatusBarNotification): NotificationData {
+        val data = NotificationData()
+        data.action = NotificationData.Action.Removed
+        data.id = sbn.id
+        data.packageName = sbn.packageName
+        return data
+    }
+
+    // whole conversation as the app has it, ConversationSync decides what Glass actually needs
+    private fun extractMessages(notification: Notification): List<NotificationMessage>? {
+        val style = NotificationCompat.MessagingStyle.extractMessagingStyleFromNotification(notification)
+            ?: return null
+        return style.messages
+            .mapNotNull { message ->
+                message.text?.let { NotificationMessage(message.person?.name?.toString(), it.toString(), message.timestamp) }
+            }
+            .ifEmpty { null }
+    }
+
     private fun extractIcon(
         context: Context,
         data: NotificationData,
-        notification: Notification
+        notification: Notification,
+        maxIconSize: Int,
+        iconQuality: Int
     ) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             var icon = notification.getLargeIcon()
             if (null == icon) icon = notification.smallIcon
             if (null != icon) {
+                // app resource icons are the same for every post, do not rasterize them again
+                val source = IconProcessor.resourceKey(icon)
+                data.icon = source?.let { IconProcessor.cached(data.packageName, it, maxIconSize, iconQuality) }
+                if (null != data.icon) return
                 val drawable = icon.loadDrawable(context)
                 if (null != drawable) {
-                    val bitmap = drawableToBitmap(drawable)
-                    setIconData(data, bitmap)
+                    val bitmap = drawableToBitmap(drawable, maxIconSize)
+                    data.icon = IconProcessor.process(data.packageName, source, bitmap, maxIconSize, iconQuality)
                 }
             }
         }
         if (null != data.icon) return
-        if (null != notification.largeIcon) setIconData(data, notification.largeIcon)
+        if (null != notification.largeIcon)
+            data.icon = IconProcessor.process(data.packageName, null, notification.largeIcon, maxIconSize, iconQuality)
         if (null != data.icon) return
 
         // todo: retrieve default icon from the package
     }
 
-    private fun setIconData(data: NotificationData, bitmap: Bitmap) {
-        try {
-            ByteArrayOutputStream().use { memoryStream ->
-                bitmap.compress(Bitmap.CompressFormat.PNG, 0, memoryStream)
-                data.icon = memoryStream.toByteArray()
-            }
-        } catch (e: IOException) {
-            log.e(TAG, "Failed to compress icon bitmap: " + e.message, e)
-        }
-    }
-
-    fun drawableToBitmap(drawable: Drawable): Bitmap {
+    // vector drawables are rasterized no larger than maxSize, there is no point in drawing more pixels
+    fun drawableToBitmap(drawable: Drawable, maxSize: Int = Int.MAX_VALUE): Bitmap {
         if (drawable is BitmapDrawable) {
             if (null != drawable.bitmap) {
                 return drawable.bitmap
             }
         }
-        val bitmap: Bitmap = if (drawable.intrinsicWidth <= 0 || drawable.intrinsicHeight <= 0) {
+        val width = drawable.intrinsicWidth
+        val height = drawable.intrinsicHeight
+        val bitmap: Bitmap = if (width <= 0 || height <= 0) {
             // Single color bitmap will be created of 1x1 pixel
             createBitmap(1, 1)
         } else {
-            createBitmap(drawable.intrinsicWidth, drawable.intrinsicHeight)
+            val ratio = minOf(1f, maxSize.toFloat() / maxOf(width, height))
+            createBitmap(maxOf(1, (width * ratio).toInt()), maxOf(1, (height * ratio).toInt()))
         }
         val canvas = Canvas(bitmap)
         drawable.setBounds(0, 0, canvas.width, canvas.height)
@@ -0,0 +1,149 @@
+package com.damn.anotherglass.extensions.notifications
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.drawable.BitmapDrawable
+import android.graphics.drawable.Icon
+import android.os.Build
+import android.util.LruCache
+import androidx.core.graphics.scale
+import com.applicaster.xray.core.Logger
+import com.damn.anotherglass.logging.ALog
+import com.damn.anotherglass.shared.blob.Blobs
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+
+/**
+ * Turns notification icons into what Glass actually shows: downscaled to [maxSize] and encoded.
+ * Results are memoized, so reposts of the same notification (or other notifications of the same app)
+ * reuse encoded bytes:
+ *  - resource icons are keyed by (package, resource id) and are not even rasterized on a hit;
+ *  - bitmap icons are parcelled anew with every post, so they are keyed by SHA-1 of the downscaled pixels,
+ *    which is cheap to compute compared to encoding, and a collision can't show another app's icon.
+ * Quality 100 means lossless: WebP lossless on API 30+, PNG below (old WebP encoder is lossy at any quality).
+ * Lower qualities are lossy WebP.
+ */
+object IconProcessor {
+
+    private const val TAG = "IconProcessor"
+    private const val CACHE_BYTES = 1024 * 1024
+    private const val SAMPLE_GRID = 8
+
+    private val log = ALog(Logger.get(TAG))
+
+    private data class Key(
+        val packageName: String,
+        val source: Any, // resource id or content digest
+        val maxSize: Int,
+        val quality: Int
+    )
+
+    private val mCache = object : LruCache<Key, ByteArray>(CACHE_BYTES) {
+        override fun sizeOf(key: Key, value: ByteArray): Int = value.size
+    }
+
+    // key for icons that can be looked up without loading them, null otherwise
+    fun resourceKey(icon: Icon): Any? {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) return null
+        if (Icon.TYPE_RESOURCE != icon.type) return null
+        return "${icon.resPackage}:${icon.resId}"
+    }
+
+    /**
+     * Cheap fingerprint of what the icon would look like, without encoding it:
+     * resource key for resource icons, a sparse sample of pixels for bitmap ones.
+     */
+    fun fingerprint(context: Context, icon: Icon?, legacy: Bitmap?): Int {
+        if (null != icon && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            resourceKey(icon)?.let { return it.hashCode() }
+            val drawable = when (icon.type) {
+                // wraps the parcelled bitmap, nothing is decoded
+                Icon.TYPE_BITMAP, Icon.TYPE_ADAPTIVE_BITMAP -> icon.loadDrawable(context)
+                else -> null
+            } ?: return icon.type
+            // adaptive ones come as AdaptiveIconDrawable, draw them as small as the sample grid
+            val bitmap = (drawable as? BitmapDrawable)?.bitmap
+                ?: Converter.drawableToBitmap(drawable, SAMPLE_GRID)
+            return sample(bitmap)
+        }
+        return legacy?.let { sample(it) } ?: 0
+    }
+
+    fun cached(packageName: String, source: Any, maxSize: Int, quality: Int): ByteArray? =
+        mCache.get(Key(packageName, source, maxSize, quality))
+
+    /**
+     * @param source result of [resourceKey], or null to key by bitmap content
+     */
+    fun process(
+        packageName: String,
+        source: Any?,
+        bitmap: Bitmap,
+        maxSize: Int,
+        quality: Int
+    ): ByteArray? {
+        val scaled = downscale(bitmap, maxSize)
+        try {
+            val key = Key(packageName, source ?: contentHash(scaled), maxSize, quality)
+            mCache.get(key)?.let { return it }
+            val encoded = encode(scaled, quality) ?: return null
+            mCache.put(key, encoded)
+            return encoded
+        } finally {
+            if (scaled !== bitmap) scaled.recycle()
+        }
+    }
+
+    private fun downscale(bitmap: Bitmap, maxSize: Int): Bitmap {
+        val side = maxOf(bitmap.width, bitmap.height)
+        if (side <= maxSize) return bitmap
+        val ratio = maxSize.toFloat() / side
+        return bitmap.scale(
+            maxOf(1, (bitmap.width * ratio).toInt()),
+            maxOf(1, (bitmap.height * ratio).toInt())
+        )
+    }
+
+    private fun sample(bitmap: Bitmap): Int {
+        var hash = bitmap.width * 31 + bitmap.height
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && Bitmap.Config.HARDWARE == bitmap.config)
+            return hash // pixels can't be read
+        for (y in 0 until SAMPLE_GRID) {
+            for (x in 0 until SAMPLE_GRID) {
+                val pixel = bitmap.getPixel(
+                    x * (bitmap.width - 1) / (SAMPLE_GRID - 1),
+                    y * (bitmap.height - 1) / (SAMPLE_GRID - 1)
+                )
+                hash = hash * 31 + pixel
+            }
+        }
+        return hash
+    }
+
+    private fun contentHash(bitmap: Bitmap): String {
+        val pixels = IntArray(bitmap.width * bitmap.height)
+        bitmap.getPixels(pixels, 0, bitmap.width, 0, 0, bitmap.width, bitmap.height)
+        val bytes = ByteBuffer.allocate(pixels.size * 4)
+        bytes.asIntBuffer().put(pixels)
+        return "${bitmap.width}x${bitmap.height}:${Blobs.hash(bytes.array())}"
+    }
+
+    private fun encode(bitmap: Bitmap, quality: Int): ByteArray? = try {
+        ByteArrayOutputStream().use { stream ->
+            bitmap.compress(format(quality), quality, stream)
+            stream.toByteArray()
+        }
+    } catch (e: IOException) {
+        log.e(TAG, "Failed to compress icon bitmap: " + e.message, e)
+        null
+    }
+
+    private fun format(quality: Int): Bitmap.CompressFormat = when {
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ->
+            if (quality >= 100) Bitmap.CompressFormat.WEBP_LOSSLESS else Bitmap.CompressFormat.WEBP_LOSSY
+        // deprecated WEBP is lossy at every quality, PNG is the lossless one there
+        quality >= 100 -> Bitmap.CompressFormat.PNG
+        else -> @Suppress("DEPRECATION") Bitmap.CompressFormat.WEBP
+    }
+}
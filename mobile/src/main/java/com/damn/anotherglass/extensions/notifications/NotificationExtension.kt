@@ -11,12 +11,7 @@ import com.damn.anotherglass.shared.notifications.NotificationData
 import com.damn.anotherglass.shared.notifications.NotificationData.DeliveryMode
 import com.damn.anotherglass.shared.notifications.NotificationsAPI
 import com.damn.anotherglass.shared.rpc.RPCMessage
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
-import org.greenrobot.eventbus.EventBus
-import org.greenrobot.eventbus.Subscribe
-import org.greenrobot.eventbus.ThreadMode
+import kotlinx.coroutines.flow.StateFlow
 
 class NotificationExtension(private val service: GlassService) {
 
@@ -24,48 +19,116 @@ class NotificationExtension(private val service: GlassService) {
     private val filterChecker = NotificationFilterChecker(service)
     private val settings = Settings(service)
 
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    fun onMessageEvent(event: NotificationEvent) {
-        val notificationData = Converter.convert(service, event.action, event.notification)
+    // extension only controls forwarding, history is recorded for as long as GlassService runs
+    @Volatile
+    private var forwarding = false
 
-        // Filter out YouTube Music notifications when music extension is enabled
-        if (settings.isMusicExtensionEnabled && 
-            MusicAPI.YOUTUBE_MUSIC_PACKAGE == notificationData.packageName) {
+    private val pipeline = NotificationPipeline(::process)
+
+    // held back updates come back through the pipeline once their window is over
+    private val throttle = NotificationThrottle(
+        service,
+        { settings.notificationThrottleWindow },
+        pipeline::schedule
+    ) { pipeline.offer(it) }
+
+    init {
+        pipeline.start()
+    }
+
+    // package -> number of notification updates that were coalesced or dropped as duplicates
+    val suppressedCounts: StateFlow<Map<String, Int>>
+        get() = throttle.suppressed
+
+    private val ledger = NotificationLedger()
+
+    // chat notifications only carry messages Glass does not have yet
+    private val conversations = ConversationSync()
+
+    // capture -> throttle -> convert -> filter -> history -> forward, runs on pipeline workers
+    private suspend fun process(event: NotificationEvent) {
+        if (!throttle.admit(event)) return
+
+        if (NotificationData.Action.Removed == event.action) {
+            forwardRemoval(event)
             return
         }
 
-        CoroutineScope(Dispatchers.IO).launch {
+        val quality = service.mediaQuality
+        val notificationData = Converter.convert(
+            service,
+            event.action,
+            event.notification,
+            quality.iconSize,
+            quality.iconQuality
+        )
+
+        // before it is replaced with a blob reference
+        val icon = notificationData.icon
+
+        // Filter out YouTube Music notifications when music extension is enabled
+        val skip = settings.isMusicExtensionEnabled &&
+                MusicAPI.YOUTUBE_MUSIC_PACKAGE == notificationData.packageName
+
+        if (forwarding && !skip) {
             val action = filterChecker.filter(notificationData) ?: FilterAction.ALLOW_WITH_NOTIFICATION
             if (action == FilterAction.BLOCK) {
                 log.d(TAG)
                     .putData(logDetails(notificationData))
                     .message("Notification was blocked by a filter")
             } else {
+                conversations.prepare(notificationData)
+                // same app icon comes with every notification, send it by reference
+                service.blobs.externalize(notificationData)
                 notificationData.deliveryMode = deliveryModeFromAction(action)
-                service.send(RPCMessage(NotificationsAPI.ID, notificationData))
+                val message = RPCMessage(NotificationsAPI.ID, notificationData)
+                // silent ones can wait until Glass display is on
+                if (DeliveryMode.Silent == notificationData.deliveryMode)
+                    service.sendDeferrable(message)
+                else
+                    service.send(message)
+                ledger.onForwarded(notificationData.packageName, notificationData.id)
                 log.d(TAG)
                     .putData(logDetails(notificationData))
                     .message("Notification was forwarded to the service")
             }
-            // Always add to history, even if blocked, so user can see what was blocked.
-            NotificationHistoryRepository.addNotification(notificationData)
         }
+        // Always add to history, even if blocked, so user can see what was blocked.
+        NotificationHistoryRepository.addNotification(service, notificationData, icon)
+    }
+
+    // Glass only needs to know about removal of what it has, and only the key of it
+    private fun forwardRemoval(event: NotificationEvent) {
+        val sbn = event.notification
+        conversations.onRemoved(sbn.packageName, sbn.id)
+        if (!forwarding || !ledger.onRemoved(sbn.packageName, sbn.id)) return
+        service.send(RPCMessage(NotificationsAPI.ID, Converter.removal(sbn)))
     }
 
     fun start() {
-        if (!EventBus.getDefault().isRegistered(this)) {
-            EventBus.getDefault().register(this)
+        // Glass has none of the notifications yet, even unchanged reposts should go through
+        if (!forwarding) {
+            throttle.reset()
+            ledger.clear()
+            conversations.clear()
         }
+        forwarding = true
         log.i(TAG).message("Notification extension started")
     }
 
     fun stop() {
-        if (EventBus.getDefault().isRegistered(this)) {
-            EventBus.getDefault().unregister(this)
-        }
+        forwarding = false
         log.i(TAG).message("Notification extension stopped")
     }
 
+    // GlassService is going away, nothing will be captured anymore
+    fun close() {
+        stop()
+        pipeline.stop()
+        throttle.reset()
+        filterChecker.close()
+    }
+
     companion object {
         private const val TAG = "NotificationExtension"
 
@@ -0,0 +1,71 @@
+package com.damn.anotherglass.extensions.notifications
+
+import android.os.SystemClock
+import android.util.LongSparseArray
+
+/**
+ * Notifications (package, id) that were actually forwarded to Glass, so removals of everything else
+ * (blocked, filtered out, posted while Glass was not connected) never leave the phone.
+ * Keys are packed into a long, a collision only means one useless removal is sent.
+ * Entries are forgotten after [maxAge] since the last forward, and oldest go first above [maxEntries].
+ */
+class NotificationLedger(
+    private val maxAge: Long = DEFAULT_MAX_AGE,
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES
+) {
+
+    // key -> elapsedRealtime() of the last forward
+    private val mForwarded = LongSparseArray<Long>()
+
+    private var mPrunedAt = 0L
+
+    @Synchronized
+    fun onForwarded(packageName: String, id: Int) {
+        val now = SystemClock.elapsedRealtime()
+        if (now - mPrunedAt > maxAge / PRUNES_PER_AGE) prune(now)
+        val key = keyOf(packageName, id)
+        if (mForwarded.size() >= maxEntries && mForwarded.indexOfKey(key) < 0) removeOldest()
+        mForwarded.put(key, now)
+    }
+
+    /**
+     * @return true if notification was forwarded, i.e. Glass needs to know about its removal
+     */
+    @Synchronized
+    fun onRemoved(packageName: String, id: Int): Boolean {
+        val index = mForwarded.indexOfKey(keyOf(packageName, id))
+        if (index < 0) return false
+        val forwardedAt = mForwarded.valueAt(index)
+        mForwarded.removeAt(index)
+        return SystemClock.elapsedRealtime() - forwardedAt <= maxAge
+    }
+
+    @Synchronized
+    fun clear() {
+        mForwarded.clear()
+    }
+
+    private fun prune(now: Long) {
+        mPrunedAt = now
+        for (i in mForwarded.size() - 1 downTo 0) {
+            if (now - mForwarded.valueAt(i) > maxAge) mForwarded.removeAt(i)
+        }
+    }
+
+    private fun removeOldest() {
+        var oldest = 0
+        for (i in 1 until mForwarded.size()) {
+            if (mForwarded.valueAt(i) < mForwarded.valueAt(oldest)) oldest = i
+        }
+        mForwarded.removeAt(oldest)
+    }
+
+    companion object {
+        private const val DEFAULT_MAX_AGE = 24 * 60 * 60 * 1000L
+        private const val DEFAULT_MAX_ENTRIES = 1024
+        private const val PRUNES_PER_AGE = 24
+
+        private fun keyOf(packageName: String, id: Int): Long =
+            (packageName.hashCode().toLong() shl 32) or (id.toLong() and 0xffffffffL)
+    }
+}
@@ -0,0 +1,103 @@
+package com.damn.anotherglass.extensions.notifications
+
+import com.applicaster.xray.core.Logger
+import com.damn.anotherglass.logging.ALog
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import kotlin.math.abs
+
+/**
+ * The only way notifications get from [NotificationService] into the app.
+ * Listener callbacks just enqueue the event, everything else (icon rendering, filtering, history)
+ * runs in [handler] on a small worker pool, so a burst of notifications never touches the main thread.
+ * Events of the same notification always go to the same worker, so posted/removed stay in order.
+ * Queues are bounded, under sustained overload the oldest events are dropped.
+ */
+class NotificationPipeline(private val handler: suspend (NotificationEvent) -> Unit) {
+
+    private val log = ALog(Logger.get(TAG))
+
+    private var mPool: ExecutorService? = null
+    private var mScope: CoroutineScope? = null
+    private var mQueues: List<Channel<NotificationEvent>> = emptyList()
+
+    @Synchronized
+    fun start() {
+        if (null != mPool) return
+        val pool = Executors.newFixedThreadPool(WORKERS) { Thread(it, TAG) }
+        val scope = CoroutineScope(SupervisorJob() + pool.asCoroutineDispatcher())
+        mQueues = List(WORKERS) {
+            Channel(CAPACITY, BufferOverflow.DROP_OLDEST) { dropped: NotificationEvent ->
+                // queue overflow or pipeline stop
+                log.w(TAG, "Dropped ${dropped.action} of ${dropped.notification.key}")
+            }
+        }
+        mQueues.forEach { queue ->
+            scope.launch {
+                for (event in queue) {
+                    try {
+                        handler(event)
+                    } catch (e: CancellationException) {
+                        throw e
+                    } catch (e: Exception) {
+                        // one bad notification should not stop the worker
+                        log.e(TAG, "Failed to process notification: ${e.message}", e)
+                    }
+                }
+            }
+        }
+        mPool = pool
+        mScope = scope
+        sActive = this
+    }
+
+    @Synchronized
+    fun stop() {
+        val pool = mPool ?: return
+        if (sActive === this) sActive = null
+        mQueues.forEach { it.close() }
+        mQueues = emptyList()
+        mScope?.cancel()
+        mScope = null
+        pool.shutdown()
+        mPool = null
+    }
+
+    // block runs on a worker after delayMillis, unless it is cancelled or the pipeline is stopped first
+    @Synchronized
+    fun schedule(delayMillis: Long, block: () -> Unit): Job? =
+        mScope?.launch {
+            delay(delayMillis)
+            block()
+        }
+
+    @Synchronized
+    fun offer(event: NotificationEvent): Boolean {
+        if (mQueues.isEmpty()) return false
+        val queue = mQueues[abs(event.notification.key.hashCode() % WORKERS)]
+        return queue.trySend(event).isSuccess
+    }
+
+    companion object {
+        private const val TAG = "NotificationPipeline"
+        private const val WORKERS = 2
+        private const val CAPACITY = 64
+
+        @Volatile
+        private var sActive: NotificationPipeline? = null
+
+        // called from NotificationListenerService callbacks, returns false if nobody is listening
+        @JvmStatic
+        fun submit(event: NotificationEvent): Boolean = sActive?.offer(event) ?: false
+    }
+}
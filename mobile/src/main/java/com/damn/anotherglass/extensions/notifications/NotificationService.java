@@ -10,14 +10,10 @@ import android.service.notification.StatusBarNotification;
 import android.text.TextUtils;
 
 import com.applicaster.xray.core.Logger;
-import com.damn.anotherglass.core.GlassService;
 import com.damn.anotherglass.core.Settings;
-import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryRepository;
 import com.damn.anotherglass.logging.ALog;
 import com.damn.anotherglass.shared.notifications.NotificationData;
 
-import org.greenrobot.eventbus.EventBus;
-
 // todo: filter self notifications
 // todo: add whitelist
 
@@ -53,15 +49,12 @@ public class NotificationService extends NotificationListenerService {
     }
 
     private void emit(StatusBarNotification sbn, NotificationData.Action posted) {
-        if (mSettings.isNotificationsEnabled() &&
-                GlassService.isRunning(this)) {
+        if (!mSettings.isNotificationsEnabled())
+            return;
+        // this runs on main thread, conversion and everything else is done by the pipeline workers;
+        // pipeline only exists while GlassService is running
+        if (NotificationPipeline.submit(new NotificationEvent(sbn, posted)))
             log.d(TAG, "Notification received");
-            // do not convert notification yet, send as is
-            EventBus.getDefault().post(new NotificationEvent(sbn, posted));
-
-            NotificationData convert = Converter.INSTANCE.convert(this, posted, sbn);
-            NotificationHistoryRepository.INSTANCE.addNotification(convert);
-        }
     }
 
     // https://stackoverflow.com/a/51724784
@@ -0,0 +1,166 @@
+package com.damn.anotherglass.extensions.notifications
+
+import android.app.Notification
+import android.content.Context
+import android.os.SystemClock
+import android.service.notification.StatusBarNotification
+import com.damn.anotherglass.shared.notifications.NotificationData
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+
+/**
+ * Rate limits reposts of the same notification (package, id and tag): downloads, navigation, timers
+ * can update many times per second, and Glass redraws the card every time.
+ *  - reposts that do not change what Glass shows are dropped right away;
+ *  - at most one update per [window] goes through, the latest one is delivered when window ends
+ *    (via [release], which puts it back into the pipeline). Window timers run on pipeline workers.
+ *    Window is asked for on every update, so it follows the setting while running,
+ *    0 only drops the unchanged reposts.
+ * Removals are never held back, and cancel pending update of the same notification.
+ * Everything dropped or replaced is counted per package in [suppressed].
+ */
+class NotificationThrottle(
+    private val context: Context,
+    private val window: () -> Long,
+    private val schedule: (Long, () -> Unit) -> Job?, // runs the block off main thread after a delay, ms
+    private val release: (NotificationEvent) -> Unit
+) {
+
+    private class State {
+        var deliveredAt = 0L
+        var contentHash = 0L
+        var pending: NotificationEvent? = null // latest update waiting for the window to end
+        var pendingHash = 0L
+        var timer: Job? = null
+        var released: NotificationEvent? = null // pending update we have just put back into the pipeline
+        var releasedHash = 0L
+    }
+
+    // oldest entries go first, in case we have missed removal of some notification
+    private val mStates = object : LinkedHashMap<String, State>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, State>): Boolean =
+            (size > MAX_TRACKED).also { if (it) eldest.value.timer?.cancel() }
+    }
+
+    private val mSuppressed = MutableStateFlow<Map<String, Int>>(emptyMap())
+
+    // package -> number of updates that never reached Glass
+    val suppressed: StateFlow<Map<String, Int>>
+        get() = mSuppressed
+
+    /**
+     * @return true if event should be processed now
+     */
+    fun admit(event: NotificationEvent): Boolean {
+        val sbn = event.notification
+        val key = sbn.key // tag is a part of it, chat apps often reuse id with different tags
+        if (NotificationData.Action.Posted != event.action) {
+            synchronized(this) {
+                mStates.remove(key)?.let { state ->
+                    state.timer?.cancel()
+                    state.pending?.let { suppress(it) }
+                }
+            }
+            return true
+        }
+        synchronized(this) {
+            val state = mStates[key]
+            if (null != state && state.released === event) {
+                state.released = null
+                deliver(state, state.releasedHash)
+                return true
+            }
+        }
+        // icon fingerprint may load a drawable, workers should not wait for each other on that
+        val hash = contentHash(sbn)
+        synchronized(this) {
+            val state = mStates.getOrPut(key) { State() }
+            val latest = state.pending
+            if (null == latest && 0L != state.deliveredAt && hash == state.contentHash) {
+                suppress(event)
+                return false
+            }
+            if (null != latest) {
+                // timer is already set, the newest state replaces the one waiting
+                state.pending = event
+                state.pendingHash = hash
+                suppress(latest)
+                return false
+            }
+            val wait = state.deliveredAt + window() - SystemClock.elapsedRealtime()
+            if (0L == state.deliveredAt || wait <= 0) {
+                deliver(state, hash)
+                return true
+            }
+            state.pending = event
+            state.pendingHash = hash
+            state.timer = schedule(wait) { onWindowEnd(key) }
+            return false
+        }
+    }
+
+    // forget everything, e.g. when Glass (re)connects and has nothing on it yet
+    @Synchronized
+    fun reset() {
+        mStates.values.forEach { it.timer?.cancel() }
+        mStates.clear()
+    }
+
+    @Synchronized
+    private fun onWindowEnd(key: String) {
+        val state = mStates[key] ?: return
+        state.timer = null
+        val event = state.pending ?: return
+        state.pending = null
+        // same content as the one on Glass already, nothing to deliver after all
+        if (state.pendingHash == state.contentHash) {
+            suppress(event)
+            return
+        }
+        state.released = event
+        state.releasedHash = state.pendingHash
+        release(event)
+    }
+
+    private fun deliver(state: State, hash: Long) {
+        state.deliveredAt = SystemClock.elapsedRealtime()
+        state.contentHash = hash
+    }
+
+    private fun suppress(event: NotificationEvent) {
+        val packageName = event.notification.packageName
+        val counts = mSuppressed.value
+        mSuppressed.value = counts + (packageName to (counts[packageName] ?: 0) + 1)
+    }
+
+    // only what ends up on Glass, see Converter
+    private fun contentHash(sbn: StatusBarNotification): Long {
+        val notification = sbn.notification
+        val extras = notification.extras
+        var hash = 1L
+        for (field in arrayOf(
+            extras.getCharSequence(Notification.EXTRA_TITLE),
+            extras.getCharSequence(Notification.EXTRA_TEXT),
+            notification.tickerText
+        )) {
+            hash = hash * 1_000_003L + (field?.toString()?.hashCode() ?: 0)
+        }
+        // chat apps may repost with the same text but a longer conversation
+        hash = hash * 31L + (extras.getParcelableArray(Notification.EXTRA_MESSAGES)?.size ?: 0)
+        // same text with a new picture, e.g. contact photo or album art
+        @Suppress("DEPRECATION")
+        val icon = IconProcessor.fingerprint(
+            context,
+            notification.getLargeIcon() ?: notification.smallIcon,
+            notification.largeIcon
+        )
+        hash = hash * 31L + icon
+        return hash * 31L + if (sbn.isOngoing) 1 else 0
+    }
+
+    companion object {
+        const val DEFAULT_WINDOW = 1000L
+        private const val MAX_TRACKED = 256
+    }
+}
@@ -0,0 +1,73 @@
+package com.damn.anotherglass.extensions.notifications.filter
+
+import java.util.ArrayDeque
+import java.util.BitSet
+
+/**
+ * Multi-pattern substring matcher: finds which of the patterns occur in a text in a single pass,
+ * no matter how many patterns there are. Patterns and text are expected to be lower-cased by the caller.
+ * Immutable once built.
+ */
+class AhoCorasick(patterns: List<String>) {
+
+    val patternCount = patterns.size
+
+    private val next = ArrayList<HashMap<Char, Int>>()
+    private val fail: IntArray
+    // pattern ids ending at each node, including ones reachable by fail links
+    private val output: Array<IntArray>
+
+    init {
+        next.add(HashMap())
+        val ends = ArrayList<MutableList<Int>>().apply { add(mutableListOf()) }
+        patterns.forEachIndexed { id, pattern ->
+            var node = 0
+            for (c in pattern) {
+                node = next[node].getOrPut(c) {
+                    next.add(HashMap())
+                    ends.add(mutableListOf())
+                    next.size - 1
+                }
+            }
+            ends[node].add(id)
+        }
+
+        // breadth-first, so fail target of each node is ready before its children are visited
+        fail = IntArray(next.size)
+        val outputs = arrayOfNulls<IntArray>(next.size)
+        outputs[0] = ends[0].toIntArray()
+        val queue = ArrayDeque<Int>()
+        for (child in next[0].values) {
+            queue.add(child)
+            outputs[child] = ends[child].toIntArray() + outputs[0]!!
+        }
+        while (queue.isNotEmpty()) {
+            val node = queue.poll()!!
+            for ((c, child) in next[node]) {
+                var f = fail[node]
+                while (f != 0 && !next[f].containsKey(c)) f = fail[f]
+                val target = next[f][c]
+                fail[child] = if (null != target && target != child) target else 0
+                outputs[child] = ends[child].toIntArray() + outputs[fail[child]]!!
+                queue.add(child)
+            }
+        }
+        @Suppress("UNCHECKED_CAST")
+        output = outputs as Array<IntArray>
+    }
+
+    /**
+     * @return ids (indexes in the constructor list) of patterns found in [text]
+     */
+    fun match(text: String): BitSet {
+        val found = BitSet(patternCount)
+        output[0].forEach { found.set(it) } // empty patterns
+        var node = 0
+        for (c in text) {
+            while (node != 0 && !next[node].containsKey(c)) node = fail[node]
+            node = next[node][c] ?: 0
+            output[node].forEach { found.set(it) }
+        }
+        return found
+    }
+}
@@ -0,0 +1,199 @@
+package com.damn.anotherglass.extensions.notifications.filter
+
+import com.damn.anotherglass.shared.notifications.NotificationData
+import java.util.BitSet
+import java.util.Locale
+
+/**
+ * Immutable matcher built from the filter list once per change, so evaluating a notification
+ * does not depend much on the number of filters:
+ *  - filters are looked up by package name, only ones for this package (or for any package) are checked;
+ *  - all CONTAINS values of a field are found with a single Aho-Corasick pass over the lower-cased text;
+ *  - EQUALS values of a field are resolved with a single hash lookup.
+ * Semantics match the original linear check: first matching enabled filter in list order wins.
+ */
+class CompiledFilters private constructor(
+    private val filters: List<NotificationFilter>,
+    private val conditions: List<Array<Condition>>,
+    private val byPackage: Map<String, IntArray>,
+    private val anyPackage: IntArray,
+    private val fields: Array<FieldIndex>
+) {
+
+    private enum class Field { Title, Text, TickerText }
+
+    private sealed class Condition {
+        class Contains(val field: Int, val pattern: Int) : Condition()
+        class Equals(val field: Int, val value: Int) : Condition()
+        class Ongoing(val value: Boolean) : Condition()
+    }
+
+    private class FieldIndex(contains: List<String>, val equals: Map<String, Int>) {
+        val matcher = AhoCorasick(contains)
+    }
+
+    // per-notification lazily evaluated field matches
+    private inner class Evaluation(private val notification: NotificationData) {
+
+        private val containsMatches = arrayOfNulls<BitSet>(fields.size)
+        private val equalsMatches = IntArray(fields.size) { UNKNOWN }
+
+        fun contains(field: Int, pattern: Int): Boolean {
+            val text = text(field) ?: return false
+            val found = containsMatches[field] ?: fields[field].matcher.match(lower(text))
+                .also { containsMatches[field] = it }
+            return found[pattern]
+        }
+
+        fun equals(field: Int, value: Int): Boolean {
+            if (UNKNOWN == equalsMatches[field]) {
+                // missing text equals to empty value, as in the original check
+                val key = text(field)?.let { lower(it) } ?: ""
+                equalsMatches[field] = fields[field].equals[key] ?: NONE
+            }
+            return equalsMatches[field] == value
+        }
+
+        fun ongoing(): Boolean = notification.isOngoing
+
+        private fun text(field: Int): String? = when (Field.entries[field]) {
+            Field.Title -> notification.title
+            Field.Text -> notification.text
+            Field.TickerText -> notification.tickerText
+        }
+    }
+
+    // gets every filter that was checked, in order, up to the first match
+    interface MatchListener {
+        fun onChecked(filter: NotificationFilter, matched: Boolean, nanos: Long)
+    }
+
+    /**
+     * @return first enabled filter that matches the notification, or null
+     */
+    fun match(notification: NotificationData, listener: MatchListener? = null): NotificationFilter? {
+        if (filters.isEmpty()) return null
+        val forPackage = notification.packageName?.let { byPackage[lower(it)] } ?: EMPTY
+        val evaluation = Evaluation(notification)
+        // both index lists are sorted, walk them in list order
+        var i = 0
+        var j = 0
+        while (i < forPackage.size || j < anyPackage.size) {
+            val index = when {
+                j >= anyPackage.size -> forPackage[i++]
+                i >= forPackage.size -> anyPackage[j++]
+                forPackage[i] < anyPackage[j] -> forPackage[i++]
+                else -> anyPackage[j++]
+            }
+            if (null == listener) {
+                if (matches(index, evaluation)) return filters[index]
+                continue
+            }
+            val start = System.nanoTime()
+            val matched = matches(index, evaluation)
+            listener.onChecked(filters[index], matched, System.nanoTime() - start)
+            if (matched) return filters[index]
+        }
+        return null
+    }
+
+    /**
+     * Applies a single stored change. Filters are matched through shared indexes, so anything that affects
+     * matching needs a full [compile]; changes that do not (name, action, a disabled filter) reuse this one.
+     * @param allFilters whole list after the change
+     */
+    fun update(change: FilterChange, allFilters: List<NotificationFilter>): CompiledFilters {
+        when (change) {
+            is FilterChange.Removed ->
+                if (filters.none { it.id == change.filterId }) return this
+            is FilterChange.Upserted -> {
+                val filter = change.filter
+                val index = filters.indexOfFirst { it.id == filter.id }
+                if (index < 0 && !filter.isEnabled) return this
+                if (index >= 0 && sameMatching(filters[index], filter)) {
+                    val updated = filters.toMutableList().also { it[index] = filter }
+                    return CompiledFilters(updated, conditions, byPackage, anyPackage, fields)
+                }
+            }
+            FilterChange.Reset -> Unit
+        }
+        return compile(allFilters)
+    }
+
+    private fun matches(index: Int, evaluation: Evaluation): Boolean {
+        val filterConditions = conditions[index]
+        if (filterConditions.isEmpty()) return true // matches everything (for the given package)
+        val all = filters[index].matchAllConditions
+        for (condition in filterConditions) {
+            val met = when (condition) {
+                is Condition.Contains -> evaluation.contains(condition.field, condition.pattern)
+                is Condition.Equals -> evaluation.equals(condition.field, condition.value)
+                is Condition.Ongoing -> evaluation.ongoing() == condition.value
+            }
+            if (all && !met) return false
+            if (!all && met) return true
+        }
+        return all
+    }
+
+    companion object {
+        private const val UNKNOWN = -2
+        private const val NONE = -1
+        private val EMPTY = IntArray(0)
+
+        private fun lower(s: String) = s.lowercase(Locale.ROOT)
+
+        fun compile(allFilters: List<NotificationFilter>): CompiledFilters {
+            val filters = allFilters.filter { it.isEnabled }
+            val contains = Array(Field.entries.size) { LinkedHashMap<String, Int>() }
+            val equals = Array(Field.entries.size) { HashMap<String, Int>() }
+            val byPackage = HashMap<String, MutableList<Int>>()
+            val anyPackage = ArrayList<Int>()
+
+            val conditions = filters.mapIndexed { index, filter ->
+                val packageName = filter.packageName
+                if (packageName.isNullOrBlank())
+                    anyPackage.add(index)
+                else
+                    byPackage.getOrPut(lower(packageName)) { ArrayList() }.add(index)
+
+                filter.conditions.map { condition ->
+                    val value = lower(condition.value)
+                    when (condition.type) {
+                        ConditionType.TITLE_CONTAINS -> containsCondition(contains, Field.Title, value)
+                        ConditionType.TEXT_CONTAINS -> containsCondition(contains, Field.Text, value)
+                        ConditionType.TICKER_TEXT_CONTAINS -> containsCondition(contains, Field.TickerText, value)
+                        ConditionType.TITLE_EQUALS -> equalsCondition(equals, Field.Title, value)
+                        ConditionType.TEXT_EQUALS -> equalsCondition(equals, Field.Text, value)
+                        ConditionType.TICKER_TEXT_EQUALS -> equalsCondition(equals, Field.TickerText, value)
+                        ConditionType.IS_ONGOING_EQUALS -> Condition.Ongoing(condition.value.toBoolean())
+                    }
+                }.toTypedArray()
+            }
+
+            return CompiledFilters(
+                filters,
+                conditions,
+                byPackage.mapValues { it.value.toIntArray() },
+                anyPackage.toIntArray(),
+                Array(Field.entries.size) { FieldIndex(contains[it].keys.toList(), equals[it]) }
+            )
+        }
+
+        private fun sameMatching(a: NotificationFilter, b: NotificationFilter) =
+            a.isEnabled == b.isEnabled &&
+                    a.packageName == b.packageName &&
+                    a.matchAllConditions == b.matchAllConditions &&
+                    a.conditions == b.conditions
+
+        private fun containsCondition(contains: Array<LinkedHashMap<String, Int>>, field: Field, value: String) =
+            contains[field.ordinal].let { patterns ->
+                Condition.Contains(field.ordinal, patterns.getOrPut(value) { patterns.size })
+            }
+
+        private fun equalsCondition(equals: Array<HashMap<String, Int>>, field: Field, value: String) =
+            equals[field.ordinal].let { values ->
+                Condition.Equals(field.ordinal, values.getOrPut(value) { values.size })
+            }
+    }
+}
@@ -0,0 +1,37 @@
+package com.damn.anotherglass.extensions.notifications.filter
+
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteOpenHelper
+
+/**
+ * Schema of user filters: one row per filter, so editing one does not rewrite the rest.
+ * Filter itself is stored as JSON, position keeps list order (first match wins, order matters).
+ */
+internal class FilterDatabase(context: Context) :
+    SQLiteOpenHelper(context, NAME, null, VERSION) {
+
+    override fun onCreate(db: SQLiteDatabase) {
+        db.execSQL(
+            """CREATE TABLE $FILTERS (
+                $ID TEXT PRIMARY KEY,
+                $POSITION INTEGER NOT NULL,
+                $DATA TEXT NOT NULL)"""
+        )
+    }
+
+    override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+        // nothing to migrate yet
+    }
+
+    companion object {
+        private const val NAME = "filters.db"
+        private const val VERSION = 1
+
+        const val FILTERS = "filters"
+
+        const val ID = "id"
+        const val POSITION = "position"
+        const val DATA = "data"
+    }
+}
@@ -0,0 +1,69 @@
+package com.damn.anotherglass.extensions.notifications.filter
+
+import com.damn.anotherglass.shared.notifications.NotificationData
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.ensureActive
+import kotlin.coroutines.coroutineContext
+
+/**
+ * "What-if" run of filters over stored history: what they would have matched, without waiting
+ * for new notifications. History is split into chunks matched in parallel against one [CompiledFilters],
+ * which is immutable and can be shared between threads.
+ * Semantics are the same as for live notifications: first matching enabled filter wins.
+ */
+object FilterSimulator {
+
+    private const val MIN_CHUNK = 128
+    private const val MAX_SAMPLES = 20
+
+    data class Result(
+        val total: Int, // history entries checked
+        val matched: Int,
+        val matchesByFilter: Map<String, Int>, // filter id -> entries it was the first match for
+        val samples: List<NotificationData> // first matched entries, newest first
+    )
+
+    /**
+     * Single filter on its own, as if it was enabled
+     */
+    suspend fun evaluate(filter: NotificationFilter, history: List<NotificationData>): Result =
+        evaluate(listOf(filter.copy(isEnabled = true)), history)
+
+    suspend fun evaluate(filters: List<NotificationFilter>, history: List<NotificationData>): Result {
+        val compiled = CompiledFilters.compile(filters)
+        val chunkSize = maxOf(MIN_CHUNK, history.size / (Runtime.getRuntime().availableProcessors() * 2) + 1)
+        val partials = coroutineScope {
+            history.chunked(chunkSize).map { chunk ->
+                async(Dispatchers.Default) { evaluateChunk(compiled, chunk) }
+            }.awaitAll()
+        }
+        // chunks are in history order, so samples stay newest first
+        val counts = HashMap<String, Int>()
+        val samples = ArrayList<NotificationData>()
+        var matched = 0
+        for (partial in partials) {
+            matched += partial.matched
+            partial.matchesByFilter.forEach { (id, count) -> counts[id] = (counts[id] ?: 0) + count }
+            if (samples.size < MAX_SAMPLES) samples += partial.samples.take(MAX_SAMPLES - samples.size)
+        }
+        return Result(history.size, matched, counts, samples)
+    }
+
+    private suspend fun evaluateChunk(compiled: CompiledFilters, chunk: List<NotificationData>): Result {
+        val counts = HashMap<String, Int>()
+        val samples = ArrayList<NotificationData>()
+        var matched = 0
+        for ((index, notification) in chunk.withIndex()) {
+            // editor cancels stale runs on every keystroke
+            if (0 == index % MIN_CHUNK) coroutineContext.ensureActive()
+            val filter = compiled.match(notification) ?: continue
+            matched++
+            counts[filter.id] = (counts[filter.id] ?: 0) + 1
+            if (samples.size < MAX_SAMPLES) samples += notification
+        }
+        return Result(chunk.size, matched, counts, samples)
+    }
+}
@@ -0,0 +1,160 @@
+package com.damn.anotherglass.extensions.notifications.filter
+
+import android.content.Context
+import com.applicaster.xray.core.Logger
+import com.damn.anotherglass.logging.ALog
+import com.google.gson.Gson
+import com.google.gson.annotations.SerializedName
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * How filters behave on live notifications: per filter hits (was the first match), misses (was checked
+ * and did not match), first and last match time and time spent in it; plus a histogram of the whole
+ * filtering time per notification. Counting is just atomic increments, [flush] writes them to disk
+ * (if anything has changed) and notifies [updates].
+ */
+object FilterStatistics : CompiledFilters.MatchListener {
+
+    private const val TAG = "FilterStatistics"
+    private const val FILE_NAME = "filter_stats.json"
+
+    // bucket i counts evaluations that took [2^(i-1), 2^i) microseconds, first one is under 1us
+    const val LATENCY_BUCKETS = 20
+
+    private val log = ALog(Logger.get(TAG))
+    private val gson = Gson()
+
+    private class Counters {
+        val hits = AtomicLong()
+        val misses = AtomicLong()
+        val firstMatch = AtomicLong()
+        val lastMatch = AtomicLong()
+        val nanos = AtomicLong()
+    }
+
+    data class FilterStats(
+        @SerializedName("hits") val hits: Long,
+        @SerializedName("misses") val misses: Long,
+        @SerializedName("first_match") val firstMatch: Long, // wall clock, 0 if never matched
+        @SerializedName("last_match") val lastMatch: Long,
+        @SerializedName("nanos") val nanos: Long // total time spent checking this filter
+    ) {
+        val averageNanos: Long
+            get() = if (0L == hits + misses) 0 else nanos / (hits + misses)
+    }
+
+    private data class Stored(
+        @SerializedName("filters") val filters: Map<String, FilterStats> = emptyMap(),
+        @SerializedName("latency") val latency: LongArray = LongArray(LATENCY_BUCKETS)
+    )
+
+    private val mCounters = ConcurrentHashMap<String, Counters>()
+    private val mLatency = AtomicLongArray(LATENCY_BUCKETS)
+    private val mDirty = AtomicBoolean()
+    private val mLoaded = AtomicBoolean()
+
+    private val mUpdates = MutableStateFlow(0L)
+
+    // bumped on every flush, UI can re-read stats when it changes
+    val updates: StateFlow<Long>
+        get() = mUpdates
+
+    override fun onChecked(filter: NotificationFilter, matched: Boolean, nanos: Long) {
+        val counters = mCounters.getOrPut(filter.id) { Counters() }
+        if (matched) {
+            val now = System.currentTimeMillis()
+            counters.hits.incrementAndGet()
+            counters.firstMatch.compareAndSet(0, now)
+            counters.lastMatch.set(now)
+        } else {
+            counters.misses.incrementAndGet()
+        }
+        counters.nanos.addAndGet(nanos)
+        mDirty.set(true)
+    }
+
+    // whole evaluation of a notification against all filters
+    fun onEvaluated(nanos: Long) {
+        val micros = nanos / 1000
+        val bucket = minOf(LATENCY_BUCKETS - 1, 64 - java.lang.Long.numberOfLeadingZeros(micros))
+        mLatency.incrementAndGet(bucket)
+        mDirty.set(true)
+    }
+
+    fun get(context: Context, filterId: String): FilterStats? {
+        load(context)
+        val counters = mCounters[filterId] ?: return null
+        return FilterStats(
+            counters.hits.get(),
+            counters.misses.get(),
+            counters.firstMatch.get(),
+            counters.lastMatch.get(),
+            counters.nanos.get()
+        )
+    }
+
+    fun latency(context: Context): LongArray {
+        load(context)
+        return LongArray(LATENCY_BUCKETS) { mLatency.get(it) }
+    }
+
+    fun reset(context: Context, filterId: String) {
+        load(context)
+        if (null != mCounters.remove(filterId)) mDirty.set(true)
+    }
+
+    fun flush(context: Context) {
+        load(context)
+        if (!mDirty.getAndSet(false)) return
+        val stored = Stored(
+            mCounters.keys.associateWith { get(context, it)!! },
+            latency(context)
+        )
+        try {
+            file(context).writeText(gson.toJson(stored))
+        } catch (e: IOException) {
+            log.e(TAG, "Failed to save filter statistics: ${e.message}", e)
+        }
+        mUpdates.value++
+    }
+
+    // counters are kept across restarts, load them before first use
+    private fun load(context: Context) {
+        if (mLoaded.get()) return
+        synchronized(this) {
+            if (mLoaded.get()) return
+            try {
+                val file = file(context)
+                if (file.exists()) {
+                    val stored = gson.fromJson(file.readText(), Stored::class.java)
+                    stored.filters.forEach { (id, stats) ->
+                        val counters = mCounters.getOrPut(id) { Counters() }
+                        counters.hits.addAndGet(stats.hits)
+                        counters.misses.addAndGet(stats.misses)
+                        // something may have been counted already, stored one is older
+                        val first = counters.firstMatch.get()
+                        if (0L == first || stats.firstMatch in 1 until first) counters.firstMatch.set(stats.firstMatch)
+                        if (stats.lastMatch > counters.lastMatch.get()) counters.lastMatch.set(stats.lastMatch)
+                        counters.nanos.addAndGet(stats.nanos)
+                    }
+                    stored.latency.forEachIndexed { i, count ->
+                        if (i < LATENCY_BUCKETS) mLatency.addAndGet(i, count)
+                    }
+                }
+            } catch (e: Exception) {
+                // corrupted or from incompatible version, start over
+                log.e(TAG, "Failed to load filter statistics: ${e.message}", e)
+            }
+            mLoaded.set(true)
+        }
+    }
+
+    private fun file(context: Context) = File(context.applicationContext.filesDir, FILE_NAME)
+}
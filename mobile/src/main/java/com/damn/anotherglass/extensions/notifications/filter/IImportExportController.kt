@@ -63,8 +63,7 @@ suspend fun exportFiltersToFile(context: Activity) {
 suspend fun importFiltersFromFile(context: Context, uri: Uri) {
     try {
         context.contentResolver.openInputStream(uri)?.use { inputStream ->
-            val json = inputStream.bufferedReader().use { it.readText() }
-            UserFilterRepository.importFilters(context, json)
+            UserFilterRepository.importFilters(context, inputStream)
             Toast.makeText(context, "Filters imported successfully", Toast.LENGTH_LONG).show()
         }
     } catch (e: Exception) {
@@ -4,86 +4,65 @@ import android.content.Context
 import com.damn.anotherglass.shared.notifications.NotificationData
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.flow.firstOrNull
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
 
 
 class NotificationFilterChecker(private val context: Context) {
 
-    private var activeFilters: List<NotificationFilter> = emptyList()
+    // updated only when stored filters change, null until first load
+    private val compiledFilters = MutableStateFlow<CompiledFilters?>(null)
+
+    // FilterSet.version compiledFilters were built for
+    private var compiledVersion = -1L
+
+    // filter updates and statistics flushes, lives until close()
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
 
     init {
-        // In a real ViewModel, you'd collect the flow and update activeFilters
-        // For now, let's imagine a way to load them initially or on demand
-        CoroutineScope(Dispatchers.IO).launch {
-            UserFilterRepository.getFiltersFlow(context).collect { filters ->
-                activeFilters = filters.filter { it.isEnabled }
+        scope.launch {
+            UserFilterRepository.getFilterSetFlow(context).collect { set ->
+                val current = compiledFilters.value
+                compiledFilters.value =
+                    if (null != current && set.version == compiledVersion + 1)
+                        current.update(set.change, set.filters)
+                    else
+                        CompiledFilters.compile(set.filters)
+                compiledVersion = set.version
+            }
+        }
+        scope.launch {
+            while (true) {
+                FilterStatistics.flush(context)
+                delay(STATISTICS_FLUSH_INTERVAL)
             }
         }
     }
 
+    fun close() {
+        scope.cancel()
+        // counts since the last periodic flush, one-off job that ends by itself
+        CoroutineScope(Dispatchers.IO).launch { FilterStatistics.flush(context) }
+    }
+
     suspend fun filter(notification: NotificationData): FilterAction? {
         if (notification.action != NotificationData.Action.Posted) {
-            // Send all non-Posted notifications by default, it won't hurt
-            // later we can track if notification was sent or not, and ignore removals
+            // removals are not filtered, NotificationLedger only lets through those Glass has seen
             return null
         }
-
-        val currentActiveFilters = UserFilterRepository.getFiltersFlow(context)
-            .firstOrNull()?.filter { it.isEnabled } ?: emptyList()
-
-        if (currentActiveFilters.isEmpty()) {
-            return null
-        }
-
-        return currentActiveFilters.firstOrNull {
-            matchesSingleFilter(notification, it)
-        }?.action
+        val compiled = compiledFilters.filterNotNull().first()
+        val start = System.nanoTime()
+        val filter = compiled.match(notification, FilterStatistics)
+        FilterStatistics.onEvaluated(System.nanoTime() - start)
+        return filter?.action
     }
 
-    private fun matchesSingleFilter(
-        notification: NotificationData,
-        filter: NotificationFilter
-    ): Boolean {
-        // If a package name is specified in the filter, it must match.
-        if (!filter.packageName.isNullOrBlank()) {
-            if (!notification.packageName.equals(filter.packageName, ignoreCase = true)) {
-                return false // Package name does not match, so the filter does not apply.
-            }
-        }
-
-        if (filter.conditions.isEmpty() && filter.isEnabled) {
-            return true // Enabled filter with no conditions matches all (for the given package).
-        }
-
-        var overallMatch = filter.matchAllConditions
-
-        for (condition in filter.conditions) {
-            val conditionMet: Boolean = when (condition.type) {
-                ConditionType.TITLE_CONTAINS ->
-                    notification.title?.contains(condition.value, ignoreCase = true) ?: false
-                ConditionType.TITLE_EQUALS ->
-                    notification.title?.equals(condition.value, ignoreCase = true) ?: condition.value.isEmpty()
-                ConditionType.TEXT_CONTAINS ->
-                    notification.text?.contains(condition.value, ignoreCase = true) ?: false
-                ConditionType.TEXT_EQUALS ->
-                    notification.text?.equals(condition.value, ignoreCase = true) ?: condition.value.isEmpty()
-                ConditionType.TICKER_TEXT_CONTAINS ->
-                    notification.tickerText?.contains(condition.value, ignoreCase = true) ?: false
-                ConditionType.TICKER_TEXT_EQUALS ->
-                    notification.tickerText?.equals(condition.value, ignoreCase = true) ?: condition.value.isEmpty()
-                ConditionType.IS_ONGOING_EQUALS ->
-                    notification.isOngoing == condition.value.toBoolean()
-            }
-
-            if (filter.matchAllConditions) { // AND
-                if (!conditionMet) return false
-                overallMatch = true
-            } else { // OR
-                if (conditionMet) return true
-                overallMatch = false
-            }
-        }
-        return overallMatch
+    companion object {
+        private const val STATISTICS_FLUSH_INTERVAL = 30 * 1000L
     }
-}
\ No newline at end of file
+}
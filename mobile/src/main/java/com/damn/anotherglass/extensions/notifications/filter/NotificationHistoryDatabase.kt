@@ -0,0 +1,82 @@
+package com.damn.anotherglass.extensions.notifications.filter
+
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteOpenHelper
+
+/**
+ * Schema of the notification history:
+ *  - notifications: one row per (package, id, posted time), unique index makes dedupe a single lookup;
+ *  - icons: icon bytes by content hash, shared by all notifications with the same icon;
+ *  - notifications_fts: FTS4 index over title and text, kept in sync by triggers.
+ * Each row stores its approximate size, history is trimmed by total size, see [NotificationHistoryRepository].
+ */
+internal class NotificationHistoryDatabase(context: Context) :
+    SQLiteOpenHelper(context, NAME, null, VERSION) {
+
+    override fun onCreate(db: SQLiteDatabase) {
+        db.execSQL(
+            """CREATE TABLE $NOTIFICATIONS (
+                $ID INTEGER PRIMARY KEY AUTOINCREMENT,
+                $PACKAGE TEXT NOT NULL,
+                $NOTIFICATION_ID INTEGER NOT NULL,
+                $POSTED_TIME INTEGER NOT NULL,
+                $ONGOING INTEGER NOT NULL,
+                $TITLE TEXT,
+                $TEXT TEXT,
+                $TICKER TEXT,
+                $ICON_HASH TEXT,
+                $SIZE INTEGER NOT NULL,
+                UNIQUE ($PACKAGE, $NOTIFICATION_ID, $POSTED_TIME))"""
+        )
+        db.execSQL("CREATE INDEX ${NOTIFICATIONS}_$ICON_HASH ON $NOTIFICATIONS ($ICON_HASH)")
+        db.execSQL(
+            """CREATE TABLE $ICONS (
+                $HASH TEXT PRIMARY KEY,
+                $DATA BLOB NOT NULL,
+                $SIZE INTEGER NOT NULL)"""
+        )
+        db.execSQL("CREATE VIRTUAL TABLE $FTS USING fts4(content=\"$NOTIFICATIONS\", $TITLE, $TEXT)")
+        db.execSQL(
+            """CREATE TRIGGER ${NOTIFICATIONS}_ai AFTER INSERT ON $NOTIFICATIONS BEGIN
+                INSERT INTO $FTS(docid, $TITLE, $TEXT) VALUES (new.$ID, new.$TITLE, new.$TEXT);
+            END"""
+        )
+        db.execSQL(
+            """CREATE TRIGGER ${NOTIFICATIONS}_bd BEFORE DELETE ON $NOTIFICATIONS BEGIN
+                DELETE FROM $FTS WHERE docid = old.$ID;
+            END"""
+        )
+    }
+
+    override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+        // history is not precious, start over
+        db.execSQL("DROP TABLE IF EXISTS $FTS")
+        db.execSQL("DROP TABLE IF EXISTS $ICONS")
+        db.execSQL("DROP TABLE IF EXISTS $NOTIFICATIONS")
+        onCreate(db)
+    }
+
+    companion object {
+        private const val NAME = "notification_history.db"
+        private const val VERSION = 1
+
+        const val NOTIFICATIONS = "notifications"
+        const val ICONS = "icons"
+        const val FTS = "notifications_fts"
+
+        const val ID = "_id"
+        const val PACKAGE = "package"
+        const val NOTIFICATION_ID = "notification_id"
+        const val POSTED_TIME = "posted_time"
+        const val ONGOING = "ongoing"
+        const val TITLE = "title"
+        const val TEXT = "text"
+        const val TICKER = "ticker"
+        const val ICON_HASH = "icon_hash"
+        const val SIZE = "size"
+
+        const val HASH = "hash"
+        const val DATA = "data"
+    }
+}
@@ -1,32 +1,226 @@
 package com.damn.anotherglass.extensions.notifications.filter
 
-import com.damn.anotherglass.shared.notifications.NotificationData // Import your class
-import java.util.ArrayDeque
+import android.content.ContentValues
+import android.content.Context
+import android.database.Cursor
+import android.database.sqlite.SQLiteDatabase
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.DATA
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.FTS
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.HASH
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.ICONS
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.ICON_HASH
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.ID
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.NOTIFICATIONS
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.NOTIFICATION_ID
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.ONGOING
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.PACKAGE
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.POSTED_TIME
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.SIZE
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.TEXT
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.TICKER
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryDatabase.Companion.TITLE
+import com.damn.anotherglass.shared.blob.Blobs
+import com.damn.anotherglass.shared.notifications.NotificationData
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.SharedFlow
 
+/**
+ * Notification history, kept on disk and trimmed by size (oldest go first).
+ * Pages go newest first, [added] lets UI put new entries on top without reloading.
+ * Calls do disk IO, keep them off the main thread.
+ */
 object NotificationHistoryRepository {
 
-    private const val MAX_HISTORY_SIZE = 100
+    private const val MAX_HISTORY_BYTES = 4L * 1024 * 1024
+    private const val ROW_OVERHEAD = 64 // ids, times, index entries
+    private const val TRIM_BATCH = 32
+    const val PAGE_SIZE = 50
 
-    private val notificationHistory: ArrayDeque<NotificationData> = ArrayDeque(MAX_HISTORY_SIZE)
+    data class Record(val rowId: Long, val notification: NotificationData)
 
-    fun addNotification(item: NotificationData) {
+    @Volatile
+    private var sDatabase: NotificationHistoryDatabase? = null
+
+    // rows and icons, -1 until counted
+    private var mTotalBytes = -1L
+
+    private val mAdded = MutableSharedFlow<Record>(
+        extraBufferCapacity = PAGE_SIZE,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    )
+
+    val added: SharedFlow<Record>
+        get() = mAdded
+
+    private fun database(context: Context): SQLiteDatabase {
+        val helper = sDatabase ?: synchronized(this) {
+            sDatabase ?: NotificationHistoryDatabase(context.applicationContext).also { sDatabase = it }
+        }
+        return helper.writableDatabase
+    }
+
+    /**
+     * @param icon icon bytes, notification itself may already have them replaced with a blob reference
+     */
+    fun addNotification(context: Context, item: NotificationData, icon: ByteArray? = item.icon) {
         if (item.action != NotificationData.Action.Posted) return
-        synchronized(notificationHistory) {
-            if (notificationHistory.any { it.id == item.id }) {
-                return
+        val db = database(context)
+        val iconHash = icon?.let { Blobs.hash(it) }
+        val size = rowSize(item)
+        val record = synchronized(this) {
+            if (mTotalBytes < 0) mTotalBytes = countBytes(db)
+            var added = 0L
+            var rowId = -1L
+            db.beginTransaction()
+            try {
+                rowId = db.insertWithOnConflict(NOTIFICATIONS, null, ContentValues().apply {
+                    put(PACKAGE, item.packageName ?: "")
+                    put(NOTIFICATION_ID, item.id)
+                    put(POSTED_TIME, item.postedTime)
+                    put(ONGOING, item.isOngoing)
+                    put(TITLE, item.title)
+                    put(TEXT, item.text)
+                    put(TICKER, item.tickerText)
+                    put(ICON_HASH, iconHash)
+                    put(SIZE, size)
+                }, SQLiteDatabase.CONFLICT_IGNORE)
+                if (-1L != rowId) {
+                    added += size
+                    if (null != icon && -1L != db.insertWithOnConflict(ICONS, null, ContentValues().apply {
+                            put(HASH, iconHash)
+                            put(DATA, icon)
+                            put(SIZE, icon.size)
+                        }, SQLiteDatabase.CONFLICT_IGNORE)) {
+                        added += icon.size
+                    }
+                }
+                db.setTransactionSuccessful()
+            } finally {
+                db.endTransaction()
             }
-            if (notificationHistory.size >= MAX_HISTORY_SIZE) {
-                notificationHistory.removeLast()
+            if (-1L == rowId) return // already there
+            mTotalBytes += added
+            if (mTotalBytes > MAX_HISTORY_BYTES) trim(db)
+            Record(rowId, historyData(item, iconHash))
+        }
+        mAdded.tryEmit(record)
+    }
+
+    /**
+     * @param before row id of the last record of previous page, Long.MAX_VALUE for the first page
+     * @param query words to look for in title and text, prefix match
+     */
+    fun getPage(
+        context: Context,
+        before: Long = Long.MAX_VALUE,
+        query: String? = null,
+        limit: Int = PAGE_SIZE
+    ): List<Record> {
+        val match = query?.let { ftsQuery(it) }
+        val selection = StringBuilder("$ID < ?")
+        val args = mutableListOf(before.toString())
+        if (null != match) {
+            selection.append(" AND $ID IN (SELECT docid FROM $FTS WHERE $FTS MATCH ?)")
+            args += match
+        }
+        return database(context).query(
+            NOTIFICATIONS,
+            arrayOf(ID, PACKAGE, NOTIFICATION_ID, POSTED_TIME, ONGOING, TITLE, TEXT, TICKER, ICON_HASH),
+            selection.toString(),
+            args.toTypedArray(),
+            null, null,
+            "$ID DESC",
+            limit.toString()
+        ).use { cursor ->
+            val page = ArrayList<Record>(cursor.count)
+            while (cursor.moveToNext()) page += readRecord(cursor)
+            page
+        }
+    }
+
+    fun getIcon(context: Context, hash: String): ByteArray? =
+        database(context).query(ICONS, arrayOf(DATA), "$HASH = ?", arrayOf(hash), null, null, null)
+            .use { if (it.moveToFirst()) it.getBlob(0) else null }
+
+    fun clearHistory(context: Context) {
+        val db = database(context)
+        synchronized(this) {
+            db.beginTransaction()
+            try {
+                db.delete(NOTIFICATIONS, null, null)
+                db.delete(ICONS, null, null)
+                db.setTransactionSuccessful()
+            } finally {
+                db.endTransaction()
             }
-            notificationHistory.addFirst(item)
+            mTotalBytes = 0
         }
     }
 
-    fun getHistory(): List<NotificationData> = synchronized(notificationHistory) {
-        return ArrayList(notificationHistory)
+    // drop oldest rows until we fit, icons go when nothing refers to them
+    private fun trim(db: SQLiteDatabase) {
+        while (mTotalBytes > MAX_HISTORY_BYTES) {
+            val lastId = db.query(
+                NOTIFICATIONS, arrayOf(ID), null, null, null, null,
+                "$ID ASC", TRIM_BATCH.toString()
+            ).use { if (it.moveToLast()) it.getLong(0) else null } ?: break
+            db.beginTransaction()
+            try {
+                db.delete(NOTIFICATIONS, "$ID <= ?", arrayOf(lastId.toString()))
+                db.delete(ICONS, "$HASH NOT IN (SELECT $ICON_HASH FROM $NOTIFICATIONS WHERE $ICON_HASH IS NOT NULL)", null)
+                db.setTransactionSuccessful()
+            } finally {
+                db.endTransaction()
+            }
+            mTotalBytes = countBytes(db)
+        }
     }
 
-    fun clearHistory() = synchronized(notificationHistory) {
-        notificationHistory.clear()
+    private fun countBytes(db: SQLiteDatabase): Long {
+        fun sum(table: String) = db.rawQuery("SELECT TOTAL($SIZE) FROM $table", null)
+            .use { if (it.moveToFirst()) it.getLong(0) else 0L }
+        return sum(NOTIFICATIONS) + sum(ICONS)
     }
+
+    private fun rowSize(item: NotificationData): Int =
+        ROW_OVERHEAD + 2 * ((item.packageName?.length ?: 0) +
+                (item.title?.length ?: 0) +
+                (item.text?.length ?: 0) +
+                (item.tickerText?.length ?: 0))
+
+    // FTS syntax errors are not user's problem: keep only words, and match them by prefix
+    private fun ftsQuery(query: String): String? =
+        query.split(Regex("\\s+"))
+            .map { word -> word.filter { it.isLetterOrDigit() } }
+            .filter { it.isNotEmpty() }
+            .joinToString(" ") { "$it*" }
+            .ifEmpty { null }
+
+    private fun historyData(item: NotificationData, iconHash: String?) = NotificationData().apply {
+        action = NotificationData.Action.Posted
+        id = item.id
+        packageName = item.packageName
+        postedTime = item.postedTime
+        isOngoing = item.isOngoing
+        title = item.title
+        text = item.text
+        tickerText = item.tickerText
+        this.iconHash = iconHash
+    }
+
+    private fun readRecord(cursor: Cursor) = Record(
+        cursor.getLong(0),
+        NotificationData().apply {
+            action = NotificationData.Action.Posted
+            packageName = cursor.getString(1)
+            id = cursor.getInt(2)
+            postedTime = cursor.getLong(3)
+            isOngoing = cursor.getInt(4) != 0
+            title = cursor.getString(5)
+            text = cursor.getString(6)
+            tickerText = cursor.getString(7)
+            iconHash = cursor.getString(8)
+        }
+    )
 }
@@ -1,15 +1,36 @@
 package com.damn.anotherglass.extensions.notifications.filter
 
+import android.content.ContentValues
 import android.content.Context
+import android.database.DatabaseUtils
+import android.database.sqlite.SQLiteDatabase
 import androidx.datastore.preferences.core.edit
 import androidx.datastore.preferences.core.stringPreferencesKey
 import androidx.datastore.preferences.preferencesDataStore
 import com.applicaster.xray.core.Logger
+import com.damn.anotherglass.extensions.notifications.filter.FilterDatabase.Companion.DATA
+import com.damn.anotherglass.extensions.notifications.filter.FilterDatabase.Companion.FILTERS
+import com.damn.anotherglass.extensions.notifications.filter.FilterDatabase.Companion.ID
+import com.damn.anotherglass.extensions.notifications.filter.FilterDatabase.Companion.POSITION
 import com.google.gson.Gson
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonWriter
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.firstOrNull
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.StringWriter
 
+// filters used to be a single JSON blob in DataStore, only read once to move them to FilterDatabase
 private val Context.filterDataStore by preferencesDataStore(name = "user_filters")
 private val FILTERS_KEY = stringPreferencesKey("notification_filters_list")
 private val gson = Gson()
@@ -42,64 +63,203 @@ fun IFilterRepository.Companion.from(context: Context): IFilterRepository = obje
         UserFilterRepository.deleteFilter(context, filterId)
 }
 
+// what was changed by the last write
+sealed class FilterChange {
+    class Upserted(val filter: NotificationFilter) : FilterChange()
+    class Removed(val filterId: String) : FilterChange()
+    object Reset : FilterChange() // anything could have changed
+}
+
+/**
+ * @param version incremented by one on every write, if a consumer has seen version - 1
+ * it only needs to apply [change], otherwise it has missed something and should start over
+ */
+class FilterSet(
+    val filters: List<NotificationFilter>,
+    val version: Long,
+    val change: FilterChange
+)
+
+/**
+ * User filters, one database row per filter: add, update and delete touch only that filter.
+ * Current list is kept in memory and published with the change that produced it, see [FilterSet].
+ */
 object UserFilterRepository {
 
-    private val logger = Logger.get("UserFilterRepository")
+    private const val TAG = "UserFilterRepository"
+
+    private val logger = Logger.get(TAG)
+
+    @Volatile
+    private var sDatabase: FilterDatabase? = null
+
+    // writes are serialized, null until loaded
+    private val mLock = Mutex()
+    private val mFilters = MutableStateFlow<FilterSet?>(null)
+
+    private fun database(context: Context): SQLiteDatabase {
+        val helper = sDatabase ?: synchronized(this) {
+            sDatabase ?: FilterDatabase(context.applicationContext).also { sDatabase = it }
+        }
+        return helper.writableDatabase
+    }
+
+    fun getFilterSetFlow(context: Context): Flow<FilterSet> = flow {
+        load(context)
+        emitAll(mFilters.filterNotNull())
+    }
+
+    fun getFiltersFlow(context: Context): Flow<List<NotificationFilter>> =
+        getFilterSetFlow(context).map { it.filters }
+
+    suspend fun saveFilters(context: Context, filters: List<NotificationFilter>) =
+        modify(context) { db, _ ->
+            db.delete(FILTERS, null, null)
+            filters.forEachIndexed { position, filter -> insert(db, filter, position) }
+            filters.toList() to FilterChange.Reset
+        }
+
+    suspend fun addFilter(context: Context, newFilter: NotificationFilter) =
+        modify(context) { db, current ->
+            val position = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX($POSITION), -1) + 1 FROM $FILTERS", null)
+            insert(db, newFilter, position.toInt())
+            current + newFilter to FilterChange.Upserted(newFilter)
+        }
+
+    suspend fun updateFilter(context: Context, updatedFilter: NotificationFilter) =
+        modify(context) { db, current ->
+            val index = current.indexOfFirst { it.id == updatedFilter.id }
+            if (index == -1) return@modify null
+            db.update(FILTERS, ContentValues().apply {
+                put(DATA, gson.toJson(updatedFilter))
+            }, "$ID = ?", arrayOf(updatedFilter.id))
+            current.toMutableList().also { it[index] = updatedFilter } to FilterChange.Upserted(updatedFilter)
+        }
+
+    suspend fun deleteFilter(context: Context, filterId: String) =
+        modify(context) { db, current ->
+            if (0 == db.delete(FILTERS, "$ID = ?", arrayOf(filterId))) return@modify null
+            current.filter { it.id != filterId } to FilterChange.Removed(filterId)
+        }
 
-    suspend fun saveFilters(context: Context, filters: List<NotificationFilter>) {
-        val jsonString = gson.toJson(Filters(filters))
-        context.filterDataStore.edit { preferences ->
-            preferences[FILTERS_KEY] = jsonString
+    suspend fun exportFilters(context: Context): String {
+        val filters = getFiltersFlow(context).first()
+        return withContext(Dispatchers.IO) {
+            val out = StringWriter()
+            JsonWriter(out).use { writer ->
+                writer.beginObject().name("filters").beginArray()
+                filters.forEach { gson.toJson(it, NotificationFilter::class.java, writer) }
+                writer.endArray().endObject()
+            }
+            out.toString()
         }
     }
 
-    fun getFiltersFlow(context: Context): Flow<List<NotificationFilter>> {
-        return context.filterDataStore.data.map { preferences ->
-            preferences[FILTERS_KEY]
-                ?.let {
-                    try {
-                        gson.fromJson(it, Filters::class.java)
-                    } catch (e: Exception) {
-                        context.filterDataStore.edit { it.clear() }
-                        logger.e("UserFilterRepository").exception(e).message("Error parsing filters, data will be dropped")
-                        return@let null
+    /**
+     * Replaces current filters with ones from [Filters] JSON, read one filter at a time
+     * and written in a single transaction: nothing changes if the file is broken.
+     */
+    suspend fun importFilters(context: Context, input: InputStream) =
+        modify(context) { db, _ ->
+            db.delete(FILTERS, null, null)
+            val imported = ArrayList<NotificationFilter>()
+            val ids = HashSet<String>()
+            // not closed, stream belongs to the caller
+            val reader = JsonReader(InputStreamReader(input, Charsets.UTF_8))
+            reader.beginObject()
+            while (reader.hasNext()) {
+                if (reader.nextName() != "filters") {
+                    reader.skipValue()
+                    continue
+                }
+                reader.beginArray()
+                while (reader.hasNext()) {
+                    val filter: NotificationFilter = gson.fromJson(reader, NotificationFilter::class.java)
+                    if (!ids.add(filter.id)) {
+                        logger.w(TAG).message("Duplicate filter ${filter.id} skipped")
+                        continue
                     }
+                    insert(db, filter, imported.size)
+                    imported += filter
                 }
-                ?.filters
-                ?: emptyList()
+                reader.endArray()
+            }
+            reader.endObject()
+            imported to FilterChange.Reset
         }
-    }
 
-    // --- Helper functions to add, update, delete individual filters ---
-    suspend fun addFilter(context: Context, newFilter: NotificationFilter) {
-        val currentFilters = getFiltersFlow(context).firstOrNull()?.toMutableList() ?: mutableListOf()
-        currentFilters.add(newFilter)
-        saveFilters(context, currentFilters)
+    private suspend fun load(context: Context) {
+        if (null != mFilters.value) return
+        mLock.withLock {
+            if (null != mFilters.value) return
+            withContext(Dispatchers.IO) {
+                val db = database(context)
+                migrate(context, db)
+                mFilters.value = FilterSet(readAll(db), 0, FilterChange.Reset)
+            }
+        }
     }
 
-    suspend fun updateFilter(context: Context, updatedFilter: NotificationFilter) {
-        val currentFilters = getFiltersFlow(context).firstOrNull()?.toMutableList() ?: mutableListOf()
-        val index = currentFilters.indexOfFirst { it.id == updatedFilter.id }
-        if (index != -1) {
-            currentFilters[index] = updatedFilter
-            saveFilters(context, currentFilters)
+    // block runs in a transaction, returns new list and what has changed, or null if nothing did
+    private suspend fun modify(
+        context: Context,
+        block: (SQLiteDatabase, List<NotificationFilter>) -> Pair<List<NotificationFilter>, FilterChange>?
+    ) {
+        load(context)
+        mLock.withLock {
+            withContext(Dispatchers.IO) {
+                val db = database(context)
+                val current = mFilters.value!!
+                db.beginTransaction()
+                val update = try {
+                    block(db, current.filters).also { db.setTransactionSuccessful() }
+                } finally {
+                    db.endTransaction()
+                }
+                if (null != update) {
+                    mFilters.value = FilterSet(update.first, current.version + 1, update.second)
+                }
+            }
         }
     }
 
-    suspend fun deleteFilter(context: Context, filterId: String) {
-        val currentFilters = getFiltersFlow(context).firstOrNull()?.toMutableList() ?: mutableListOf()
-        currentFilters.removeAll { it.id == filterId }
-        saveFilters(context, currentFilters)
+    private fun insert(db: SQLiteDatabase, filter: NotificationFilter, position: Int) {
+        db.insertWithOnConflict(FILTERS, null, ContentValues().apply {
+            put(ID, filter.id)
+            put(POSITION, position)
+            put(DATA, gson.toJson(filter))
+        }, SQLiteDatabase.CONFLICT_REPLACE)
     }
 
-    suspend fun exportFilters(context: Context): String =
-        getFiltersFlow(context).firstOrNull()?.let { filters ->
-            gson.toJson(Filters(filters))
-        } ?: ""
+    // a broken row only costs that filter, not the whole list
+    private fun readAll(db: SQLiteDatabase): List<NotificationFilter> =
+        db.query(FILTERS, arrayOf(ID, DATA), null, null, null, null, "$POSITION ASC").use { cursor ->
+            val filters = ArrayList<NotificationFilter>(cursor.count)
+            while (cursor.moveToNext()) {
+                try {
+                    filters += gson.fromJson(cursor.getString(1), NotificationFilter::class.java)
+                } catch (e: Exception) {
+                    logger.e(TAG).exception(e).message("Error parsing filter ${cursor.getString(0)}, skipped")
+                }
+            }
+            filters
+        }
 
-    suspend fun importFilters(context: Context, json: String) {
-        // for now just replace current ones
-        val filters = gson.fromJson(json, Filters::class.java)
-        saveFilters(context, filters.filters)
+    private suspend fun migrate(context: Context, db: SQLiteDatabase) {
+        val legacy = context.filterDataStore.data.first()[FILTERS_KEY] ?: return
+        val filters = try {
+            gson.fromJson(legacy, Filters::class.java).filters
+        } catch (e: Exception) {
+            logger.e(TAG).exception(e).message("Error parsing stored filters, they will be dropped")
+            emptyList()
+        }
+        db.beginTransaction()
+        try {
+            filters.forEachIndexed { position, filter -> insert(db, filter, position) }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+        context.filterDataStore.edit { it.remove(FILTERS_KEY) }
     }
-}
\ No newline at end of file
+}
@@ -43,8 +43,10 @@ import com.damn.anotherglass.core.ConnectedDevice
 import com.damn.anotherglass.core.GlassService
 import com.damn.anotherglass.core.Settings
 import com.damn.anotherglass.debug.DbgNotifications
+import com.damn.anotherglass.extensions.notifications.NotificationThrottle
 import com.damn.anotherglass.logging.LogActivity
 import com.damn.anotherglass.shared.device.BatteryStatusData
+import com.damn.anotherglass.shared.device.ReconnectStatsData
 import com.damn.anotherglass.shared.rpc.RPCMessage
 import com.damn.anotherglass.ui.AppRoute
 import com.damn.anotherglass.ui.MainActivity
@@ -55,6 +57,10 @@ import com.damn.anotherglass.ui.theme.AnotherGlassTheme
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 
+// choices for the notification throttle, ms
+private val THROTTLE_WINDOWS = listOf(0L, 500L, NotificationThrottle.DEFAULT_WINDOW, 3000L)
+private const val MAX_SUPPRESSED_SHOWN = 3
+
 @OptIn(ExperimentalMaterial3Api::class)
 @Composable
 fun MainScreen(
@@ -174,6 +180,8 @@ private fun OptionToggles(
     val removeNotificationEnabled =
         remember { mutableStateOf(DbgNotifications.notificationId > 0) }
 
+    val throttleWindow by settings.notificationThrottleWindow.observeAsState(NotificationThrottle.DEFAULT_WINDOW)
+
     // GPS Toggle
     SwitchRow(
         label = stringResource(id = R.string.lbl_enable_gps),
@@ -186,6 +194,38 @@ private fun OptionToggles(
         checked = isNotificationsEnabled,
         onCheckedChange = { settings.setNotificationsEnabled(it) })
 
+    if (isNotificationsEnabled) {
+        Row(
+            verticalAlignment = Alignment.CenterVertically,
+            horizontalArrangement = Arrangement.SpaceBetween,
+            modifier = Modifier.fillMaxWidth()
+        ) {
+            Text(
+                stringResource(id = R.string.lbl_notification_throttle),
+                modifier = Modifier.weight(1f)
+            )
+            MultiChoiceSegmentedButtonRow {
+                THROTTLE_WINDOWS.forEachIndexed { index, window ->
+                    SegmentedButton(
+                        shape = SegmentedButtonDefaults.itemShape(
+                            index = index,
+                            count = THROTTLE_WINDOWS.size
+                        ),
+                        checked = throttleWindow == window,
+                        onCheckedChange = { settings.setNotificationThrottleWindow(window) },
+                        label = {
+                            Text(
+                                if (0L == window) stringResource(id = R.string.lbl_notification_throttle_off)
+                                else stringResource(id = R.string.lbl_notification_throttle_s, window / 1000f)
+                            )
+                        },
+                        icon = {})
+                }
+            }
+        }
+        serviceController?.getService()?.let { SuppressedNotifications(it) }
+    }
+
     if (settings.hostMode.value == Settings.HostMode.WiFi) {
         Row(
             verticalAlignment = Alignment.CenterVertically,
@@ -262,10 +302,28 @@ private fun OptionToggles(
     }
 }
 
+@Composable
+private fun SuppressedNotifications(service: GlassService) {
+    val counts by service.suppressedNotifications.collectAsState()
+    if (counts.isEmpty()) return
+    val text = counts.entries
+        .sortedByDescending { it.value }
+        .take(MAX_SUPPRESSED_SHOWN)
+        .joinToString(", ") { "${it.key}: ${it.value}" }
+    Column(modifier = Modifier.fillMaxWidth()) {
+        Text(
+            stringResource(id = R.string.lbl_suppressed_notifications),
+            style = MaterialTheme.typography.bodyMedium
+        )
+        Text(text, style = MaterialTheme.typography.bodySmall)
+    }
+}
+
 @Composable
 private fun DeviceStatusCard(device: com.damn.anotherglass.core.ConnectedDevice) {
     val deviceName by device.name.collectAsState()
     val batteryStatus by device.batteryStatus.collectAsState()
+    val reconnectStats by device.reconnectStats.collectAsState()
 
     HorizontalDivider(modifier = Modifier.padding(vertical = 8.dp))
 
@@ -281,6 +339,9 @@ private fun DeviceStatusCard(device: com.damn.anotherglass.core.ConnectedDevice)
                 "${it.level}% ${if (it.isCharging) "⚡" else ""}"
             } ?: "N/A"
             Text(text = "Battery: $batteryText")
+            reconnectStats?.let {
+                Text(text = "Reconnect: ${it.lastReconnectTime} ms, average ${it.averageReconnectTime} ms (${it.reconnectCount})")
+            }
         }
     }
 }
@@ -297,13 +358,15 @@ fun DefaultPreview() {
                 override fun setGPSEnabled(enabled: Boolean) = Unit
                 override fun setNotificationsEnabled(enabled: Boolean) = Unit
                 override fun setMusicExtensionEnabled(enabled: Boolean) = Unit
+                override fun setNotificationThrottleWindow(window: Long) = Unit
             },
             object : IServiceController {
                 override val connectedDevice: StateFlow<ConnectedDevice?>
                     get() = MutableStateFlow(
                         ConnectedDevice(
                             MutableStateFlow("Stub Device"),
-                            MutableStateFlow(BatteryStatusData(75, false))
+                            MutableStateFlow(BatteryStatusData(75, false)),
+                            MutableStateFlow(ReconnectStatsData(1200, 1500, 3))
                         )
                     )
                 override fun startService() = Unit
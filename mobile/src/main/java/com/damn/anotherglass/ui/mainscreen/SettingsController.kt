@@ -3,6 +3,7 @@ package com.damn.anotherglass.ui.mainscreen
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
 import com.damn.anotherglass.core.Settings
+import com.damn.anotherglass.extensions.notifications.NotificationThrottle
 
 abstract class SettingsController {
     open val isServiceRunning: LiveData<Boolean> = MutableLiveData(true)
@@ -10,10 +11,12 @@ abstract class SettingsController {
     open val notificationsEnabled: LiveData<Boolean> = MutableLiveData(true)
     open val isGPSEnabled: LiveData<Boolean> = MutableLiveData(true)
     open val isMusicExtensionEnabled: LiveData<Boolean> = MutableLiveData(true)
+    open val notificationThrottleWindow: LiveData<Long> = MutableLiveData(NotificationThrottle.DEFAULT_WINDOW)
 
     abstract fun setServiceRunning(checked: Boolean)
     abstract fun setHostMode(mode: Settings.HostMode)
     abstract fun setGPSEnabled(enabled: Boolean)
     abstract fun setNotificationsEnabled(enabled: Boolean)
     abstract fun setMusicExtensionEnabled(enabled: Boolean)
+    abstract fun setNotificationThrottleWindow(window: Long)
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import android.annotation.SuppressLint
 import android.app.Application
 import androidx.compose.foundation.clickable
 import androidx.compose.foundation.layout.Arrangement
+import androidx.compose.foundation.layout.Column
 import androidx.compose.foundation.layout.Row
 import androidx.compose.foundation.layout.Spacer
 import androidx.compose.foundation.layout.fillMaxSize
@@ -39,6 +40,7 @@ import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.res.stringResource
+import androidx.compose.ui.text.style.TextOverflow
 import androidx.compose.ui.tooling.preview.Preview
 import androidx.compose.ui.unit.dp
 import androidx.lifecycle.SavedStateHandle
@@ -47,6 +49,7 @@ import com.damn.anotherglass.R
 import com.damn.anotherglass.extensions.notifications.filter.ConditionType
 import com.damn.anotherglass.extensions.notifications.filter.FilterAction
 import com.damn.anotherglass.extensions.notifications.filter.FilterConditionItem
+import com.damn.anotherglass.extensions.notifications.filter.FilterSimulator
 import com.damn.anotherglass.extensions.notifications.filter.IFilterRepository
 import com.damn.anotherglass.extensions.notifications.filter.from
 import com.damn.anotherglass.ui.AppRoute
@@ -256,6 +259,37 @@ fun FilterEditScreen(
                     )
                 }
             }
+
+            // What it would have matched
+            item {
+                FilterPreviewView(viewModel.preview.value)
+            }
+        }
+    }
+}
+
+@Composable
+private fun FilterPreviewView(preview: FilterSimulator.Result?) {
+    Column(verticalArrangement = Arrangement.spacedBy(4.dp)) {
+        Text("Recent notifications", style = MaterialTheme.typography.titleMedium)
+        when {
+            null == preview -> Text("Checking history...", style = MaterialTheme.typography.bodySmall)
+            0 == preview.total -> Text("History is empty.", style = MaterialTheme.typography.bodySmall)
+            else -> {
+                Text(
+                    "Would match ${preview.matched} of ${preview.total}",
+                    style = MaterialTheme.typography.bodyMedium
+                )
+                preview.samples.forEach { notification ->
+                    Text(
+                        listOfNotNull(notification.title, notification.text).joinToString(": ")
+                            .ifEmpty { notification.packageName ?: "" },
+                        style = MaterialTheme.typography.bodySmall,
+                        maxLines = 1,
+                        overflow = TextOverflow.Ellipsis
+                    )
+                }
+            }
         }
     }
 }
@@ -3,6 +3,7 @@ package com.damn.anotherglass.ui.notifications.editfilter
 import android.content.Context
 import androidx.compose.runtime.mutableStateListOf
 import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.snapshotFlow
 import androidx.lifecycle.SavedStateHandle
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.ViewModelProvider
@@ -10,12 +11,20 @@ import androidx.lifecycle.viewModelScope
 import com.damn.anotherglass.extensions.notifications.filter.ConditionType
 import com.damn.anotherglass.extensions.notifications.filter.FilterAction
 import com.damn.anotherglass.extensions.notifications.filter.FilterConditionItem
+import com.damn.anotherglass.extensions.notifications.filter.FilterSimulator
 import com.damn.anotherglass.extensions.notifications.filter.IFilterRepository
 import com.damn.anotherglass.extensions.notifications.filter.NotificationFilter
+import com.damn.anotherglass.extensions.notifications.filter.NotificationHistoryRepository
 import com.damn.anotherglass.extensions.notifications.filter.from
+import com.damn.anotherglass.shared.notifications.NotificationData
 import com.damn.anotherglass.ui.AppRoute
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.debounce
 import kotlinx.coroutines.flow.firstOrNull
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import java.util.UUID
 import kotlin.io.encoding.Base64
 import kotlin.io.encoding.ExperimentalEncodingApi
@@ -28,7 +37,8 @@ data class FilterConditionVM(
 
 class FilterEditViewModel(
     savedStateHandle: SavedStateHandle,
-    private val filterRepository: IFilterRepository
+    private val filterRepository: IFilterRepository,
+    private val loadHistory: suspend () -> List<NotificationData> = { emptyList() }
 ) : ViewModel() {
 
     // --- State for the filter being edited ---
@@ -40,6 +50,9 @@ class FilterEditViewModel(
     val conditions = mutableStateListOf<FilterConditionVM>()
     val filterAction = mutableStateOf(FilterAction.BLOCK) // Add state for the action, default to BLOCK
 
+    // what the filter being edited would match in recent history, null until first run
+    val preview = mutableStateOf<FilterSimulator.Result?>(null)
+
     val availableConditionTypes: List<ConditionType> = ConditionType.entries
     val availableFilterActions: List<FilterAction> = FilterAction.entries
 
@@ -101,9 +114,30 @@ class FilterEditViewModel(
                 }
                 filterAction.value = FilterAction.BLOCK // Or UserFilter().action
             }
+            startPreview()
         }
     }
 
+    // re-run against history as the filter is edited, but not on every keystroke
+    @OptIn(FlowPreview::class)
+    private suspend fun startPreview() {
+        val history = withContext(Dispatchers.IO) { loadHistory() }
+        snapshotFlow { buildFilter(PREVIEW_FILTER_ID) }
+            .debounce(PREVIEW_DEBOUNCE)
+            .collectLatest { filter -> preview.value = FilterSimulator.evaluate(filter, history) }
+    }
+
+    private fun buildFilter(id: String) = NotificationFilter(
+        id = id,
+        name = filterName.value.ifBlank { "Untitled Filter" },
+        packageName = packageName.value.ifBlank { null },
+        isEnabled = isFilterEnabled.value,
+        matchAllConditions = matchAllConditions.value,
+        // todo: filter empty conditions
+        conditions = conditions.map { it.condition },
+        action = filterAction.value
+    )
+
     private suspend fun loadFilter(id: String) {
         filterRepository.getFiltersFlow()
             .firstOrNull()
@@ -163,16 +197,7 @@ class FilterEditViewModel(
 
     fun saveFilter(onSaved: () -> Unit) {
         viewModelScope.launch {
-            val filterToSave = NotificationFilter( // Assuming UserFilter is available
-                id = filterId.value ?: UUID.randomUUID().toString(),
-                name = filterName.value.ifBlank { "Untitled Filter" },
-                packageName = packageName.value.ifBlank { null },
-                isEnabled = isFilterEnabled.value,
-                matchAllConditions = matchAllConditions.value,
-                // todo: filter empty conditions
-                conditions = conditions.map { it.condition },
-                action = filterAction.value
-            )
+            val filterToSave = buildFilter(filterId.value ?: UUID.randomUUID().toString())
 
             if (isNewFilter) {
                 filterRepository.addFilter(filterToSave)
@@ -185,6 +210,10 @@ class FilterEditViewModel(
 
     companion object {
 
+        private const val PREVIEW_FILTER_ID = "preview"
+        private const val PREVIEW_DEBOUNCE = 300L
+        private const val PREVIEW_HISTORY_SIZE = 5000
+
         private val ARG_TO_CONDITION_MAP = mapOf(
             AppRoute.FilterEditScreen.FILTER_EDIT_ARG_TITLE to ConditionType.TITLE_CONTAINS,
             AppRoute.FilterEditScreen.FILTER_EDIT_ARG_TEXT to ConditionType.TEXT_CONTAINS,
@@ -212,7 +241,10 @@ class FilterEditViewModel(
                     return FilterEditViewModel(
                         savedStateHandle,
                         IFilterRepository.from(context)
-                    ) as T
+                    ) {
+                        NotificationHistoryRepository.getPage(context, limit = PREVIEW_HISTORY_SIZE)
+                            .map { it.notification }
+                    } as T
                 }
                 throw IllegalArgumentException("Unknown ViewModel class")
             }
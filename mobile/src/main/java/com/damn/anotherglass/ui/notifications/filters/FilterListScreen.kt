@@ -56,6 +56,7 @@ fun FilterListScreen(
     importExportController: IImportExportController? = null
 ) {
     val filters by viewModel.filters.collectAsState()
+    val latencySummary by viewModel.latencySummary.collectAsState()
 
     Scaffold(
         topBar = {
@@ -136,6 +137,15 @@ fun FilterListScreen(
                 contentPadding = PaddingValues(16.dp),
                 verticalArrangement = Arrangement.spacedBy(10.dp)
             ) {
+                latencySummary?.let {
+                    item(key = "latency") {
+                        Text(
+                            it,
+                            style = MaterialTheme.typography.bodySmall,
+                            color = MaterialTheme.colorScheme.onSurfaceVariant
+                        )
+                    }
+                }
                 items(filters, key = { it.id }) { filterItem ->
                     FilterCard(
                         filterItem = filterItem,
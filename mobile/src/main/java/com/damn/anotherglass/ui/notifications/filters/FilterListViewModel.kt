@@ -1,22 +1,28 @@
 package com.damn.anotherglass.ui.notifications.filters
 
 import android.content.Context
+import android.text.format.DateUtils
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.ViewModelProvider
 import androidx.lifecycle.viewModelScope
 import com.damn.anotherglass.extensions.notifications.filter.FilterAction
+import com.damn.anotherglass.extensions.notifications.filter.FilterStatistics
 import com.damn.anotherglass.extensions.notifications.filter.IFilterRepository
 import com.damn.anotherglass.extensions.notifications.filter.NotificationFilter
 import com.damn.anotherglass.extensions.notifications.filter.from
 import com.damn.anotherglass.utility.AndroidAppDetailsProvider
 import com.damn.anotherglass.utility.AppDetails
 import com.damn.anotherglass.utility.AppDetailsProvider
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.firstOrNull
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 data class FilterListItemUI( // A UI-specific model for the list
     val id: String,
@@ -24,36 +30,52 @@ data class FilterListItemUI( // A UI-specific model for the list
     val isEnabled: Boolean,
     val description: String,
     val action: FilterAction,
-    val appDetails: AppDetails?
+    val appDetails: AppDetails?,
+    val statistics: String? = null
 )
 
 // todo: reorder, filter by app
 
 class FilterListViewModel(
     private val appDetailsProvider: AppDetailsProvider,
-    private val filterRepository: IFilterRepository) : ViewModel() {
+    private val filterRepository: IFilterRepository,
+    private val context: Context? = null // for FilterStatistics, not shown without it
+) : ViewModel() {
 
+    // statistics are re-read each time they are flushed
     val filters: StateFlow<List<FilterListItemUI>> =
-        filterRepository.getFiltersFlow()
-            .map { userFilters ->
-                userFilters.map { filter ->
-                    val appDetails = filter.packageName?.let { appDetailsProvider.getAppDetails(it) }
-                    FilterListItemUI(
-                        id = filter.id,
-                        name = filter.name,
-                        isEnabled = filter.isEnabled,
-                        description = formatFilterDescription(filter, appDetails),
-                        action = filter.action, // New helper
-                        appDetails = appDetails,
-                    )
-                }
+        combine(filterRepository.getFiltersFlow(), FilterStatistics.updates) { userFilters, _ ->
+            userFilters.map { filter ->
+                val appDetails = filter.packageName?.let { appDetailsProvider.getAppDetails(it) }
+                FilterListItemUI(
+                    id = filter.id,
+                    name = filter.name,
+                    isEnabled = filter.isEnabled,
+                    description = formatFilterDescription(filter, appDetails),
+                    action = filter.action, // New helper
+                    appDetails = appDetails,
+                    statistics = context?.let { formatStatistics(FilterStatistics.get(it, filter.id)) }
+                )
             }
+        }
+            .flowOn(Dispatchers.IO)
             .stateIn(
                 scope = viewModelScope,
                 started = SharingStarted.WhileSubscribed(5000),
                 initialValue = emptyList()
             )
 
+    // how long filtering takes per notification, null if nothing was filtered yet
+    val latencySummary: StateFlow<String?> =
+        FilterStatistics.updates
+            .map { context?.let { formatLatency(FilterStatistics.latency(it)) } }
+            .flowOn(Dispatchers.IO)
+            .stateIn(
+                scope = viewModelScope,
+                started = SharingStarted.WhileSubscribed(5000),
+                initialValue = null
+            )
+
     private fun formatFilterDescription(filter: NotificationFilter, appDetails: AppDetails?): String {
         val parts = mutableListOf<String>()
 
@@ -76,6 +98,7 @@ class FilterListViewModel(
     fun deleteFilter(filterId: String) {
         viewModelScope.launch {
             filterRepository.deleteFilter(filterId)
+            context?.let { withContext(Dispatchers.IO) { FilterStatistics.reset(it, filterId) } }
         }
     }
 
@@ -91,13 +114,38 @@ class FilterListViewModel(
     }
 
     companion object {
+
+        private fun formatStatistics(stats: FilterStatistics.FilterStats?): String {
+            if (null == stats || 0L == stats.hits) {
+                val checked = stats?.misses ?: 0
+                return if (0L == checked) "Never checked" else "Never matched ($checked checked)"
+            }
+            val last = DateUtils.getRelativeTimeSpanString(stats.lastMatch)
+            return "Matched ${stats.hits} of ${stats.hits + stats.misses}, last $last, ~${stats.averageNanos / 1000} µs"
+        }
+
+        private fun formatLatency(buckets: LongArray): String? {
+            val total = buckets.sum()
+            if (0L == total) return null
+            fun percentile(p: Double): String {
+                var count = 0L
+                for (i in buckets.indices) {
+                    count += buckets[i]
+                    if (count >= p * total) return "< ${1L shl i} µs"
+                }
+                return "≥ ${1L shl (buckets.size - 1)} µs"
+            }
+            return "Filtered $total notifications: median ${percentile(0.5)}, 95% ${percentile(0.95)}"
+        }
+
         class Factory(private val context: Context) : ViewModelProvider.Factory {
             override fun <T : ViewModel> create(modelClass: Class<T>): T {
                 if (modelClass.isAssignableFrom(FilterListViewModel::class.java)) {
                     @Suppress("UNCHECKED_CAST")
                     return FilterListViewModel(
                         AndroidAppDetailsProvider(context),
-                        IFilterRepository.from(context)
+                        IFilterRepository.from(context),
+                        context.applicationContext
                     ) as T
                 }
                 throw IllegalArgumentException("Unknown ViewModel class")
@@ -22,6 +22,7 @@ import androidx.compose.runtime.Composable
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.graphics.Color
+import androidx.compose.ui.graphics.ImageBitmap
 import androidx.compose.ui.res.stringResource
 import androidx.compose.ui.text.font.FontStyle
 import androidx.compose.ui.text.font.FontWeight
@@ -38,7 +39,8 @@ fun NotificationHistoryItemView(
     notification: NotificationData,
     appDetails: AppDetails?,
     formattedTime: String,
-    onCreateFilter: () -> Unit
+    onCreateFilter: () -> Unit,
+    icon: ImageBitmap? = null // notification icon as it was sent to Glass
 ) {
     Card(
         modifier = Modifier
@@ -81,25 +83,38 @@ fun NotificationHistoryItemView(
 
             Spacer(modifier = Modifier.height(4.dp))
 
-            if (!notification.title.isNullOrBlank()) {
-                Text(
-                    text = notification.title!!,
-                    style = MaterialTheme.typography.titleMedium,
-                    fontWeight = FontWeight.SemiBold,
-                    maxLines = 2,
-                    overflow = TextOverflow.Ellipsis
-                )
-                Spacer(modifier = Modifier.height(2.dp))
-            }
+            Row(verticalAlignment = Alignment.Top) {
+                icon?.let {
+                    Image(
+                        bitmap = it,
+                        contentDescription = "Notification Icon",
+                        modifier = Modifier
+                            .size(40.dp)
+                            .padding(end = 8.dp)
+                    )
+                }
+                Column(modifier = Modifier.weight(1f)) {
+                    if (!notification.title.isNullOrBlank()) {
+                        Text(
+                            text = notification.title!!,
+                            style = MaterialTheme.typography.titleMedium,
+                            fontWeight = FontWeight.SemiBold,
+                            maxLines = 2,
+                            overflow = TextOverflow.Ellipsis
+                        )
+                        Spacer(modifier = Modifier.height(2.dp))
+                    }
 
-            if (!notification.text.isNullOrBlank()) {
-                Text(
-                    text = notification.text!!,
-                    style = MaterialTheme.typography.bodyMedium,
-                    maxLines = 3,
-                    overflow = TextOverflow.Ellipsis
-                )
-                Spacer(modifier = Modifier.height(2.dp))
+                    if (!notification.text.isNullOrBlank()) {
+                        Text(
+                            text = notification.text!!,
+                            style = MaterialTheme.typography.bodyMedium,
+                            maxLines = 3,
+                            overflow = TextOverflow.Ellipsis
+                        )
+                        Spacer(modifier = Modifier.height(2.dp))
+                    }
+                }
             }
 
             if (!notification.tickerText.isNullOrBlank()
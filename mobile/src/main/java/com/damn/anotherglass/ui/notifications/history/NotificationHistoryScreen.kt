@@ -2,29 +2,39 @@ package com.damn.anotherglass.ui.notifications.history
 
 import android.annotation.SuppressLint
 import androidx.compose.foundation.layout.Box
+import androidx.compose.foundation.layout.Column
 import androidx.compose.foundation.layout.PaddingValues
 import androidx.compose.foundation.layout.fillMaxSize
+import androidx.compose.foundation.layout.fillMaxWidth
 import androidx.compose.foundation.layout.padding
 import androidx.compose.foundation.lazy.LazyColumn
 import androidx.compose.foundation.lazy.items
+import androidx.compose.foundation.lazy.rememberLazyListState
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.automirrored.filled.ArrowBack
 import androidx.compose.material.icons.filled.Delete
 import androidx.compose.material.icons.filled.Refresh
+import androidx.compose.material.icons.filled.Search
 import androidx.compose.material3.Divider
 import androidx.compose.material3.ExperimentalMaterial3Api
 import androidx.compose.material3.Icon
 import androidx.compose.material3.IconButton
 import androidx.compose.material3.MaterialTheme
+import androidx.compose.material3.OutlinedTextField
 import androidx.compose.material3.Scaffold
 import androidx.compose.material3.Text
 import androidx.compose.material3.TopAppBar
 import androidx.compose.material3.TopAppBarColors
 import androidx.compose.runtime.Composable
+import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.collectAsState
+import androidx.compose.runtime.derivedStateOf
 import androidx.compose.runtime.getValue
+import androidx.compose.runtime.produceState
+import androidx.compose.runtime.remember
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
+import androidx.compose.ui.graphics.ImageBitmap
 import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.res.stringResource
 import androidx.compose.ui.tooling.preview.Preview
@@ -44,6 +54,20 @@ fun NotificationHistoryScreen(
     viewModel: NotificationHistoryViewModel
 ) {
     val historyItems by viewModel.historyItems.collectAsState()
+    val query by viewModel.query.collectAsState()
+    val listState = rememberLazyListState()
+
+    // next page is requested a bit before the end is reached
+    val nearEnd by remember {
+        derivedStateOf {
+            val layoutInfo = listState.layoutInfo
+            val lastVisible = layoutInfo.visibleItemsInfo.lastOrNull()?.index ?: 0
+            lastVisible >= layoutInfo.totalItemsCount - LOAD_MORE_THRESHOLD
+        }
+    }
+    LaunchedEffect(nearEnd, historyItems.size) {
+        if (nearEnd) viewModel.loadMore()
+    }
 
     Scaffold(
         topBar = {
@@ -72,47 +96,65 @@ fun NotificationHistoryScreen(
             )
         }
     ) { paddingValues ->
-        if (historyItems.isEmpty()) {
-            Box(
-                modifier = Modifier
-                    .padding(paddingValues)
-                    .fillMaxSize(),
-                contentAlignment = Alignment.Center
-            ) {
-                Text(
-                    stringResource(R.string.lbl_no_notification_history),
-                    style = MaterialTheme.typography.bodyLarge
-                )
-            }
-        } else {
-            LazyColumn(
+        Column(
+            modifier = Modifier
+                .padding(paddingValues)
+                .fillMaxSize()
+        ) {
+            OutlinedTextField(
+                value = query,
+                onValueChange = { viewModel.setQuery(it) },
+                placeholder = { Text(stringResource(R.string.hint_search_notification_history)) },
+                leadingIcon = { Icon(Icons.Filled.Search, contentDescription = null) },
+                singleLine = true,
                 modifier = Modifier
-                    .padding(paddingValues)
-                    .fillMaxSize(),
-                contentPadding = PaddingValues(horizontal = 16.dp, vertical = 8.dp)
-            ) {
-                items(
-                    historyItems,
-                    key = { it.notification.id.toString() + it.notification.postedTime }) { item -> // Key needs to be unique enough
-                    NotificationHistoryItemView(
-                        notification = item.notification,
-                        appDetails = item.appDetails,
-                        formattedTime = viewModel.formatTimestamp(item.notification.postedTime),
-                        onCreateFilter = {
-                            // Pass the original notification ID (sbn.id)
-                            viewModel.onCreateFilterFromNotification(
-                                item.notification.id,
-                                navController
-                            )
-                        }
+                    .fillMaxWidth()
+                    .padding(horizontal = 16.dp, vertical = 8.dp)
+            )
+            if (historyItems.isEmpty()) {
+                Box(
+                    modifier = Modifier.fillMaxSize(),
+                    contentAlignment = Alignment.Center
+                ) {
+                    Text(
+                        stringResource(R.string.lbl_no_notification_history),
+                        style = MaterialTheme.typography.bodyLarge
                     )
-                    Divider(color = MaterialTheme.colorScheme.outlineVariant.copy(alpha = 0.5f))
+                }
+            } else {
+                LazyColumn(
+                    state = listState,
+                    modifier = Modifier.fillMaxSize(),
+                    contentPadding = PaddingValues(horizontal = 16.dp, vertical = 8.dp)
+                ) {
+                    items(historyItems, key = { it.rowId }) { item ->
+                        val iconHash = item.notification.iconHash
+                        val icon by produceState<ImageBitmap?>(null, iconHash) {
+                            value = iconHash?.let { viewModel.loadIcon(it) }
+                        }
+                        NotificationHistoryItemView(
+                            notification = item.notification,
+                            appDetails = item.appDetails,
+                            icon = icon,
+                            formattedTime = viewModel.formatTimestamp(item.notification.postedTime),
+                            onCreateFilter = {
+                                // Pass the original notification ID (sbn.id)
+                                viewModel.onCreateFilterFromNotification(
+                                    item.notification.id,
+                                    navController
+                                )
+                            }
+                        )
+                        Divider(color = MaterialTheme.colorScheme.outlineVariant.copy(alpha = 0.5f))
+                    }
                 }
             }
         }
     }
 }
 
+private const val LOAD_MORE_THRESHOLD = 10
+
 internal fun createNotificationData(
     action: NotificationData.Action,
     id: Int,
@@ -153,7 +195,8 @@ fun NotificationHistoryScreenPreview() {
                 "Hey, are you free for dinner tonight? Let me know what you think!",
                 "Alice: Hey there!"
             ),
-            AppDetails("Chat App", null)
+            AppDetails("Chat App", null),
+            1
         ),
         NotificationHistoryItem(
             createNotificationData(
@@ -166,13 +209,14 @@ fun NotificationHistoryScreenPreview() {
                 "Task 'Finalize Report' is now overdue. Please update its status or complete it as soon as possible.",
                 "Work: Task Overdue"
             ),
-            AppDetails("Work App", null)
+            AppDetails("Work App", null),
+            2
         )
     )
 
     // A Preview ViewModel or direct data for the preview
     val previewViewModel =
-        NotificationHistoryViewModel(AndroidAppDetailsProvider(LocalContext.current)) // In a real preview, you might mock its state
+        NotificationHistoryViewModel(LocalContext.current, AndroidAppDetailsProvider(LocalContext.current)) // In a real preview, you might mock its state
     previewViewModel.setHistoryItems(sampleNotifications) // Directly set for preview
 
     AnotherGlassTheme {
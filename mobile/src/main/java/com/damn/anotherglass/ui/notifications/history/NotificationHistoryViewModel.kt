@@ -1,6 +1,10 @@
 package com.damn.anotherglass.ui.notifications.history
 
 import android.content.Context
+import android.graphics.BitmapFactory
+import android.util.LruCache
+import androidx.compose.ui.graphics.ImageBitmap
+import androidx.compose.ui.graphics.asImageBitmap
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.ViewModelProvider
 import androidx.lifecycle.viewModelScope
@@ -11,47 +15,130 @@ import com.damn.anotherglass.ui.AppRoute
 import com.damn.anotherglass.utility.AndroidAppDetailsProvider
 import com.damn.anotherglass.utility.AppDetails
 import com.damn.anotherglass.utility.AppDetailsProvider
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import java.text.SimpleDateFormat
 import java.util.Date
 import java.util.Locale
 
 data class NotificationHistoryItem(
     val notification: NotificationData,
-    val appDetails: AppDetails?
+    val appDetails: AppDetails?,
+    val rowId: Long
 )
 
 class NotificationHistoryViewModel(
+    context: Context,
     private val appDetailsProvider: AppDetailsProvider
 ) : ViewModel() {
 
+    private val context = context.applicationContext
+
     private val _historyItems = MutableStateFlow<List<NotificationHistoryItem>>(emptyList())
 
     val historyItems: StateFlow<List<NotificationHistoryItem>> = _historyItems.asStateFlow()
 
+    private val _query = MutableStateFlow("")
+
+    val query: StateFlow<String> = _query.asStateFlow()
+
     private val timeFormat = SimpleDateFormat("MMM dd, HH:mm:ss", Locale.getDefault())
 
+    private var loading: Job? = null
+    private var endReached = false
+
+    // decoded icons from the history database, rows of the same app mostly share one
+    private val icons = LruCache<String, ImageBitmap>(ICON_CACHE_SIZE)
+
     init {
         loadHistory()
+        // new notifications go on top, no need to reload what we have
+        viewModelScope.launch {
+            NotificationHistoryRepository.added.collect { record ->
+                if (!matchesQuery(record.notification)) return@collect
+                val item = toItem(record)
+                _historyItems.update { current ->
+                    // first page may have picked it up already
+                    if ((current.firstOrNull()?.rowId ?: 0) >= record.rowId) current
+                    else listOf(item) + current
+                }
+            }
+        }
     }
 
     fun setHistoryItems(items: List<NotificationHistoryItem>) {
         _historyItems.value = items
     }
 
+    fun setQuery(query: String) {
+        _query.value = query
+        loadHistory()
+    }
+
     fun loadHistory() {
-        viewModelScope.launch {
-            _historyItems.value = NotificationHistoryRepository.getHistory()
-                .sortedByDescending { it.postedTime }
-                .map { notification ->
-                    val appDetails = notification.packageName?.let {
-                        appDetailsProvider.getAppDetails(it)
-                    }
-                    NotificationHistoryItem(notification, appDetails)
-                }
+        loading?.cancel()
+        endReached = false
+        // drop rows of the previous query right away, so only live inserts matching this one pile up meanwhile
+        _historyItems.value = emptyList()
+        loading = viewModelScope.launch {
+            val page = loadPage(Long.MAX_VALUE)
+            // live insert may have landed while the page was loading, it may or may not be in the page
+            _historyItems.update { live ->
+                (live + page).distinctBy { it.rowId }.sortedByDescending { it.rowId }
+            }
+        }
+    }
+
+    // called when list is scrolled close to the end
+    fun loadMore() {
+        if (endReached || true == loading?.isActive) return
+        val last = _historyItems.value.lastOrNull() ?: return
+        loading = viewModelScope.launch {
+            val page = loadPage(last.rowId)
+            // live inserts may have been added on top while the page was loading
+            _historyItems.update { it + page }
+        }
+    }
+
+    suspend fun loadIcon(hash: String): ImageBitmap? {
+        icons.get(hash)?.let { return it }
+        val icon = withContext(Dispatchers.IO) {
+            NotificationHistoryRepository.getIcon(context, hash)
+                ?.let { BitmapFactory.decodeByteArray(it, 0, it.size) }
+                ?.asImageBitmap()
+        } ?: return null
+        icons.put(hash, icon)
+        return icon
+    }
+
+    private suspend fun loadPage(before: Long): List<NotificationHistoryItem> {
+        val query = _query.value.ifBlank { null }
+        val page = withContext(Dispatchers.IO) {
+            NotificationHistoryRepository.getPage(context, before, query).map { toItem(it) }
+        }
+        endReached = page.size < NotificationHistoryRepository.PAGE_SIZE
+        return page
+    }
+
+    private fun toItem(record: NotificationHistoryRepository.Record): NotificationHistoryItem {
+        val appDetails = record.notification.packageName?.let {
+            appDetailsProvider.getAppDetails(it)
+        }
+        return NotificationHistoryItem(record.notification, appDetails, record.rowId)
+    }
+
+    // close enough to what full-text search does for pages
+    private fun matchesQuery(notification: NotificationData): Boolean {
+        val words = _query.value.split(Regex("\\s+")).filter { it.isNotEmpty() }
+        return words.all { word ->
+            true == notification.title?.contains(word, ignoreCase = true) ||
+                    true == notification.text?.contains(word, ignoreCase = true)
         }
     }
 
@@ -74,17 +161,19 @@ class NotificationHistoryViewModel(
 
     fun cleanHistory() {
         viewModelScope.launch {
-            NotificationHistoryRepository.clearHistory()
+            withContext(Dispatchers.IO) { NotificationHistoryRepository.clearHistory(context) }
             loadHistory()
         }
     }
 
     companion object {
+        private const val ICON_CACHE_SIZE = 64
+
         class Factory(private val context: Context) : ViewModelProvider.Factory {
             override fun <T : ViewModel> create(modelClass: Class<T>): T {
                 if (modelClass.isAssignableFrom(NotificationHistoryViewModel::class.java)) {
                     @Suppress("UNCHECKED_CAST")
-                    return NotificationHistoryViewModel(AndroidAppDetailsProvider(context)) as T
+                    return NotificationHistoryViewModel(context, AndroidAppDetailsProvider(context)) as T
                 }
                 throw IllegalArgumentException("Unknown ViewModel class")
             }
@@ -0,0 +1,103 @@
+package com.damn.anotherglass.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.max
+
+class BandwidthEstimatorTest {
+
+    // serial link behind a bounded socket buffer, Glass sends probes back after a fixed polling delay
+    private class Link(
+        val estimator: BandwidthEstimator,
+        val bytesPerSecond: Long,
+        val delay: Long
+    ) {
+        var now = 20 * SECOND
+        private var free = 0L // when link is done with everything written so far
+        private var echo = 0L
+        private var echoAt = 0L
+
+        fun write(bytes: Long) {
+            deliver()
+            val start = now
+            free = max(free, now) + transferTime(bytes)
+            now = max(now, free - transferTime(BUFFER)) // write blocks while the buffer is full
+            deliver()
+            val probe = estimator.onWrite(bytes, start, now)
+            if (0L != probe) {
+                free += transferTime(PROBE_BYTES)
+                echo = probe
+                echoAt = free + delay
+            }
+        }
+
+        fun idle(nanos: Long) {
+            now += nanos
+            deliver()
+        }
+
+        private fun deliver() {
+            if (0L == echo || echoAt > now) return
+            estimator.onEcho(echo, echoAt)
+            echo = 0
+        }
+
+        private fun transferTime(bytes: Long) = bytes * SECOND / bytesPerSecond
+    }
+
+    private fun Link.sendTiles(count: Int) {
+        // a few small messages first, like the hello exchange and acks
+        repeat(3) {
+            write(300L)
+            idle(11 * SECOND)
+        }
+        repeat(count) {
+            write(TILE)
+            idle(200 * MILLISECOND)
+        }
+        idle(60 * SECOND)
+    }
+
+    @Test
+    fun slowLinkLowersQuality() {
+        val estimator = BandwidthEstimator.forBluetooth().apply { enabled = true }
+        // everything fits in the socket buffer at once, timing writes would see a very fast link here
+        Link(estimator, 8 * 1024L, 150 * MILLISECOND).sendTiles(30)
+        assertTrue("${estimator.bytesPerSecond}", estimator.bytesPerSecond < 16 * 1024)
+        assertEquals(MediaQuality.Low, estimator.quality)
+    }
+
+    @Test
+    fun fastLinkRaisesQuality() {
+        val estimator = BandwidthEstimator.forBluetooth().apply { enabled = true }
+        Link(estimator, 2 * 1024 * 1024L, 150 * MILLISECOND).sendTiles(30)
+        assertEquals(MediaQuality.High, estimator.quality)
+    }
+
+    @Test
+    fun smallMessagesKeepInitialGuess() {
+        val estimator = BandwidthEstimator.forBluetooth().apply { enabled = true }
+        val initial = estimator.bytesPerSecond
+        val link = Link(estimator, 8 * 1024L, 150 * MILLISECOND)
+        repeat(20) {
+            link.write(300L)
+            link.idle(11 * SECOND)
+        }
+        assertEquals(initial, estimator.bytesPerSecond, 0.0)
+    }
+
+    @Test
+    fun noProbesUntilEnabled() {
+        val estimator = BandwidthEstimator.forWiFi()
+        assertEquals(0L, estimator.onWrite(TILE, 20 * SECOND, 20 * SECOND))
+    }
+
+    companion object {
+        private const val MILLISECOND = 1_000_000L
+        private const val SECOND = 1000 * MILLISECOND
+        private const val TILE = 15 * 1024L
+        private const val BUFFER = 64 * 1024L
+        private const val PROBE_BYTES = 60L
+    }
+}
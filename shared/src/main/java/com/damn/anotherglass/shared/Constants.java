@@ -5,4 +5,5 @@ import java.util.UUID;
 public class Constants {
     public static final UUID uuid = UUID.fromString("05f2934c-1e81-4554-bb08-44aa761afbfb");
     public static final int defaultPort = 9090;
+    public static final int discoveryPort = 9091; // UDP, see DiscoveryBeacon
 }
@@ -0,0 +1,6 @@
+package com.damn.anotherglass.shared.blob;
+
+// Glass asks for blob bytes it does not have in cache (BlobRequest), phone answers with BlobData
+public class BlobAPI {
+    public static final String ID = "Blob";
+}
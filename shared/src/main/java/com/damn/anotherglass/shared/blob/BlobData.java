@@ -0,0 +1,23 @@
+package com.damn.anotherglass.shared.blob;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+
+public class BlobData implements Serializable {
+
+    @SerializedName("hash")
+    public String hash;
+
+    // null if sender does not have the blob anymore
+    @SerializedName("data")
+    public byte[] data;
+
+    public BlobData() {
+    }
+
+    public BlobData(String hash, byte[] data) {
+        this.hash = hash;
+        this.data = data;
+    }
+}
@@ -0,0 +1,17 @@
+package com.damn.anotherglass.shared.blob;
+
+import androidx.annotation.Nullable;
+
+// Payload that carries a blob (icon, album art) either inline or as a content hash reference
+public interface BlobHolder {
+
+    @Nullable
+    byte[] getBlob();
+
+    void setBlob(@Nullable byte[] data);
+
+    @Nullable
+    String getBlobHash();
+
+    void setBlobHash(@Nullable String hash);
+}
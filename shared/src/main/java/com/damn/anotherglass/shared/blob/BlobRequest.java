@@ -0,0 +1,18 @@
+package com.damn.anotherglass.shared.blob;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+
+public class BlobRequest implements Serializable {
+
+    @SerializedName("hash")
+    public String hash;
+
+    public BlobRequest() {
+    }
+
+    public BlobRequest(String hash) {
+        this.hash = hash;
+    }
+}
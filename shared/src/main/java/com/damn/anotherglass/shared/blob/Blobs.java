@@ -0,0 +1,41 @@
+package com.damn.anotherglass.shared.blob;
+
+import androidx.annotation.NonNull;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class Blobs {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int HASH_LENGTH = 40;
+
+    // what hash() produces, anything else coming from the network must not be trusted as a file name
+    public static boolean isHash(@NonNull String hash) {
+        if (HASH_LENGTH != hash.length())
+            return false;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+                return false;
+        }
+        return true;
+    }
+
+    // content address of the blob: hex SHA-1 (not for security, just identity)
+    @NonNull
+    public static String hash(@NonNull byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            char[] chars = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-1 is always available on Android
+        }
+    }
+}
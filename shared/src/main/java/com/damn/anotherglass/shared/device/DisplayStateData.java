@@ -0,0 +1,47 @@
+package com.damn.anotherglass.shared.device;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+// Sent by Glass whenever display turns on/off or another card becomes visible,
+// phone holds back non-urgent traffic while nobody is looking
+public class DisplayStateData implements Serializable {
+
+    @SerializedName("screenOn")
+    public final boolean screenOn;
+
+    // simple name of the visible card, null if unknown or our UI is not in foreground
+    @SerializedName("card")
+    public final String card;
+
+    public DisplayStateData(boolean screenOn, String card) {
+        this.screenOn = screenOn;
+        this.card = card;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DisplayStateData that = (DisplayStateData) o;
+        return screenOn == that.screenOn && Objects.equals(card, that.card);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(screenOn, card);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "DisplayStateData{" +
+                "screenOn=" + screenOn +
+                ", card='" + card + '\'' +
+                '}';
+    }
+}
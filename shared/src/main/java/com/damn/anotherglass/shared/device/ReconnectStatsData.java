@@ -0,0 +1,41 @@
+package com.damn.anotherglass.shared.device;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+// Time it takes Glass to get the link back after losing it, sent once reconnected
+public class ReconnectStatsData implements Serializable {
+    public final long lastReconnectTime; // ms
+    public final long averageReconnectTime; // ms
+    public final int reconnectCount;
+
+    public ReconnectStatsData(long lastReconnectTime, long averageReconnectTime, int reconnectCount) {
+        this.lastReconnectTime = lastReconnectTime;
+        this.averageReconnectTime = averageReconnectTime;
+        this.reconnectCount = reconnectCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ReconnectStatsData that = (ReconnectStatsData) o;
+        return lastReconnectTime == that.lastReconnectTime
+                && averageReconnectTime == that.averageReconnectTime
+                && reconnectCount == that.reconnectCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lastReconnectTime, averageReconnectTime, reconnectCount);
+    }
+
+    @Override
+    public String toString() {
+        return "ReconnectStatsData{" +
+                "lastReconnectTime=" + lastReconnectTime +
+                ", averageReconnectTime=" + averageReconnectTime +
+                ", reconnectCount=" + reconnectCount +
+                '}';
+    }
+}
@@ -0,0 +1,77 @@
+package com.damn.anotherglass.shared.discovery;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Small UDP packet host broadcasts while waiting for a connection,
+// so clients can find it without guessing the address.
+public class DiscoveryBeacon implements Serializable {
+
+    public static final String MAGIC = "AnotherGlass";
+
+    private static final Gson gson = new Gson();
+
+    @SerializedName("magic")
+    public String magic = MAGIC;
+
+    @SerializedName("name")
+    public String name;
+
+    @SerializedName("address")
+    public String address;
+
+    @SerializedName("port")
+    public int port;
+
+    // supported service IDs (GPSServiceAPI.ID, NotificationsAPI.ID, etc.)
+    @SerializedName("capabilities")
+    public List<String> capabilities;
+
+    public DiscoveryBeacon() {
+    }
+
+    public DiscoveryBeacon(String name, String address, int port, List<String> capabilities) {
+        this.name = name;
+        this.address = address;
+        this.port = port;
+        this.capabilities = capabilities;
+    }
+
+    @NonNull
+    public byte[] toBytes() {
+        return gson.toJson(this).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // returns null if packet is not our beacon
+    @Nullable
+    public static DiscoveryBeacon fromBytes(byte[] data, int offset, int length) {
+        try {
+            String json = new String(data, offset, length, StandardCharsets.UTF_8);
+            DiscoveryBeacon beacon = gson.fromJson(json, DiscoveryBeacon.class);
+            if (null == beacon || !MAGIC.equals(beacon.magic))
+                return null;
+            return beacon;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "DiscoveryBeacon{" +
+                "name='" + name + '\'' +
+                ", address='" + address + '\'' +
+                ", port=" + port +
+                ", capabilities=" + capabilities +
+                '}';
+    }
+}
@@ -0,0 +1,44 @@
+package com.damn.anotherglass.shared.gps;
+
+import androidx.annotation.NonNull;
+
+// Where a fix would be after some time if it kept its speed and bearing.
+// Phone uses it to decide whether Glass can do without a new fix, Glass to fill the gaps between fixes.
+// Distances involved are small, flat earth around the fix is good enough.
+public class DeadReckoning {
+
+    public static final double EARTH_RADIUS = 6371000.0;
+
+    @NonNull
+    public static Location predict(@NonNull Location from, long millis) {
+        Location to = new Location();
+        double distance = from.speed * millis / 1000.0;
+        double bearing = Math.toRadians(from.bearing);
+        double latitude = Math.toRadians(from.latitude);
+        to.latitude = from.latitude + Math.toDegrees(distance * Math.cos(bearing) / EARTH_RADIUS);
+        to.longitude = from.longitude + Math.toDegrees(distance * Math.sin(bearing) / (EARTH_RADIUS * Math.cos(latitude)));
+        to.altitude = from.altitude;
+        to.speed = from.speed;
+        to.bearing = from.bearing;
+        to.accuracy = from.accuracy;
+        to.time = 0 != from.time ? from.time + millis : 0;
+        return to;
+    }
+
+    // meters, equirectangular approximation
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double x = Math.toRadians(longitude2 - longitude1) * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+        double y = Math.toRadians(latitude2 - latitude1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS;
+    }
+
+    public static double distance(@NonNull Location a, @NonNull Location b) {
+        return distance(a.latitude, a.longitude, b.latitude, b.longitude);
+    }
+
+    // smallest difference between two bearings, 0..180 degrees
+    public static float bearingDifference(float a, float b) {
+        float difference = Math.abs(a - b) % 360;
+        return difference > 180 ? 360 - difference : difference;
+    }
+}
@@ -9,4 +9,5 @@ public class Location implements Serializable {
     public float speed;
     public float bearing;
     public float accuracy;
+    public long time; // phone System.currentTimeMillis() of the fix, 0 if unknown
 }
@@ -0,0 +1,7 @@
+package com.damn.anotherglass.shared.map;
+
+// Glass asks phone for map tiles (MapTileRequest), phone fetches and caches them and answers with MapTile,
+// so maps work on Glass without its own internet connection
+public class MapAPI {
+    public static final String ID = "Map";
+}
@@ -0,0 +1,31 @@
+package com.damn.anotherglass.shared.map;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+
+public class MapTile implements Serializable {
+
+    @SerializedName("zoom")
+    public int zoom;
+
+    @SerializedName("x")
+    public int x;
+
+    @SerializedName("y")
+    public int y;
+
+    // encoded image (PNG or WebP), null if phone could not get it
+    @SerializedName("data")
+    public byte[] data;
+
+    public MapTile() {
+    }
+
+    public MapTile(int zoom, int x, int y, byte[] data) {
+        this.zoom = zoom;
+        this.x = x;
+        this.y = y;
+        this.data = data;
+    }
+}
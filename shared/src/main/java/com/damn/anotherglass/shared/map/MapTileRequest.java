@@ -0,0 +1,27 @@
+package com.damn.anotherglass.shared.map;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+
+// Web Mercator tile z/x/y
+public class MapTileRequest implements Serializable {
+
+    @SerializedName("zoom")
+    public int zoom;
+
+    @SerializedName("x")
+    public int x;
+
+    @SerializedName("y")
+    public int y;
+
+    public MapTileRequest() {
+    }
+
+    public MapTileRequest(int zoom, int x, int y) {
+        this.zoom = zoom;
+        this.x = x;
+        this.y = y;
+    }
+}
@@ -1,13 +1,18 @@
 package com.damn.anotherglass.shared.music;
 
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.blob.BlobHolder;
+
 import java.io.Serializable;
 
-public class MusicData implements Serializable {
+public class MusicData implements Serializable, BlobHolder {
     private static final long serialVersionUID = 1L;
 
     public String artist;
     public String track;
     public byte[] albumArt; // PNG or JPEG bytes
+    public String albumArtHash; // set instead of albumArt, see BlobAPI
     public boolean isPlaying;
     public long position;   // Current position in ms
     public long duration;   // Total duration in ms
@@ -25,4 +30,26 @@ public class MusicData implements Serializable {
         this.duration = duration;
         this.timestamp = System.currentTimeMillis();
     }
+
+    @Nullable
+    @Override
+    public byte[] getBlob() {
+        return albumArt;
+    }
+
+    @Override
+    public void setBlob(@Nullable byte[] data) {
+        albumArt = data;
+    }
+
+    @Nullable
+    @Override
+    public String getBlobHash() {
+        return albumArtHash;
+    }
+
+    @Override
+    public void setBlobHash(@Nullable String hash) {
+        albumArtHash = hash;
+    }
 }
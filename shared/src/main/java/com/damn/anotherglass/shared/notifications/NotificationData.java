@@ -1,10 +1,14 @@
 package com.damn.anotherglass.shared.notifications;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.blob.BlobHolder;
 
 import java.io.Serializable;
+import java.util.List;
 
-public class NotificationData implements Serializable {
+public class NotificationData implements Serializable, BlobHolder {
 
     public enum Action implements Serializable {
         Posted, Removed
@@ -25,5 +29,32 @@ public class NotificationData implements Serializable {
     public String text;
     public String tickerText;
     public byte[] icon;
+    public String iconHash; // set instead of icon, see BlobAPI
     public DeliveryMode deliveryMode;
+    // conversation of a chat notification, oldest first
+    public List<NotificationMessage> messages;
+    // messages only has the ones added since previous update of this notification, see NotificationController
+    public boolean messagesAppended;
+
+    @Nullable
+    @Override
+    public byte[] getBlob() {
+        return icon;
+    }
+
+    @Override
+    public void setBlob(@Nullable byte[] data) {
+        icon = data;
+    }
+
+    @Nullable
+    @Override
+    public String getBlobHash() {
+        return iconHash;
+    }
+
+    @Override
+    public void setBlobHash(@Nullable String hash) {
+        iconHash = hash;
+    }
 }
@@ -0,0 +1,19 @@
+package com.damn.anotherglass.shared.notifications;
+
+import java.io.Serializable;
+
+// single message of a MessagingStyle (chat) notification
+public class NotificationMessage implements Serializable {
+    public String sender; // null for messages of the user
+    public String text;
+    public long timestamp;
+
+    public NotificationMessage() {
+    }
+
+    public NotificationMessage(String sender, String text, long timestamp) {
+        this.sender = sender;
+        this.text = text;
+        this.timestamp = timestamp;
+    }
+}
@@ -1,5 +1,9 @@
 package com.damn.anotherglass.shared.rpc;
 
+import android.util.Base64;
+
+import com.damn.anotherglass.shared.session.SessionHello;
+
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializationContext;
@@ -8,8 +12,14 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -18,7 +28,10 @@ import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 
 // Basic JSON Lines message serializer
+// Byte arrays are written as arrays of numbers until peer's SessionHello says it reads Base64,
+// they are read in either form.
 class JsonMessageSerializer implements IMessageSerializer {
+    private final ByteArrayAdapter bytes = new ByteArrayAdapter();
     private final Gson gson;
     private final OutputStreamWriter writer;
     private final BufferedReader reader;
@@ -26,6 +39,7 @@ class JsonMessageSerializer implements IMessageSerializer {
     public JsonMessageSerializer(InputStream inputStream, OutputStream outputStream) {
         gson = new GsonBuilder()
                 .registerTypeAdapter(RPCMessage.class, new RPCMessageDeserializer())
+                .registerTypeAdapter(byte[].class, bytes)
                 .setStrictness(Strictness.LENIENT)
                 .create();
         writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
@@ -45,13 +59,61 @@ class JsonMessageSerializer implements IMessageSerializer {
         // since it will looks like multiple concatenated jsons
         String line = reader.readLine();
         try {
-            return gson.fromJson(line, RPCMessage.class);
+            RPCMessage message = gson.fromJson(line, RPCMessage.class);
+            // hello is the first message on a connection and carries no bytes itself
+            if (null != message && message.payload instanceof SessionHello)
+                bytes.base64 = ((SessionHello) message.payload).base64Bytes;
+            return message;
         }
         catch (JsonParseException | NullPointerException e) {
             throw new Exception("Unable to parse message: " + line, e);
         }
     }
 
+    // Gson writes byte[] as an array of numbers, 3-4 times larger than the data, Base64 is 4/3
+    private static class ByteArrayAdapter extends TypeAdapter<byte[]> {
+
+        // peer has told it reads Base64, set on the reading thread
+        volatile boolean base64;
+
+        @Override
+        public void write(JsonWriter out, byte[] value) throws IOException {
+            if (null == value) {
+                out.nullValue();
+            } else if (base64) {
+                out.value(Base64.encodeToString(value, Base64.NO_WRAP));
+            } else {
+                out.beginArray();
+                for (byte b : value)
+                    out.value(b);
+                out.endArray();
+            }
+        }
+
+        @Override
+        public byte[] read(JsonReader in) throws IOException {
+            JsonToken token = in.peek();
+            if (JsonToken.NULL == token) {
+                in.nextNull();
+                return null;
+            }
+            if (JsonToken.BEGIN_ARRAY == token) {
+                // array of numbers from an older peer, or before the hello
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                in.beginArray();
+                while (in.hasNext())
+                    out.write(in.nextInt());
+                in.endArray();
+                return out.toByteArray();
+            }
+            try {
+                return Base64.decode(in.nextString(), Base64.NO_WRAP);
+            } catch (IllegalArgumentException e) {
+                throw new JsonParseException("Invalid Base64 data", e);
+            }
+        }
+    }
+
     private static class RPCMessageDeserializer implements JsonDeserializer<RPCMessage> {
         @Override
         public RPCMessage deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
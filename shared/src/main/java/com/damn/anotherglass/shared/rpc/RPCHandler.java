@@ -17,6 +17,7 @@ public class RPCHandler extends Handler implements RPCMessageListener {
     private static final int STATE_WAITING_FOR_CONNECT = 2;
     private static final int MSG_DATA_RECEIVED = 3;
     private static final int MSG_ON_SHUTDOWN = 4;
+    private static final int STATE_RECONNECTING = 5;
 
     private static final String TAG = "RPCHandler";
 
@@ -41,6 +42,10 @@ public class RPCHandler extends Handler implements RPCMessageListener {
             listener.onConnectionLost(error);
         } else if (STATE_WAITING_FOR_CONNECT == msg.what) {
             listener.onWaiting();
+        } else if (STATE_RECONNECTING == msg.what) {
+            final long delay = (Long) msg.obj;
+            Log.d(TAG, "STATE_RECONNECTING in " + delay + "ms");
+            listener.onReconnecting(delay);
         } else if (MSG_ON_SHUTDOWN == msg.what) {
             listener.onShutdown();
         }
@@ -66,6 +71,11 @@ public class RPCHandler extends Handler implements RPCMessageListener {
         obtainMessage(RPCHandler.STATE_CONNECTION_LOST, error).sendToTarget();
     }
 
+    @Override
+    public void onReconnecting(long delay) {
+        obtainMessage(RPCHandler.STATE_RECONNECTING, delay).sendToTarget();
+    }
+
     @Override
     public void onShutdown() {
         obtainMessage(RPCHandler.MSG_ON_SHUTDOWN).sendToTarget();
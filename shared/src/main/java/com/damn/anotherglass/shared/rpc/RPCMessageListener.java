@@ -13,5 +13,8 @@ public interface RPCMessageListener {
 
     void onConnectionLost(@Nullable String error);
 
+    // client lost the link and will retry in delay ms (hosts just wait for a new connection)
+    void onReconnecting(long delay);
+
     void onShutdown();
 }
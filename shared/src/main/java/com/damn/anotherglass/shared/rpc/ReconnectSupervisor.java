@@ -0,0 +1,203 @@
+package com.damn.anotherglass.shared.rpc;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.device.ReconnectStatsData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+// Keeps client connection alive: decides when to retry after the link drops.
+// Delays grow exponentially (with jitter, so multiple clients do not retry in lockstep),
+// wake() cuts the current wait short (network change, Bluetooth ACL event, etc.).
+// Also remembers last endpoint we were able to connect to, and measures time to reconnect.
+public class ReconnectSupervisor {
+
+    public static final long DEFAULT_BASE_DELAY = 1000L;
+    public static final long DEFAULT_MAX_DELAY = 60 * 1000L;
+
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+
+    private final Random mRandom = new Random();
+    private final Object mLock = new Object();
+
+    private int mAttempt;
+    private boolean mWakeRequested;
+    private boolean mCancelled;
+    private boolean mConnected;
+
+    private String mLastGoodEndpoint;
+
+    // elapsedRealtime() of the moment connection was lost, 0 if connected (or never was)
+    private long mLostAt;
+    private long mLastReconnectTime = -1;
+    private long mTotalReconnectTime;
+    private int mReconnects;
+
+    public ReconnectSupervisor() {
+        this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    public ReconnectSupervisor(long baseDelay, long maxDelay) {
+        mBaseDelay = baseDelay;
+        mMaxDelay = maxDelay;
+    }
+
+    /**
+     * Delay before the next attempt: "equal jitter" exponential backoff,
+     * i.e. random value in [d/2, d], where d = min(max, base * 2^attempt).
+     */
+    public long nextDelay() {
+        synchronized (mLock) {
+            int shift = Math.min(mAttempt, 16); // do not overflow, max delay is reached way before
+            long delay = Math.min(mMaxDelay, mBaseDelay << shift);
+            mAttempt++;
+            long half = delay / 2;
+            return half + (long) (mRandom.nextDouble() * (delay - half));
+        }
+    }
+
+    /**
+     * Blocks for the backoff delay, or until {@link #wake()} or {@link #cancel()} is called.
+     *
+     * @return false if supervisor was cancelled and caller should give up
+     */
+    public boolean awaitRetry(long delay) {
+        synchronized (mLock) {
+            long deadline = SystemClock.elapsedRealtime() + delay;
+            try {
+                while (!mCancelled && !mWakeRequested) {
+                    long left = deadline - SystemClock.elapsedRealtime();
+                    if (left <= 0)
+                        break;
+                    mLock.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            mWakeRequested = false;
+            return !mCancelled;
+        }
+    }
+
+    // Retry immediately, something has changed and there is a good chance we can connect now
+    public void wake() {
+        synchronized (mLock) {
+            // nothing to wait for, and a stale request would skip the first backoff after next disconnect
+            if (mConnected)
+                return;
+            mWakeRequested = true;
+            mAttempt = 0;
+            mLock.notifyAll();
+        }
+    }
+
+    public void cancel() {
+        synchronized (mLock) {
+            mCancelled = true;
+            mLock.notifyAll();
+        }
+    }
+
+    // allows to reuse supervisor after cancel(), keeps last good endpoint and stats
+    public void reset() {
+        synchronized (mLock) {
+            mCancelled = false;
+            mWakeRequested = false;
+            mAttempt = 0;
+        }
+    }
+
+    public boolean isCancelled() {
+        synchronized (mLock) {
+            return mCancelled;
+        }
+    }
+
+    public void onConnected(@NonNull String endpoint) {
+        synchronized (mLock) {
+            mAttempt = 0;
+            mWakeRequested = false;
+            mConnected = true;
+            mLastGoodEndpoint = endpoint;
+            if (0 != mLostAt) {
+                mLastReconnectTime = SystemClock.elapsedRealtime() - mLostAt;
+                mTotalReconnectTime += mLastReconnectTime;
+                mReconnects++;
+                mLostAt = 0;
+            }
+        }
+    }
+
+    /**
+     * @return true if established connection was lost, false if it was just a failed attempt
+     */
+    public boolean onDisconnected() {
+        synchronized (mLock) {
+            if (!mConnected)
+                return false;
+            mConnected = false;
+            mLostAt = SystemClock.elapsedRealtime();
+            return true;
+        }
+    }
+
+    @Nullable
+    public String getLastGoodEndpoint() {
+        synchronized (mLock) {
+            return mLastGoodEndpoint;
+        }
+    }
+
+    /**
+     * @return candidates without duplicates and nulls, last known good endpoint first
+     */
+    @NonNull
+    public List<String> orderEndpoints(@NonNull Collection<String> candidates) {
+        List<String> ordered = new ArrayList<>();
+        String lastGood = getLastGoodEndpoint();
+        if (null != lastGood)
+            ordered.add(lastGood);
+        for (String candidate : candidates) {
+            if (null != candidate && !ordered.contains(candidate))
+                ordered.add(candidate);
+        }
+        return ordered;
+    }
+
+    // Time from losing the link to getting it back for the last reconnect, -1 if never reconnected
+    public long getLastReconnectTime() {
+        synchronized (mLock) {
+            return mLastReconnectTime;
+        }
+    }
+
+    public long getAverageReconnectTime() {
+        synchronized (mLock) {
+            return 0 == mReconnects ? -1 : mTotalReconnectTime / mReconnects;
+        }
+    }
+
+    public int getReconnectCount() {
+        synchronized (mLock) {
+            return mReconnects;
+        }
+    }
+
+    // Snapshot to report to the phone, null if never reconnected
+    @Nullable
+    public ReconnectStatsData getStats() {
+        synchronized (mLock) {
+            if (0 == mReconnects)
+                return null;
+            return new ReconnectStatsData(mLastReconnectTime, mTotalReconnectTime / mReconnects, mReconnects);
+        }
+    }
+}
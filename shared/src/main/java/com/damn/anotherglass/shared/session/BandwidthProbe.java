@@ -0,0 +1,20 @@
+package com.damn.anotherglass.shared.session;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+
+// Host writes it right after a batch of data, client sends it back as soon as it reads it,
+// so host knows when everything written before the probe has reached the client application.
+public class BandwidthProbe implements Serializable {
+
+    @SerializedName("id")
+    public long id;
+
+    public BandwidthProbe() {
+    }
+
+    public BandwidthProbe(long id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,122 @@
+package com.damn.anotherglass.shared.session;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.damn.anotherglass.shared.rpc.RPCMessage;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+
+// Client side of the Session: decides what goes to the write queue of the current connection.
+// Messages sent while disconnected (or not yet acknowledged when link went down)
+// are delivered once the next connection completes the hello exchange.
+// Host has to support sessions: an older one can't parse SessionHello and drops the connection.
+public class ClientSession {
+
+    private static final String TAG = "ClientSession";
+
+    // a few probes right after connecting to get the clock offset quickly, then just follow the drift
+    private static final int FAST_PROBES = 4;
+    private static final long FAST_PROBE_INTERVAL = 1000L;
+    private static final long PROBE_INTERVAL = 60 * 1000L;
+
+    private final Session mSession = new Session(UUID.randomUUID().toString());
+
+    private final Queue<RPCMessage> mQueue;
+
+    private boolean mReady; // hello exchange is done, messages go straight to the write queue
+    private long mNextProbe;
+    private int mProbes; // sent since connected
+
+    private final ClockSync mClock = ClockSync.getInstance();
+
+    public ClientSession(@NonNull Queue<RPCMessage> queue) {
+        mQueue = queue;
+    }
+
+    public synchronized void send(@NonNull RPCMessage message) {
+        mSession.add(message);
+        if (mReady)
+            mQueue.add(message);
+    }
+
+    // call once connection is established, returned hello has to be written before anything else
+    @NonNull
+    public synchronized RPCMessage onConnected() {
+        mReady = false;
+        mNextProbe = 0;
+        mProbes = 0;
+        return mSession.hello(false);
+    }
+
+    // call periodically from the connection loop
+    public synchronized void poll() {
+        long now = SystemClock.elapsedRealtime();
+        // until host answers the hello everything stays in the session
+        if (mReady && now >= mNextProbe)
+            probeClock(now);
+    }
+
+    /**
+     * @return true if message was a session control message and must not be passed to services
+     */
+    public synchronized boolean onReceived(@NonNull RPCMessage message) {
+        if (!Session.isControl(message)) {
+            if (mSession.onReceived())
+                mQueue.add(mSession.ack());
+            return false;
+        }
+        Object payload = message.payload;
+        if (payload instanceof SessionHello) {
+            SessionHello hello = (SessionHello) payload;
+            Log.d(TAG, "Resuming with " + hello);
+            resume(hello.received);
+            // host has switched transports and asks where we are
+            if (!hello.reply)
+                mQueue.add(mSession.hello(true));
+        } else if (payload instanceof SessionAck) {
+            mSession.acknowledge(((SessionAck) payload).received);
+        } else if (payload instanceof ClockProbe) {
+            mClock.onProbe((ClockProbe) payload, SystemClock.elapsedRealtime());
+        } else if (payload instanceof BandwidthProbe) {
+            // host measures the link by how long it takes to get it back
+            mQueue.add(message);
+        }
+        return true;
+    }
+
+    public synchronized void onDisconnected() {
+        mReady = false;
+        dropServiceMessages();
+    }
+
+    private void resume(long peerReceived) {
+        // whatever is queued is also in the session and would be sent twice
+        dropServiceMessages();
+        List<RPCMessage> pending = mSession.pendingFrom(peerReceived);
+        mQueue.addAll(pending);
+        mReady = true;
+    }
+
+    private void probeClock(long now) {
+        // anything written before the probe counts as network delay, wait until the queue is empty
+        if (!mQueue.isEmpty())
+            return;
+        mQueue.add(new RPCMessage(SessionAPI.ID, new ClockProbe(now)));
+        mNextProbe = now + (++mProbes < FAST_PROBES ? FAST_PROBE_INTERVAL : PROBE_INTERVAL);
+    }
+
+    // keeps control messages and shutdown request (null service)
+    private void dropServiceMessages() {
+        for (Iterator<RPCMessage> it = mQueue.iterator(); it.hasNext(); ) {
+            RPCMessage message = it.next();
+            if (null != message.service && !Session.isControl(message))
+                it.remove();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.damn.anotherglass.shared.session;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+
+// NTP-like timestamp exchange, see ClockSync. Client sends it with clientSent set,
+// host returns it with its own wall clock times of receiving and replying.
+public class ClockProbe implements Serializable {
+
+    @SerializedName("clientSent")
+    public long clientSent; // client elapsedRealtime()
+
+    @SerializedName("hostReceived")
+    public long hostReceived; // host currentTimeMillis(), 0 in request
+
+    @SerializedName("hostSent")
+    public long hostSent;
+
+    public ClockProbe() {
+    }
+
+    public ClockProbe(long clientSent) {
+        this.clientSent = clientSent;
+    }
+
+    public boolean isReply() {
+        return 0 != hostSent;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ClockProbe{" +
+                "clientSent=" + clientSent +
+                ", hostReceived=" + hostReceived +
+                ", hostSent=" + hostSent +
+                '}';
+    }
+}
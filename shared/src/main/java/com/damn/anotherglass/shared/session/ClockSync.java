@@ -0,0 +1,144 @@
+package com.damn.anotherglass.shared.session;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Relation between host wall clock (timestamps in payloads, like MusicData.timestamp) and our elapsedRealtime(),
+// estimated from ClockProbe round trips the way NTP does it:
+//   offset = ((hostReceived - clientSent) + (hostSent - clientReceived)) / 2
+// Error of a sample is up to half of its round trip, so only samples close to the best round trip are used.
+// Clocks run at slightly different rates, offset drift is tracked with a least squares line over those samples.
+public class ClockSync {
+
+    private static final String TAG = "ClockSync";
+
+    private static final int MAX_SAMPLES = 16;
+    private static final long RTT_SLACK = 20; // ms above the best round trip a sample can still be used with
+    private static final long MIN_DRIFT_SPAN = 60 * 1000L; // drift is not estimated from samples closer than that
+    private static final double MAX_DRIFT = 500e-6; // 500ppm, more than that is not a drift
+    private static final long JUMP_THRESHOLD = 1000; // host clock was set, start over
+
+    private static final ClockSync sInstance = new ClockSync();
+
+    // clock of the phone we are connected to
+    @NonNull
+    public static ClockSync getInstance() {
+        return sInstance;
+    }
+
+    private static class Sample {
+        final long time; // our elapsedRealtime() when reply was received
+        final long offset; // host time - our time
+        final long roundTrip;
+
+        Sample(long time, long offset, long roundTrip) {
+            this.time = time;
+            this.offset = offset;
+            this.roundTrip = roundTrip;
+        }
+    }
+
+    private final ArrayDeque<Sample> mSamples = new ArrayDeque<>();
+
+    private boolean mSynced;
+    private long mRoundTrip;
+    // offset(time) = mBaseOffset + mDrift * (time - mBaseTime)
+    private long mBaseTime;
+    private double mBaseOffset;
+    private double mDrift;
+
+    public synchronized void onProbe(@NonNull ClockProbe probe, long received) {
+        long roundTrip = (received - probe.clientSent) - (probe.hostSent - probe.hostReceived);
+        if (roundTrip < 0)
+            return; // host clock was changed while it was handling the probe
+        long offset = ((probe.hostReceived - probe.clientSent) + (probe.hostSent - received)) / 2;
+        if (mSynced && Math.abs(offset - offsetAt(received)) > JUMP_THRESHOLD + roundTrip) {
+            Log.i(TAG, "Host clock has jumped by " + (offset - Math.round(offsetAt(received))) + "ms");
+            mSamples.clear();
+        }
+        mSamples.addLast(new Sample(received, offset, roundTrip));
+        if (mSamples.size() > MAX_SAMPLES)
+            mSamples.removeFirst();
+        update();
+    }
+
+    public synchronized boolean isSynced() {
+        return mSynced;
+    }
+
+    // best round trip to the host, -1 if there were no probes yet
+    public synchronized long getRoundTrip() {
+        return mSynced ? mRoundTrip : -1;
+    }
+
+    /**
+     * @param hostTime host System.currentTimeMillis()
+     * @return the same moment as our SystemClock.elapsedRealtime(). Until synced, clocks are assumed to agree.
+     */
+    public synchronized long toLocal(long hostTime) {
+        long now = SystemClock.elapsedRealtime();
+        if (!mSynced)
+            return hostTime - System.currentTimeMillis() + now;
+        return Math.round(hostTime - offsetAt(now));
+    }
+
+    /**
+     * @param localTime our SystemClock.elapsedRealtime()
+     * @return the same moment as host System.currentTimeMillis()
+     */
+    public synchronized long toHost(long localTime) {
+        if (!mSynced)
+            return localTime - SystemClock.elapsedRealtime() + System.currentTimeMillis();
+        return Math.round(localTime + offsetAt(localTime));
+    }
+
+    private double offsetAt(long time) {
+        return mBaseOffset + mDrift * (time - mBaseTime);
+    }
+
+    private void update() {
+        long best = Long.MAX_VALUE;
+        for (Sample sample : mSamples)
+            best = Math.min(best, sample.roundTrip);
+        List<Sample> good = new ArrayList<>();
+        for (Sample sample : mSamples)
+            if (sample.roundTrip <= best + RTT_SLACK)
+                good.add(sample);
+
+        // line through the mean, relative to the first sample to keep doubles precise
+        long origin = good.get(0).time;
+        double meanTime = 0;
+        double meanOffset = 0;
+        for (Sample sample : good) {
+            meanTime += sample.time - origin;
+            meanOffset += sample.offset;
+        }
+        meanTime /= good.size();
+        meanOffset /= good.size();
+
+        double drift = 0;
+        long span = good.get(good.size() - 1).time - origin;
+        if (good.size() >= 3 && span >= MIN_DRIFT_SPAN) {
+            double covariance = 0;
+            double variance = 0;
+            for (Sample sample : good) {
+                double dt = sample.time - origin - meanTime;
+                covariance += dt * (sample.offset - meanOffset);
+                variance += dt * dt;
+            }
+            drift = Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, covariance / variance));
+        }
+
+        mBaseTime = origin + Math.round(meanTime);
+        mBaseOffset = meanOffset;
+        mDrift = drift;
+        mRoundTrip = best;
+        mSynced = true;
+    }
+}
@@ -0,0 +1,119 @@
+package com.damn.anotherglass.shared.session;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.damn.anotherglass.shared.rpc.RPCMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Delivery state of a session that can outlive a single socket.
+// Both sides count service messages they have received; since every transport is an ordered stream,
+// the count is enough to tell which of our messages the peer is missing after a reconnect
+// or a switch to another transport. Sent messages are kept until acknowledged (up to a limit).
+public class Session {
+
+    private static final String TAG = "Session";
+
+    public static final int DEFAULT_MAX_PENDING = 256;
+    public static final int ACK_INTERVAL = 16;
+
+    @Nullable
+    private String mId;
+    private final int mMaxPending;
+
+    private final ArrayDeque<RPCMessage> mPending = new ArrayDeque<>();
+    private long mFirstPending; // sequence number of mPending head
+    private long mReceived;
+    private long mReceivedAtLastAck;
+
+    public Session(@Nullable String id) {
+        this(id, DEFAULT_MAX_PENDING);
+    }
+
+    public Session(@Nullable String id, int maxPending) {
+        mId = id;
+        mMaxPending = maxPending;
+    }
+
+    @Nullable
+    public synchronized String getId() {
+        return mId;
+    }
+
+    // host learns session ID from the first SessionHello
+    public synchronized void setId(@NonNull String id) {
+        mId = id;
+    }
+
+    public static boolean isControl(@NonNull RPCMessage message) {
+        return SessionAPI.ID.equals(message.service);
+    }
+
+    /**
+     * Keeps message until peer acknowledges it. Oldest messages are dropped once limit is reached,
+     * they will not be resent.
+     *
+     * @return sequence number of the message
+     */
+    public synchronized long add(@NonNull RPCMessage message) {
+        mPending.addLast(message);
+        if (mPending.size() > mMaxPending) {
+            mPending.removeFirst();
+            mFirstPending++;
+        }
+        return mFirstPending + mPending.size() - 1;
+    }
+
+    // number of messages added to the session so far
+    public synchronized long getSent() {
+        return mFirstPending + mPending.size();
+    }
+
+    public synchronized void acknowledge(long peerReceived) {
+        while (mFirstPending < peerReceived && !mPending.isEmpty()) {
+            mPending.removeFirst();
+            mFirstPending++;
+        }
+    }
+
+    /**
+     * @return messages peer has not received yet, in order
+     */
+    @NonNull
+    public synchronized List<RPCMessage> pendingFrom(long peerReceived) {
+        acknowledge(peerReceived);
+        if (peerReceived < mFirstPending)
+            Log.w(TAG, "Messages " + peerReceived + ".." + (mFirstPending - 1) + " were dropped and will not be resent");
+        return new ArrayList<>(mPending);
+    }
+
+    /**
+     * Counts received service message.
+     *
+     * @return true if it is time to send {@link #ack()}
+     */
+    public synchronized boolean onReceived() {
+        mReceived++;
+        return mReceived - mReceivedAtLastAck >= ACK_INTERVAL;
+    }
+
+    public synchronized long getReceived() {
+        return mReceived;
+    }
+
+    @NonNull
+    public synchronized RPCMessage hello(boolean reply) {
+        return new RPCMessage(SessionAPI.ID, new SessionHello(mId, mReceived, reply));
+    }
+
+    @NonNull
+    public synchronized RPCMessage ack() {
+        mReceivedAtLastAck = mReceived;
+        return new RPCMessage(SessionAPI.ID, new SessionAck(mReceived));
+    }
+}
@@ -0,0 +1,7 @@
+package com.damn.anotherglass.shared.session;
+
+// Session control messages (SessionHello, SessionAck, ClockProbe, BandwidthProbe), handled by the transport layer
+// and never passed to services
+public class SessionAPI {
+    public static final String ID = "Session";
+}
@@ -0,0 +1,19 @@
+package com.damn.anotherglass.shared.session;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+
+// Sent periodically, lets the peer drop messages we already have from its resend buffer
+public class SessionAck implements Serializable {
+
+    @SerializedName("received")
+    public long received;
+
+    public SessionAck() {
+    }
+
+    public SessionAck(long received) {
+        this.received = received;
+    }
+}
@@ -0,0 +1,48 @@
+package com.damn.anotherglass.shared.session;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+
+// First message on every new connection (and after switching transports):
+// tells the peer which session we belong to and how many messages we have received so far,
+// so it can resend the rest.
+public class SessionHello implements Serializable {
+
+    @SerializedName("sessionId")
+    public String sessionId;
+
+    @SerializedName("received")
+    public long received;
+
+    // true if sent in response to peer's hello
+    @SerializedName("reply")
+    public boolean reply;
+
+    // sender reads byte arrays as Base64 strings, older peers only read arrays of numbers
+    @SerializedName("base64Bytes")
+    public boolean base64Bytes;
+
+    public SessionHello() {
+    }
+
+    public SessionHello(String sessionId, long received, boolean reply) {
+        this.sessionId = sessionId;
+        this.received = received;
+        this.reply = reply;
+        this.base64Bytes = true;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SessionHello{" +
+                "sessionId='" + sessionId + '\'' +
+                ", received=" + received +
+                ", reply=" + reply +
+                ", base64Bytes=" + base64Bytes +
+                '}';
+    }
+}
@@ -0,0 +1,33 @@
+package com.damn.anotherglass.shared.utility;
+
+import androidx.annotation.NonNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Counts bytes written to the underlying stream, used to measure link throughput
+public class CountingOutputStream extends FilterOutputStream {
+
+    private volatile long mCount;
+
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        mCount++;
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        mCount += len;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+}
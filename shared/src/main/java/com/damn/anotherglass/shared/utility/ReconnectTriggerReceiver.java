@@ -0,0 +1,49 @@
+package com.damn.anotherglass.shared.utility;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.Log;
+
+import java.io.Closeable;
+
+// Listens for system events that make a reconnect attempt worth trying right away
+// (network connectivity change, Bluetooth ACL connect, etc.)
+public class ReconnectTriggerReceiver
+        extends BroadcastReceiver implements Closeable {
+
+    private static final String TAG = "ReconnectTrigger";
+    private final Context context;
+    private final IListener listener;
+
+    public interface IListener {
+        void onReconnectTrigger();
+    }
+
+    public ReconnectTriggerReceiver(
+            Context context,
+            IListener listener,
+            String... actions) {
+        this.context = context;
+        this.listener = listener;
+        IntentFilter filter = new IntentFilter();
+        for (String action : actions)
+            filter.addAction(action);
+        context.registerReceiver(this, filter);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        // connectivity broadcasts are sticky, we only care about actual changes
+        if (isInitialStickyBroadcast())
+            return;
+        Log.d(TAG, "Reconnect triggered by " + intent.getAction());
+        listener.onReconnectTrigger();
+    }
+
+    @Override
+    public void close() {
+        context.unregisterReceiver(this);
+    }
+}